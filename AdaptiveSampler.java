@@ -0,0 +1,340 @@
+import java.util.Arrays;
+
+/**
+ * The AdaptiveSampler class chooses the points at which to plot a Function so that the polyline
+ * through them stays within a given number of pixels of the curve.
+ * Every point is evaluated together with its derivative in one walk of the tree with dual numbers.
+ * For each interval, the cubic that matches the values and slopes at both ends tells how far the curve
+ * bends away from the straight line between them. Intervals that bend more than the tolerance are halved,
+ * so points gather where the function oscillates and flat stretches are covered by a few long segments.
+ * That cubic is only trusted once it has predicted the value at the middle of the enclosing interval,
+ * so near a singularity such as log at 0, where it is a poor model, intervals keep halving until it is not.
+ * A final pass drops every point whose neighbours can be joined directly without leaving the tolerance.
+ * An interval whose ends both lie beyond the same edge of the view is bounded with interval arithmetic,
+ * and is not halved any further when the bound shows the curve never enters the view there; likewise an
+ * interval with no finite value at either end becomes a single gap once the bound shows the function is
+ * nowhere defined on it. An interval whose ends lie beyond opposite edges of the view, or whose end slopes
+ * have opposite signs across a jump taller than the view, is never trusted to be a single segment,
+ * because a pole between grid points looks like a steep straight line there.
+ * <p>
+ * The sampler starts from a coarse even grid and only looks between its points through the end slopes,
+ * so a feature narrower than the grid spacing whose slopes happen to match at both ends can be missed;
+ * raise the number of initial segments for such functions.
+ * Values that are not finite, and jumps that stay taller than the view at the finest spacing,
+ * are returned as gaps. A sampler holds no state between calls and is safe to share between threads.
+ * @author Jenny Zhang
+ */
+public class AdaptiveSampler {
+
+    /** Default distance in pixels the polyline may stray from the curve */
+    public static final double DEFAULT_TOLERANCE = 0.5;
+
+    /** Default number of even segments the range is first cut into */
+    public static final int DEFAULT_INITIAL_SEGMENTS = 16;
+
+    /** Intervals narrower than this many pixels are never halved again */
+    private static final double MIN_SEGMENT_PIXELS = 1.0 / 16;
+
+    private final double tolerance;
+    private final int initialSegments;
+
+    /**
+     * Constructs a sampler with the default tolerance and initial grid
+     */
+    public AdaptiveSampler() {
+        this(DEFAULT_TOLERANCE, DEFAULT_INITIAL_SEGMENTS);
+    }
+
+    /**
+     * Constructs a sampler
+     * @param tolerance the distance in pixels the polyline may stray from the curve
+     * @param initialSegments the number of even segments the range is first cut into
+     */
+    public AdaptiveSampler(double tolerance, int initialSegments) {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Tolerance must be positive: " + tolerance);
+        }
+        if (initialSegments <= 0) {
+            throw new IllegalArgumentException("Initial segment count must be positive: " + initialSegments);
+        }
+        this.tolerance = tolerance;
+        this.initialSegments = initialSegments;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public int getInitialSegments() {
+        return initialSegments;
+    }
+
+    /**
+     * Samples the function for a plot of x from a to b and y from yMin to yMax drawn width by height pixels
+     * @param function the function to plot
+     * @param a the x value at the left edge
+     * @param b the x value at the right edge, greater than a
+     * @param yMin the y value at the bottom edge
+     * @param yMax the y value at the top edge, greater than yMin
+     * @param width the plot width in pixels
+     * @param height the plot height in pixels
+     * @return the points of the polyline from a to b
+     */
+    public Polyline sample(Function function, double a, double b, double yMin, double yMax, int width, int height) {
+        if (!(a < b) || !(yMin < yMax)) {
+            throw new IllegalArgumentException("Empty plot range: x from " + a + " to " + b + ", y from " + yMin + " to " + yMax);
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Plot size must be positive: " + width + "x" + height);
+        }
+        Sampling sampling = new Sampling(function, a, b, yMin, yMax, width, height);
+        double step = (b - a) / initialSegments;
+        double x0 = a;
+        Dual left = sampling.evaluate(x0);
+        sampling.add(x0, left, 0.0);
+        for (int i = 1; i <= initialSegments; i++) {
+            double x1 = i == initialSegments ? b : a + i * step;
+            Dual right = sampling.evaluate(x1);
+            sampling.refine(x0, left, x1, right, false);
+            x0 = x1;
+            left = right;
+        }
+        return sampling.simplify();
+    }
+
+    /**
+     * The Polyline class holds the points chosen by an AdaptiveSampler in increasing x order.
+     * A point whose y is not finite marks a gap: the line stops before it and starts again after it.
+     */
+    public static final class Polyline {
+
+        private final double[] xs;
+        private final double[] ys;
+        private final int evaluations;
+
+        Polyline(double[] xs, double[] ys, int evaluations) {
+            this.xs = xs;
+            this.ys = ys;
+            this.evaluations = evaluations;
+        }
+
+        public int size() {
+            return xs.length;
+        }
+
+        public double getX(int index) {
+            return xs[index];
+        }
+
+        public double getY(int index) {
+            return ys[index];
+        }
+
+        /**
+         * Returns how many times the function was evaluated, each giving a value and a derivative
+         * @return the number of evaluations
+         */
+        public int getEvaluations() {
+            return evaluations;
+        }
+
+        public double[] getXs() {
+            return xs.clone();
+        }
+
+        public double[] getYs() {
+            return ys.clone();
+        }
+    }
+
+    /**
+     * The state of one call to sample: the pixel scales and the points accepted so far
+     */
+    private final class Sampling {
+
+        private final Function function;
+        private final double a;
+        private final double yMin;
+        private final double xScale;
+        private final double yScale;
+        private final double height;
+        private double[] xs = new double[64];
+        private double[] ys = new double[64];
+        /** The estimated distance between the curve and the segment that ends at each point */
+        private double[] errors = new double[64];
+        private int size;
+        private int evaluations;
+
+        Sampling(Function function, double a, double b, double yMin, double yMax, int width, int height) {
+            this.function = function;
+            this.a = a;
+            this.yMin = yMin;
+            this.xScale = width / (b - a);
+            this.yScale = height / (yMax - yMin);
+            this.height = height;
+        }
+
+        Dual evaluate(double x) {
+            evaluations++;
+            return function.dual(x);
+        }
+
+        /**
+         * Adds the points that cover (x0, x1] given the curve at both ends; x0 has already been added.
+         * The interval's bend is only relied on when trusted, that is when the enclosing interval's
+         * cubic predicted the value at x0 or x1 to within the tolerance.
+         */
+        void refine(double x0, Dual left, double x1, Dual right, boolean trusted) {
+            double h = (x1 - x0) * xScale;
+            double y0 = (left.getValue() - yMin) * yScale;
+            double y1 = (right.getValue() - yMin) * yScale;
+            boolean finite = isFinite(y0) && isFinite(y1);
+            double error = finite ? bend(h, y0, y1, left.getDerivative() * yScale / xScale, right.getDerivative() * yScale / xScale)
+                    : Double.POSITIVE_INFINITY;
+            // A segment that stays above or below the view is clipped away, so its shape does not matter
+            boolean hidden = finite && (Math.min(y0, y1) - error > height || Math.max(y0, y1) + error < 0);
+            if ((trusted && error <= tolerance && !mayJump(y0, y1, left.getDerivative(), right.getDerivative()))
+                    || hidden || (finite && h > MIN_SEGMENT_PIXELS && outside(x0, y0, x1, y1))) {
+                add(x1, right, error);
+            } else if (!isFinite(y0) && !isFinite(y1) && undefined(x0, x1)) {
+                // One gap marker covers a whole run of intervals where the function is undefined
+                if (size > 1 && Double.isNaN(ys[size - 1]) && Double.isNaN(ys[size - 2])) {
+                    xs[size - 1] = x1;
+                } else {
+                    add(x1, Double.NaN, 0.0);
+                }
+            } else if (h <= MIN_SEGMENT_PIXELS) {
+                if (finite && Math.abs(y1 - y0) > height) {
+                    // A pole or a jump: do not draw a line across it
+                    add(0.5 * (x0 + x1), Double.NaN, 0.0);
+                }
+                add(x1, right, 0.0);
+            } else {
+                double middle = 0.5 * (x0 + x1);
+                Dual center = evaluate(middle);
+                double predicted = 0.5 * (y0 + y1) + 0.125 * h * (left.getDerivative() - right.getDerivative()) * yScale / xScale;
+                boolean predictable = Math.abs((center.getValue() - yMin) * yScale - predicted)
+                        <= tolerance * Math.hypot(1.0, (y1 - y0) / h);
+                refine(x0, left, middle, center, predictable);
+                refine(middle, center, x1, right, predictable);
+            }
+        }
+
+        /**
+         * Returns whether the ends lie beyond opposite edges of the view, or the slopes at the ends have opposite
+         * signs and the ends are further apart than the view is tall, either of which a pole between them produces
+         */
+        boolean mayJump(double y0, double y1, double d0, double d1) {
+            if ((y0 < 0 && y1 > height) || (y0 > height && y1 < 0)) {
+                return true;
+            }
+            return ((d0 < 0 && d1 > 0) || (d0 > 0 && d1 < 0)) && Math.abs(y1 - y0) > height;
+        }
+
+        /**
+         * Returns whether the function has no value anywhere in [x0, x1], checked with one interval evaluation
+         */
+        boolean undefined(double x0, double x1) {
+            evaluations++;
+            return function.interval(new Interval(x0, x1)).isEmpty();
+        }
+
+        /**
+         * Returns whether the curve stays off the view over [x0, x1], checked with one interval evaluation
+         * when both ends lie beyond the same edge
+         */
+        boolean outside(double x0, double y0, double x1, double y1) {
+            if (!(y0 > height && y1 > height) && !(y0 < 0 && y1 < 0)) {
+                return false;
+            }
+            evaluations++;
+            Interval range = function.interval(new Interval(x0, x1));
+            return !range.intersects(new Interval(yMin, yMin + height / yScale));
+        }
+
+        void add(double x, Dual point, double error) {
+            add(x, point.getValue(), error);
+        }
+
+        void add(double x, double y, double error) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, 2 * size);
+                ys = Arrays.copyOf(ys, 2 * size);
+                errors = Arrays.copyOf(errors, 2 * size);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            errors[size] = error;
+            size++;
+        }
+
+        /**
+         * Drops every point that can be skipped: a run of segments is joined into one when every point
+         * inside it lies close enough to the joining line that, together with its own segments' error,
+         * the curve stays within the tolerance.
+         */
+        Polyline simplify() {
+            double[] keptX = new double[size];
+            double[] keptY = new double[size];
+            int kept = 0;
+            int anchor = 0;
+            keptX[kept] = xs[0];
+            keptY[kept++] = ys[0];
+            while (anchor < size - 1) {
+                int end = anchor + 1;
+                while (end + 1 < size && canJoin(anchor, end + 1)) {
+                    end++;
+                }
+                keptX[kept] = xs[end];
+                keptY[kept++] = ys[end];
+                anchor = end;
+            }
+            return new Polyline(Arrays.copyOf(keptX, kept), Arrays.copyOf(keptY, kept), evaluations);
+        }
+
+        private boolean canJoin(int from, int to) {
+            double x0 = (xs[from] - a) * xScale;
+            double y0 = (ys[from] - yMin) * yScale;
+            double x1 = (xs[to] - a) * xScale;
+            double y1 = (ys[to] - yMin) * yScale;
+            if (!isFinite(y0) || !isFinite(y1)) {
+                return false;
+            }
+            double slope = (y1 - y0) / (x1 - x0);
+            double perpendicular = 1.0 / Math.hypot(1.0, slope);
+            for (int i = from + 1; i <= to; i++) {
+                double offset = 0.0;
+                if (i < to) {
+                    double y = (ys[i] - yMin) * yScale;
+                    offset = Math.abs(y - y0 - slope * ((xs[i] - a) * xScale - x0)) * perpendicular;
+                }
+                if (!(offset + errors[i] <= tolerance)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Estimates, in pixels, how far the curve strays from the line between its ends over an interval
+     * h pixels wide, from the cubic with values y0, y1 and slopes d0, d1 at the ends.
+     * That cubic differs from the line by h * t(1-t) * ((d0 - s)(1-t) - (d1 - s)t) for the line's slope s
+     * and t from 0 to 1; the largest of its values at a quarter, a half and three quarters is taken,
+     * and scaled from a vertical distance to one across the line so that steep segments are not over-sampled.
+     */
+    static double bend(double h, double y0, double y1, double d0, double d1) {
+        double s = (y1 - y0) / h;
+        double p = d0 - s;
+        double q = d1 - s;
+        double quarter = Math.abs(0.75 * p - 0.25 * q) * 0.1875;
+        double half = Math.abs(p - q) * 0.125;
+        double threeQuarters = Math.abs(0.25 * p - 0.75 * q) * 0.1875;
+        double error = h * Math.max(half, Math.max(quarter, threeQuarters)) / Math.hypot(1.0, s);
+        return Double.isNaN(error) ? Double.POSITIVE_INFINITY : error;
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+}
@@ -0,0 +1,180 @@
+import java.nio.DoubleBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The BatchEvaluator class evaluates a Function over whole blocks of inputs at once.
+ * Each node is visited once per block and runs a tight loop over a column of values,
+ * so arithmetic nodes compile to loops the JIT can auto-vectorize.
+ * Intermediate columns come from a pool of scratch buffers that is reused across blocks and calls,
+ * so an evaluator should be kept around and is not safe to share between threads.
+ * @author Jenny Zhang
+ */
+public class BatchEvaluator {
+
+    /** Number of inputs evaluated per block, small enough for the scratch columns to stay in cache */
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final int blockSize;
+    private final Deque<double[]> scratch = new ArrayDeque<>();
+    private double[] inputBlock;
+    private double[] outputBlock;
+    private double[][] environment;
+    private int environmentStart;
+
+    /**
+     * Constructs a BatchEvaluator with the default block size
+     */
+    public BatchEvaluator() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructs a BatchEvaluator that works through inputs in blocks of the given size
+     * @param blockSize the number of inputs per block
+     */
+    public BatchEvaluator(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Evaluates the function at every input, writing function.value(inputs[i]) to outputs[i]
+     * @param function the function to evaluate
+     * @param inputs the input values
+     * @param outputs the array receiving the results, at least as long as inputs
+     */
+    public void evaluate(Function function, double[] inputs, double[] outputs) {
+        evaluate(function, inputs, 0, outputs, 0, inputs.length);
+    }
+
+    /**
+     * Evaluates the function over a range of inputs
+     * @param function the function to evaluate
+     * @param inputs the input values
+     * @param inputOffset the index of the first input
+     * @param outputs the array receiving the results
+     * @param outputOffset the index of the first result
+     * @param length the number of values to evaluate
+     */
+    public void evaluate(Function function, double[] inputs, int inputOffset,
+                         double[] outputs, int outputOffset, int length) {
+        if (inputOffset < 0 || outputOffset < 0 || length < 0
+                || inputOffset + length > inputs.length || outputOffset + length > outputs.length) {
+            throw new IndexOutOfBoundsException("Range of " + length + " values does not fit the given arrays");
+        }
+        double[] in = inputBlock();
+        double[] out = outputBlock();
+        for (int start = 0; start < length; start += blockSize) {
+            int count = Math.min(blockSize, length - start);
+            System.arraycopy(inputs, inputOffset + start, in, 0, count);
+            function.valueBlock(in, out, count, this);
+            System.arraycopy(out, 0, outputs, outputOffset + start, count);
+        }
+    }
+
+    /**
+     * Evaluates the function for every remaining value of the input buffer and puts the results into the output buffer.
+     * Both buffers advance by the number of values evaluated.
+     * @param function the function to evaluate
+     * @param inputs the buffer of input values
+     * @param outputs the buffer receiving the results
+     */
+    public void evaluate(Function function, DoubleBuffer inputs, DoubleBuffer outputs) {
+        if (outputs.remaining() < inputs.remaining()) {
+            throw new IndexOutOfBoundsException("Output buffer has room for " + outputs.remaining()
+                    + " values but " + inputs.remaining() + " are needed");
+        }
+        double[] in = inputBlock();
+        double[] out = outputBlock();
+        while (inputs.hasRemaining()) {
+            int count = Math.min(blockSize, inputs.remaining());
+            inputs.get(in, 0, count);
+            function.valueBlock(in, out, count, this);
+            outputs.put(out, 0, count);
+        }
+    }
+
+    /**
+     * Evaluates a function of several variables at outputs.length points, writing
+     * function.value(point i) to outputs[i], where point i takes environment[slot][i] for each variable
+     * @param function the function to evaluate
+     * @param environment one column of values per variable slot
+     * @param outputs the array receiving the results
+     */
+    public void evaluate(Function function, double[][] environment, double[] outputs) {
+        int length = outputs.length;
+        for (int slot = 0; slot < environment.length; slot++) {
+            if (environment[slot].length < length) {
+                throw new IndexOutOfBoundsException("Column of slot " + slot + " has " + environment[slot].length
+                        + " values but " + length + " are needed");
+            }
+        }
+        double[] in = inputBlock();
+        double[] out = outputBlock();
+        this.environment = environment;
+        try {
+            for (int start = 0; start < length; start += blockSize) {
+                int count = Math.min(blockSize, length - start);
+                if (environment.length > 0) {
+                    System.arraycopy(environment[0], start, in, 0, count);
+                }
+                environmentStart = start;
+                function.valueBlock(in, out, count, this);
+                System.arraycopy(out, 0, outputs, start, count);
+            }
+        } finally {
+            this.environment = null;
+        }
+    }
+
+    /**
+     * Copies the current block of the given variable's column, for variables other than x
+     * @param variable the variable whose values are wanted
+     * @param outputs the column receiving the values
+     * @param length the number of values in the block
+     */
+    void variableBlock(Variable variable, double[] outputs, int length) {
+        if (environment == null || variable.getSlot() >= environment.length) {
+            throw new UnsupportedOperationException("Variable " + variable + " needs an environment to be evaluated");
+        }
+        System.arraycopy(environment[variable.getSlot()], environmentStart, outputs, 0, length);
+    }
+
+    /**
+     * Takes a block-sized column from the scratch pool
+     * @return a column with room for one block of values
+     */
+    double[] acquire() {
+        double[] column = scratch.poll();
+        return column != null ? column : new double[blockSize];
+    }
+
+    /**
+     * Returns a column taken with acquire to the scratch pool
+     * @param column the column to return
+     */
+    void release(double[] column) {
+        scratch.push(column);
+    }
+
+    private double[] inputBlock() {
+        if (inputBlock == null) {
+            inputBlock = new double[blockSize];
+        }
+        return inputBlock;
+    }
+
+    private double[] outputBlock() {
+        if (outputBlock == null) {
+            outputBlock = new double[blockSize];
+        }
+        return outputBlock;
+    }
+}
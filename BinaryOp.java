@@ -1,4 +1,9 @@
 // BinaryOp.java
+/**
+ * The BinaryOp class applies an arithmetic operator to two operand functions.
+ * The operator and operands are final and value(x) keeps no state between calls,
+ * so a BinaryOp tree can be evaluated from several threads at once.
+ */
 public class BinaryOp extends Function {
 
     public enum Operator {
@@ -24,6 +29,7 @@ public class BinaryOp extends Function {
     private final Operator operator;
     private final Function leftOperand;
     private final Function rightOperand;
+    private int hash;
 
     public BinaryOp(Operator operator, Function leftOperand, Function rightOperand) {
         this.operator = operator;
@@ -31,6 +37,18 @@ public class BinaryOp extends Function {
         this.rightOperand = rightOperand;
     }
 
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public Function getLeftOperand() {
+        return leftOperand;
+    }
+
+    public Function getRightOperand() {
+        return rightOperand;
+    }
+
      @Override
     public double value() {
         double leftValue = leftOperand.value();
@@ -74,30 +92,212 @@ public class BinaryOp extends Function {
     }
 
     @Override
-    public Function derivative() {
+    public double value(double[] environment) {
+        double leftValue = leftOperand.value(environment);
+        double rightValue = rightOperand.value(environment);
+
         switch (operator) {
             case Add:
+                return leftValue + rightValue;
             case Subtract:
-                return new BinaryOp(operator, leftOperand.derivative(), rightOperand.derivative());
+                return leftValue - rightValue;
+            case Multiply:
+                return leftValue * rightValue;
+            case Divide:
+                return leftValue / rightValue;
+            case Power:
+                return Math.pow(leftValue, rightValue);
+            default:
+                throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
+        }
+    }
+
+    @Override
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        leftOperand.valueBlock(inputs, outputs, length, evaluator);
+        if (rightOperand instanceof Number) {
+            // Constant right operands are applied as a scalar without a scratch column
+            applyScalar(outputs, ((Number) rightOperand).getValue(), length);
+            return;
+        }
+        double[] right = evaluator.acquire();
+        rightOperand.valueBlock(inputs, right, length, evaluator);
+        switch (operator) {
+            case Add:
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = outputs[i] + right[i];
+                }
+                break;
+            case Subtract:
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = outputs[i] - right[i];
+                }
+                break;
+            case Multiply:
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = outputs[i] * right[i];
+                }
+                break;
+            case Divide:
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = outputs[i] / right[i];
+                }
+                break;
+            case Power:
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = Math.pow(outputs[i], right[i]);
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
+        }
+        evaluator.release(right);
+    }
+
+    private void applyScalar(double[] outputs, double right, int length) {
+        switch (operator) {
+            case Add:
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = outputs[i] + right;
+                }
+                break;
+            case Subtract:
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = outputs[i] - right;
+                }
+                break;
+            case Multiply:
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = outputs[i] * right;
+                }
+                break;
+            case Divide:
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = outputs[i] / right;
+                }
+                break;
+            case Power:
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = Math.pow(outputs[i], right);
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
+        }
+    }
+
+    @Override
+    public Interval interval(Interval x) {
+        return interval(leftOperand.interval(x), rightOperand.interval(x));
+    }
+
+    @Override
+    public Interval interval(Interval[] environment) {
+        return interval(leftOperand.interval(environment), rightOperand.interval(environment));
+    }
+
+    /**
+     * Combines the operand ranges. Equal operands are the same value at every point, so x - x, x / x and
+     * x * x get their exact ranges instead of treating the two sides as independent
+     */
+    private Interval interval(Interval leftValue, Interval rightValue) {
+        boolean same = leftOperand.equals(rightOperand);
+        switch (operator) {
+            case Add:
+                return leftValue.add(rightValue);
+            case Subtract:
+                return same && !leftValue.isEmpty() ? Interval.point(0.0) : leftValue.subtract(rightValue);
+            case Multiply:
+                return same ? leftValue.pow(2.0) : leftValue.multiply(rightValue);
+            case Divide:
+                if (same && !leftValue.isEmpty() && !(leftValue.getLower() == 0 && leftValue.getUpper() == 0)) {
+                    return Interval.point(1.0);
+                }
+                return leftValue.divide(rightValue);
+            case Power:
+                return leftValue.pow(rightValue);
+            default:
+                throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
+        }
+    }
+
+    @Override
+    public Dual dual(double x) {
+        Dual leftValue = leftOperand.dual(x);
+        if (operator == Operator.Power && rightOperand instanceof Number) {
+            return leftValue.pow(((Number) rightOperand).getValue());
+        }
+        Dual rightValue = rightOperand.dual(x);
+
+        switch (operator) {
+            case Add:
+                return leftValue.add(rightValue);
+            case Subtract:
+                return leftValue.subtract(rightValue);
+            case Multiply:
+                return leftValue.multiply(rightValue);
+            case Divide:
+                return leftValue.divide(rightValue);
+            case Power:
+                return leftValue.pow(rightValue);
+            default:
+                throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
+        }
+    }
+
+    @Override
+    public double[] taylor(double x, int order) {
+        double[] leftSeries = leftOperand.taylor(x, order);
+        if (operator == Operator.Power && rightOperand instanceof Number) {
+            return Taylor.pow(leftSeries, ((Number) rightOperand).getValue());
+        }
+        double[] rightSeries = rightOperand.taylor(x, order);
+
+        switch (operator) {
+            case Add:
+                return Taylor.add(leftSeries, rightSeries);
+            case Subtract:
+                return Taylor.subtract(leftSeries, rightSeries);
+            case Multiply:
+                return Taylor.multiply(leftSeries, rightSeries);
+            case Divide:
+                return Taylor.divide(leftSeries, rightSeries);
+            case Power:
+                return Taylor.pow(leftSeries, rightSeries);
+            default:
+                throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
+        }
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
+        switch (operator) {
+            case Add:
+            case Subtract:
+                return new BinaryOp(operator, leftOperand.derivative(slot), rightOperand.derivative(slot));
             case Multiply:
                 return new BinaryOp(Operator.Add,
-                        new BinaryOp(Operator.Multiply, leftOperand.derivative(), rightOperand),
-                        new BinaryOp(Operator.Multiply, leftOperand, rightOperand.derivative()));
+                        new BinaryOp(Operator.Multiply, leftOperand.derivative(slot), rightOperand),
+                        new BinaryOp(Operator.Multiply, leftOperand, rightOperand.derivative(slot)));
             case Divide:
                 return new BinaryOp(Operator.Divide,
                         new BinaryOp(Operator.Subtract,
-                                new BinaryOp(Operator.Multiply, leftOperand.derivative(), rightOperand),
-                                new BinaryOp(Operator.Multiply, leftOperand, rightOperand.derivative())),
+                                new BinaryOp(Operator.Multiply, leftOperand.derivative(slot), rightOperand),
+                                new BinaryOp(Operator.Multiply, leftOperand, rightOperand.derivative(slot))),
                         new BinaryOp(Operator.Power, rightOperand, new Number(2)));
             case Power:
                 if (rightOperand instanceof Number) {
                     double power = ((Number) rightOperand).getValue();
                     return new BinaryOp(Operator.Multiply,
                             new BinaryOp(Operator.Multiply, new Number(power), new BinaryOp(Operator.Power, leftOperand, new Number(power - 1))),
-                            leftOperand.derivative());
-                } else {
-                    throw new UnsupportedOperationException("Differentiated power is supported only for constant exponents.");
+                            leftOperand.derivative(slot));
                 }
+                // d(f^g) = f^g * (g' * log(f) + g * f' / f)
+                return new BinaryOp(Operator.Multiply, this,
+                        new BinaryOp(Operator.Add,
+                                new BinaryOp(Operator.Multiply, rightOperand.derivative(slot), new Log(leftOperand)),
+                                new BinaryOp(Operator.Multiply, rightOperand,
+                                        new BinaryOp(Operator.Divide, leftOperand.derivative(slot), leftOperand))));
             default:
                 throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
         }
@@ -108,6 +308,29 @@ public class BinaryOp extends Function {
         return "(" + leftOperand.toString() + " " + operatorToString() + " " + rightOperand.toString() + ")";
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof BinaryOp) {
+            BinaryOp op = (BinaryOp) obj;
+            return operator == op.operator && hashCode() == op.hashCode()
+                    && leftOperand.equals(op.leftOperand) && rightOperand.equals(op.rightOperand);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = (31 * (31 * operator.ordinal() + leftOperand.hashCode())) + rightOperand.hashCode();
+            hash = h;
+        }
+        return h;
+    }
+
     private String operatorToString() {
         switch (operator) {
             case Add:
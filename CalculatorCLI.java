@@ -0,0 +1,287 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CalculatorCLI class evaluates functions over a stream of x values without a GUI.
+ * It reads numbers separated by whitespace or commas from standard input or a file, evaluates every
+ * function and the requested derivatives one block at a time with a BatchEvaluator, and writes one
+ * comma-separated row per input value. Input and output go through fixed-size channel buffers,
+ * so memory use does not grow with the size of the input.
+ * The number of rows and the throughput are reported on standard error.
+ * <pre>
+ * java -cp calculator.jar CalculatorCLI [-i input] [-o output] [-d order] [-b blockSize] [--no-header] expression...
+ * </pre>
+ * @author Jenny Zhang
+ */
+public class CalculatorCLI {
+
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+    private static final int BUFFER_BYTES = 1 << 16;
+    /** Longer than any double literal Double.toString produces, with room for leading zeros */
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private final List<Function> columns = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final int blockSize;
+    private final BatchEvaluator evaluator;
+
+    private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+    private final byte[] token = new byte[MAX_TOKEN_LENGTH];
+    private final StringBuilder row = new StringBuilder();
+    private char[] chars = new char[BUFFER_BYTES];
+    private int tokenLength;
+    private long line = 1;
+
+    /**
+     * Constructs an evaluator for the given functions
+     * @param functions the functions to evaluate, in output column order
+     * @param expressions the text of the functions, used for the column names
+     * @param order the highest derivative order to output for every function, 0 for none
+     * @param blockSize the number of values evaluated at once
+     */
+    public CalculatorCLI(List<Function> functions, List<String> expressions, int order, int blockSize) {
+        if (order < 0) {
+            throw new IllegalArgumentException("Derivative order must not be negative: " + order);
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.evaluator = new BatchEvaluator(blockSize);
+        for (int i = 0; i < functions.size(); i++) {
+            Function function = functions.get(i);
+            for (int k = 0; k <= order; k++) {
+                columns.add(function);
+                names.add(columnName(expressions.get(i), k));
+                if (k < order) {
+                    function = function.derivative();
+                }
+            }
+        }
+    }
+
+    private static String columnName(String expression, int order) {
+        if (order == 0) {
+            return expression;
+        } else if (order == 1) {
+            return "d/dx " + expression;
+        }
+        return "d^" + order + "/dx^" + order + " " + expression;
+    }
+
+    /**
+     * Reads every value from the input, evaluates the columns and writes the rows to the output
+     * @param input the channel the x values are read from
+     * @param output the channel the rows are written to
+     * @param header true to write the column names as the first row
+     * @return the number of rows written
+     * @throws IOException if reading or writing fails
+     * @throws IllegalArgumentException if the input contains something other than numbers
+     */
+    public long run(ReadableByteChannel input, WritableByteChannel output, boolean header) throws IOException {
+        if (header) {
+            row.append('x');
+            for (String name : names) {
+                row.append(',').append('"').append(name.replace("\"", "\"\"")).append('"');
+            }
+            row.append('\n');
+            writeHeader(output);
+        }
+        double[] xs = new double[blockSize];
+        double[][] values = new double[columns.size()][blockSize];
+        long rows = 0;
+        int length;
+        in.limit(0);
+        while ((length = readBlock(input, xs)) > 0) {
+            for (int c = 0; c < columns.size(); c++) {
+                evaluator.evaluate(columns.get(c), xs, 0, values[c], 0, length);
+            }
+            for (int i = 0; i < length; i++) {
+                row.append(xs[i]);
+                for (double[] column : values) {
+                    row.append(',').append(column[i]);
+                }
+                row.append('\n');
+            }
+            write(output);
+            rows += length;
+        }
+        flush(output);
+        return rows;
+    }
+
+    /**
+     * Fills xs with the next values of the input and returns how many were read, 0 at the end of the input
+     */
+    private int readBlock(ReadableByteChannel input, double[] xs) throws IOException {
+        int count = 0;
+        while (count < xs.length) {
+            if (!in.hasRemaining()) {
+                in.clear();
+                int read = input.read(in);
+                in.flip();
+                if (read < 0) {
+                    if (tokenLength > 0) {
+                        xs[count++] = parseToken();
+                    }
+                    return count;
+                }
+                continue;
+            }
+            byte ch = in.get();
+            if (ch == ' ' || ch == ',' || ch == '\t' || ch == '\r' || ch == '\n') {
+                if (tokenLength > 0) {
+                    xs[count++] = parseToken();
+                }
+                if (ch == '\n') {
+                    line++;
+                }
+            } else if (tokenLength == token.length) {
+                throw new IllegalArgumentException("Value too long on line " + line);
+            } else {
+                token[tokenLength++] = ch;
+            }
+        }
+        return count;
+    }
+
+    private double parseToken() {
+        String text = new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1);
+        tokenLength = 0;
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number on line " + line + ": " + text);
+        }
+    }
+
+    /**
+     * Moves the pending row text into the output buffer, writing the buffer to the channel whenever it fills up
+     */
+    private void write(WritableByteChannel output) throws IOException {
+        int length = row.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, 2 * chars.length)];
+        }
+        row.getChars(0, length, chars, 0);
+        row.setLength(0);
+        byte[] bytes = out.array();
+        int i = 0;
+        while (i < length) {
+            if (!out.hasRemaining()) {
+                flush(output);
+            }
+            int position = out.position();
+            int end = Math.min(length, i + out.remaining());
+            for (; i < end; i++) {
+                // Rows are ASCII; a non-ASCII header is encoded separately by writeHeader
+                bytes[position++] = (byte) chars[i];
+            }
+            out.position(position);
+        }
+    }
+
+    private void writeHeader(WritableByteChannel output) throws IOException {
+        byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+        row.setLength(0);
+        for (byte b : bytes) {
+            if (!out.hasRemaining()) {
+                flush(output);
+            }
+            out.put(b);
+        }
+    }
+
+    private void flush(WritableByteChannel output) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            output.write(out);
+        }
+        out.clear();
+    }
+
+    public static void main(String[] args) {
+        String inputPath = null;
+        String outputPath = null;
+        int order = 0;
+        int blockSize = DEFAULT_BLOCK_SIZE;
+        boolean header = true;
+        List<String> expressions = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-i":
+                        inputPath = argument(args, ++i);
+                        break;
+                    case "-o":
+                        outputPath = argument(args, ++i);
+                        break;
+                    case "-d":
+                        order = Integer.parseInt(argument(args, ++i));
+                        break;
+                    case "-b":
+                        blockSize = Integer.parseInt(argument(args, ++i));
+                        break;
+                    case "--no-header":
+                        header = false;
+                        break;
+                    default:
+                        expressions.add(args[i]);
+                }
+            }
+            if (expressions.isEmpty()) {
+                throw new IllegalArgumentException("No expression given");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: CalculatorCLI [-i input] [-o output] [-d order] [-b blockSize] [--no-header] expression...");
+            System.exit(2);
+            return;
+        }
+
+        List<Function> functions = new ArrayList<>();
+        for (String expression : expressions) {
+            try {
+                functions.add(ExpressionParser.parse(expression));
+            } catch (ExpressionParseException e) {
+                System.err.println("Invalid expression \"" + expression + "\": " + e.getMessage());
+                System.exit(2);
+                return;
+            }
+        }
+
+        try (ReadableByteChannel input = inputPath == null
+                ? Channels.newChannel(System.in)
+                : FileChannel.open(Paths.get(inputPath), StandardOpenOption.READ);
+             WritableByteChannel output = outputPath == null
+                     ? Channels.newChannel(System.out)
+                     : FileChannel.open(Paths.get(outputPath), StandardOpenOption.WRITE,
+                             StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CalculatorCLI cli = new CalculatorCLI(functions, expressions, order, blockSize);
+            long start = System.nanoTime();
+            long rows = cli.run(input, output, header);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf("%d rows in %.3f s (%.0f rows/s)%n", rows, seconds, rows / Math.max(seconds, 1e-9));
+        } catch (IOException | IllegalArgumentException | UnsupportedOperationException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static String argument(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+}
@@ -1,15 +1,36 @@
 import javax.swing.*;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Stack;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class CalculatorGUI extends JFrame implements ActionListener {
 
+    private static final long serialVersionUID = 1L;
+
     private JTextField displayField;
     private StringBuilder inputExpression;
     private int cursorPosition;
     private SimpleAttributeSet cursorAttribute;
+    /** Mirrors every edit of inputExpression so that "=" re-parses only what changed since the last parse */
+    private final IncrementalParser parser = new IncrementalParser();
+
+    /** How long an evaluation may run before it is abandoned */
+    private static final int EVALUATION_TIMEOUT_MILLIS = 10000;
+
+    /** Runs evaluations so that the event dispatch thread never waits for parsing or differentiation */
+    private final ExecutorService evaluationExecutor = newEvaluationExecutor();
+    /** The evaluation whose result will be shown, or null; only touched on the event dispatch thread */
+    private SwingWorker<String, String> evaluation;
+    private Timer evaluationTimeout;
 
     public CalculatorGUI() {
         setTitle("Calculator");
@@ -47,6 +68,8 @@ public class CalculatorGUI extends JFrame implements ActionListener {
     @Override
     public void actionPerformed(ActionEvent e) {
         String command = e.getActionCommand();
+        // Any new input supersedes an evaluation that is still running
+        cancelEvaluation();
 
         if (command.equals("=")) {
             evaluateExpression();
@@ -63,6 +86,7 @@ public class CalculatorGUI extends JFrame implements ActionListener {
             // Handle delete button
             handleDelete();
         } else {
+            parser.insert(cursorPosition, command);
             if (inputExpression.length() > 0) {
                 inputExpression.insert(cursorPosition, command);
                 cursorPosition++;
@@ -75,211 +99,231 @@ public class CalculatorGUI extends JFrame implements ActionListener {
         }
     }
 
+    /**
+     * Parses the current input and starts evaluating it in the background. Parsing stays on the
+     * event dispatch thread because the incremental parser reuses the previous parse and makes it cheap.
+     * Stages and the result are shown on the display from the event dispatch thread; an evaluation
+     * that is superseded or times out is cancelled and its result dropped.
+     */
     private void evaluateExpression() {
         String expression = inputExpression.toString();
-
-        if (containsVariable(expression)) {
+        boolean variable = containsVariable(expression);
+        int order = 0;
+        if (variable) {
             if (containsDerivative(expression)) {
-                calculateDerivative(expression);
+                order = 1;
             } else if (containsSecondDerivative(expression)) {
-                calculateSecondDerivative(expression);
+                order = 2;
+            } else {
+                return;
             }
-        } else {
-            try {
-                Function resultFunction = parseExpression(expression);
-                double result = resultFunction.value();
-                displayField.setText("Result: " + result);
-            } catch (IllegalArgumentException e) {
-                displayField.setText("Error: " + e.getMessage());
+        }
+        Function function;
+        try {
+            function = parser.parse(expression.length() - order);
+        } catch (IllegalArgumentException e) {
+            displayField.setText("Error: " + e.getMessage());
+            return;
+        }
+        int derivativeOrder = order;
+        SwingWorker<String, String> worker = new SwingWorker<String, String>() {
+            @Override
+            protected String doInBackground() {
+                return computeResult(function, variable, derivativeOrder, this::publish);
+            }
+
+            @Override
+            protected void process(List<String> stages) {
+                if (evaluation == this) {
+                    displayField.setText(stages.get(stages.size() - 1));
+                }
             }
+
+            @Override
+            protected void done() {
+                if (evaluation != this) {
+                    return;
+                }
+                finishEvaluation();
+                try {
+                    String result = get();
+                    if (result != null) {
+                        displayField.setText(result);
+                    } else {
+                        updateDisplay();
+                    }
+                } catch (CancellationException | InterruptedException e) {
+                    updateDisplay();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    displayField.setText("Error: " + (cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName()));
+                }
+            }
+        };
+        evaluation = worker;
+        evaluationTimeout = new Timer(EVALUATION_TIMEOUT_MILLIS, event -> {
+            if (evaluation == worker) {
+                cancelEvaluation();
+                displayField.setText("Error: Evaluation timed out");
+            }
+        });
+        evaluationTimeout.setRepeats(false);
+        evaluationTimeout.start();
+        displayField.setText("Evaluating...");
+        evaluationExecutor.execute(worker);
+    }
+
+    /**
+     * Computes the text to display for the parsed input, reporting each stage as it starts.
+     * Runs off the event dispatch thread and must not touch Swing components.
+     * @param function the parsed input, without its derivative marks
+     * @param variable true if the input contains a variable
+     * @param order the number of derivative marks, 1 or 2 when the input contains a variable
+     * @return the text to display
+     */
+    private String computeResult(Function function, boolean variable, int order, Consumer<String> stage) {
+        if (variable) {
+            stage.accept("Differentiating...");
+            return order == 1 ? calculateDerivative(function) : calculateSecondDerivative(function);
+        }
+        try {
+            double result = function.value();
+            return "Result: " + result;
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            return "Error: " + e.getMessage();
         }
     }
 
+    /**
+     * Cancels the running evaluation, if any. The worker thread is interrupted, and
+     * a computation that does not notice keeps running until it finishes, but its result is never shown.
+     */
+    private void cancelEvaluation() {
+        SwingWorker<String, String> running = evaluation;
+        if (running != null) {
+            finishEvaluation();
+            running.cancel(true);
+        }
+    }
 
-private Function parseExpression(String expression) throws IllegalArgumentException {
-    expression = expression.replaceAll("\\s+", ""); // Remove whitespace from the expression
+    private void finishEvaluation() {
+        evaluation = null;
+        if (evaluationTimeout != null) {
+            evaluationTimeout.stop();
+            evaluationTimeout = null;
+        }
+    }
 
-    Stack<Function> operands = new Stack<>();
-    Stack<BinaryOp.Operator> operators = new Stack<>();
-    boolean expectOperand = true;
+    /**
+     * Returns an executor with one virtual thread per evaluation when the runtime has them (Java 21),
+     * or a cached pool of daemon threads otherwise, so abandoned evaluations never block new ones.
+     */
+    private static ExecutorService newEvaluationExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "calculator-evaluation");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
 
-    for (int i = 0; i < expression.length(); i++) {
-        char ch = expression.charAt(i);
 
-        if (Character.isDigit(ch) || ch == '.') {
-            // If the character is a digit or a decimal point, parse the number and push it to the operands stack
-            int startIndex = i;
-            while (i < expression.length() && (Character.isDigit(expression.charAt(i)) || expression.charAt(i) == '.')) {
-                i++;
-            }
-            double num = Double.parseDouble(expression.substring(startIndex, i));
-            operands.push(new Number(num));
-            i--; // Decrement i to handle the index increment in the loop
-            expectOperand = false;
-        } else if (Character.isLetter(ch)) {
-            // If the character is a letter, check for Log, Cos, Sin, and Exp functions
-            int startIndex = i;
+private boolean containsVariable(String expression) {
+    // Any run of letters that is not followed by an opening parenthesis is a variable name
+    int i = 0;
+    while (i < expression.length()) {
+        if (Character.isLetter(expression.charAt(i))) {
             while (i < expression.length() && Character.isLetter(expression.charAt(i))) {
                 i++;
             }
-            String functionName = expression.substring(startIndex, i);
-
-            if (i < expression.length() && expression.charAt(i) == '(') {
-                // Special function with opening parenthesis (e.g., sin(x), cos(x), log(x), exp(x))
-                i++; // Move past the opening parenthesis
-                Function operand = parseExpression(expression.substring(i)); // Recursively parse the operand
-                i += findClosingParenthesis(expression.substring(i)) + 1; // Find the index of the closing parenthesis
-                operands.push(createSpecialFunction(functionName, operand));
-            } else {
-                // Regular variable (e.g., x)
-                operands.push(new Variable());
-                i--; // Decrement i to handle the index increment in the loop
-            }
-            expectOperand = false;
-        } else if (isOperator(ch)) {
-            // If the character is an operator
-            BinaryOp.Operator currentOperator = getOperator(ch);
-
-            if (expectOperand && (currentOperator == BinaryOp.Operator.Add || currentOperator == BinaryOp.Operator.Subtract)) {
-                // Handle unary plus and minus
-                if (currentOperator == BinaryOp.Operator.Subtract) {
-                    // Convert unary minus to binary minus with zero as the left operand
-                    operands.push(new Number(0));
-                } else {
-                    // Unary plus can be ignored
-                    continue;
-                }
-            } else {
-                // Binary operator
-                while (!operators.isEmpty() && hasPrecedence(operators.peek(), currentOperator)) {
-                    applyOperator(operands, operators);
-                }
-            }
-
-            operators.push(currentOperator);
-            expectOperand = true;
-        } else if (ch == '(') {
-            // If the character is an opening parenthesis, push it to the operators stack
-            operators.push(BinaryOp.Operator.LeftParenthesis);
-            expectOperand = true;
-        } else if (ch == ')') {
-            // If the character is a closing parenthesis, apply operators until a matching opening parenthesis is found
-            while (!operators.isEmpty() && operators.peek() != BinaryOp.Operator.LeftParenthesis) {
-                applyOperator(operands, operators);
+            if (i >= expression.length() || expression.charAt(i) != '(') {
+                return true;
             }
-            operators.pop(); // Pop the matching opening parenthesis
-            expectOperand = false;
         } else {
-            throw new IllegalArgumentException("Invalid character: " + ch);
+            i++;
         }
     }
+    return false;
+}
 
-    // Apply remaining operators
-    while (!operators.isEmpty()) {
-        applyOperator(operands, operators);
-    }
-
-    if (operands.size() != 1 || !operators.isEmpty()) {
-        throw new IllegalArgumentException("Invalid expression");
-    }
-
-    return operands.pop();
+private boolean containsDerivative(String expression) {
+    return expression.endsWith("'") && !containsSecondDerivative(expression);
 }
 
-private boolean isOperator(char ch) {
-    return ch == '+' || ch == '-' || ch == '*' || ch == '/';
+private boolean containsSecondDerivative(String expression) {
+    return expression.endsWith("''");
 }
 
-private Function createSpecialFunction(String functionName, Function operand) {
-    switch (functionName.toLowerCase()) {
-        case "sin":
-            return new Sin(operand);
-        case "cos":
-            return new Cos(operand);
-        case "log":
-            return new Log(operand);
-        case "exp":
-            return new Exp(operand);
-        default:
-            throw new IllegalArgumentException("Invalid function name: " + functionName);
+private String calculateDerivative(Function function) {
+    try {
+        return "Derivative: " + function.derivative();
+    } catch (IllegalArgumentException | UnsupportedOperationException e) {
+        return "Error: " + e.getMessage();
     }
 }
 
-// Rest of the code remains the same
-
-private int findClosingParenthesis(String expression) {
-    int openParentheses = 1;
-    int i = 0;
-    while (openParentheses > 0 && i < expression.length()) {
-        char ch = expression.charAt(i);
-        if (ch == '(') {
-            openParentheses++;
-        } else if (ch == ')') {
-            openParentheses--;
-        }
-        i++;
-    }
-    if (openParentheses > 0) {
-        throw new IllegalArgumentException("Unbalanced parentheses");
+private String calculateSecondDerivative(Function function) {
+    try {
+        return "Second derivative: " + function.derivative().derivative();
+    } catch (IllegalArgumentException | UnsupportedOperationException e) {
+        return "Error: " + e.getMessage();
     }
-    return i - 1;
 }
 
-private BinaryOp.Operator getOperator(char ch) {
-    switch (ch) {
-        case '+':
-            return BinaryOp.Operator.Add;
-        case '-':
-            return BinaryOp.Operator.Subtract;
-        case '*':
-            return BinaryOp.Operator.Multiply;
-        case '/':
-            return BinaryOp.Operator.Divide;
-        default:
-            throw new IllegalArgumentException("Invalid operator: " + ch);
-    }
+private void updateDisplay() {
+    // Show the cursor as a bar at its position in the expression
+    StringBuilder display = new StringBuilder(inputExpression);
+    display.insert(cursorPosition, '|');
+    displayField.setText(display.toString());
 }
 
-private boolean hasPrecedence(BinaryOp.Operator op1, BinaryOp.Operator op2) {
-    if (op2 == BinaryOp.Operator.LeftParenthesis) {
-        return false; // Parenthesis has the highest precedence
+private void handleBackspace() {
+    // Remove the character before the cursor
+    if (cursorPosition > 0) {
+        inputExpression.deleteCharAt(cursorPosition - 1);
+        parser.delete(cursorPosition - 1, cursorPosition);
+        cursorPosition--;
     }
-    return getPrecedence(op1) >= getPrecedence(op2);
+    updateDisplay();
 }
 
-private int getPrecedence(BinaryOp.Operator op) {
-    switch (op) {
-        case Add:
-        case Subtract:
-            return 1;
-        case Multiply:
-        case Divide:
-            return 2;
-        default:
-            return 0;
+private void handleForward() {
+    // Move the cursor one character to the right
+    if (cursorPosition < inputExpression.length()) {
+        cursorPosition++;
     }
+    updateDisplay();
 }
 
-private void applyOperator(Stack<Function> operands, Stack<BinaryOp.Operator> operators) {
-    Function rightOperand = operands.pop();
-    Function leftOperand = operands.pop();
-    BinaryOp.Operator op = operators.pop();
-    BinaryOp binaryOp = new BinaryOp(op, leftOperand, rightOperand);
-    operands.push(binaryOp);
+private void handleDelete() {
+    // Remove the character after the cursor
+    if (cursorPosition < inputExpression.length()) {
+        inputExpression.deleteCharAt(cursorPosition);
+        parser.delete(cursorPosition, cursorPosition + 1);
+    }
+    updateDisplay();
 }
 
 private void handleClearButton() {
     // Clear the input expression field
     inputExpression.setLength(0);
+    parser.clear();
+    cursorPosition = 0;
 
     // Clear the display field
     displayField.setText("");
 }
 
 private void handleSpecialFunction(String functionName) {
-        // Append the special function with opening and closing parenthesis to the input expression
-        inputExpression.append(functionName).append("(");
-        displayField.setText(inputExpression.toString());
+        // Insert the special function with its opening parenthesis at the cursor
+        inputExpression.insert(cursorPosition, functionName + "(");
+        parser.insert(cursorPosition, functionName + "(");
+        cursorPosition += functionName.length() + 1;
+        updateDisplay();
     }
 
     public static void main(String[] args) {
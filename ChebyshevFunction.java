@@ -0,0 +1,444 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The ChebyshevFunction class is a surrogate for an expensive Function of x on a fixed domain [a, b]:
+ * a piecewise Chebyshev series that matches the function to within a requested absolute tolerance.
+ * Evaluating it finds the piece by binary search and runs Clenshaw's recurrence over that piece's
+ * coefficients, a short loop of multiply-adds whatever the depth of the original tree.
+ * <p>
+ * Each piece is built by sampling the function at Chebyshev points and converting the samples
+ * to coefficients, doubling the number of points, up to degree 32, until the trailing coefficients
+ * are small enough that the ones beyond the series would be too, even if they fell off only as 1/k^2
+ * the way they do at a kink. The series is then cut where the coefficients left out add up to a
+ * fraction of the tolerance. The result is checked against the function halfway between every
+ * pair of sample points, where an interpolant strays furthest. A piece that does not converge or fails
+ * the check is split in half, so smooth stretches get one long piece and a kink gets many short ones.
+ * Pieces are halved down to the spacing of doubles, which a kink needs to reach a tight tolerance.
+ * Building fails with an IllegalArgumentException if the function is not finite at a sample point,
+ * if a piece too narrow to halve still misses the tolerance, as at a jump, or if more than 4096 pieces are needed.
+ * <p>
+ * The derivative is another ChebyshevFunction, computed from the coefficients in O(n) per piece.
+ * It approximates the derivative of the original function, but its error is not checked and
+ * is larger than the tolerance, by about the degree squared. Outside [a, b] the surrogate is NaN.
+ * Instances are immutable and safe to evaluate concurrently.
+ * @author Jenny Zhang
+ */
+public class ChebyshevFunction extends Function {
+
+    /** Highest degree of the series on one piece before the piece is split, since each degree costs a step of Clenshaw's recurrence */
+    private static final int MAX_DEGREE = 32;
+
+    /** Degree of the first series tried on every piece */
+    private static final int INITIAL_DEGREE = 8;
+
+    /** Most pieces the domain may be split into, which bounds the work and memory spent on a function that never converges */
+    private static final int MAX_PIECES = 4096;
+
+    /** Part of the tolerance the left-out coefficients may use, keeping the rest for the sampled error */
+    private static final double TRUNCATION_SHARE = 0.25;
+
+    private final Function source;
+    /** How many times the surrogate built from the source has been differentiated to give this one */
+    private final int order;
+    private final double tolerance;
+    /** The piece boundaries in increasing order, from a to b */
+    private final double[] breaks;
+    /** The Chebyshev coefficients of each piece, in the variable scaled from the piece to [-1, 1] */
+    private final double[][] coefficients;
+    /** The coefficients of each piece's derivative with respect to x */
+    private final double[][] slopes;
+    private final double maxError;
+    private int hash;
+
+    private ChebyshevFunction(Function source, int order, double tolerance, double[] breaks, double[][] coefficients, double maxError) {
+        this.source = source;
+        this.order = order;
+        this.tolerance = tolerance;
+        this.breaks = breaks;
+        this.coefficients = coefficients;
+        this.maxError = maxError;
+        this.slopes = new double[coefficients.length][];
+        for (int i = 0; i < coefficients.length; i++) {
+            slopes[i] = derivativeCoefficients(coefficients[i], breaks[i + 1] - breaks[i]);
+        }
+    }
+
+    /**
+     * Builds a surrogate for the function on [a, b]
+     * @param function the function of x to approximate
+     * @param a the lower end of the domain
+     * @param b the upper end of the domain, greater than a
+     * @param tolerance the largest absolute error allowed between the surrogate and the function
+     * @return the surrogate
+     * @throws IllegalArgumentException if the function is not finite on [a, b] or cannot be approximated that closely
+     */
+    public static ChebyshevFunction approximate(Function function, double a, double b, double tolerance) {
+        if (!(a < b) || Double.isInfinite(a) || Double.isInfinite(b)) {
+            throw new IllegalArgumentException("Invalid domain: " + a + " to " + b);
+        }
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Tolerance must be positive: " + tolerance);
+        }
+        Builder builder = new Builder(function, tolerance);
+        builder.build(a, b);
+        builder.breaks.add(b);
+        double[] breaks = new double[builder.breaks.size()];
+        for (int i = 0; i < breaks.length; i++) {
+            breaks[i] = builder.breaks.get(i);
+        }
+        return new ChebyshevFunction(function, 0, tolerance, breaks, builder.pieces.toArray(new double[0][]), builder.maxError);
+    }
+
+    /**
+     * Returns the function the surrogate was built from; a derivative of a surrogate returns the same source
+     * @return the source function
+     */
+    public Function getSource() {
+        return source;
+    }
+
+    /**
+     * Returns which derivative of the source this surrogate approximates
+     * @return 0 for a surrogate built by approximate, 1 for its derivative and so on
+     */
+    public int getOrder() {
+        return order;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public double getLowerBound() {
+        return breaks[0];
+    }
+
+    public double getUpperBound() {
+        return breaks[breaks.length - 1];
+    }
+
+    public int getPieceCount() {
+        return coefficients.length;
+    }
+
+    /**
+     * Returns the highest degree of any piece's series
+     * @return the degree
+     */
+    public int getDegree() {
+        int degree = 0;
+        for (double[] piece : coefficients) {
+            degree = Math.max(degree, piece.length - 1);
+        }
+        return degree;
+    }
+
+    /**
+     * Returns the largest error against the source function found by the check at build time,
+     * which is at most the tolerance; derivatives of a surrogate report the error of the surrogate they came from
+     * @return the measured error
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    @Override
+    public double value() {
+        throw new UnsupportedOperationException("Input expected.");
+    }
+
+    @Override
+    public double value(double x) {
+        int piece = piece(x);
+        if (piece < 0) {
+            return Double.NaN;
+        }
+        return clenshaw(coefficients[piece], scaled(x, piece));
+    }
+
+    @Override
+    public Dual dual(double x) {
+        int piece = piece(x);
+        if (piece < 0) {
+            return new Dual(Double.NaN, Double.NaN);
+        }
+        double t = scaled(x, piece);
+        return new Dual(clenshaw(coefficients[piece], t), clenshaw(slopes[piece], t));
+    }
+
+    /**
+     * Bounds the surrogate on each piece the range overlaps by its constant coefficient
+     * plus or minus the sum of the others, since every Chebyshev polynomial stays within [-1, 1]
+     */
+    @Override
+    public Interval interval(Interval x) {
+        if (x.isEmpty() || x.getUpper() < breaks[0] || x.getLower() > breaks[breaks.length - 1]) {
+            return Interval.EMPTY;
+        }
+        Interval range = Interval.EMPTY;
+        for (int i = Math.max(0, piece(Math.max(x.getLower(), breaks[0]))); i < coefficients.length && breaks[i] <= x.getUpper(); i++) {
+            double[] c = coefficients[i];
+            double reach = 0.0;
+            for (int k = 1; k < c.length; k++) {
+                reach += Math.abs(c[k]);
+            }
+            // Rounding in the sum and in Clenshaw's recurrence stays within a few ulps per coefficient
+            double slack = c.length * 4 * Math.ulp(Math.abs(c[0]) + reach);
+            range = range.hull(new Interval(c[0] - reach - slack, c[0] + reach + slack));
+        }
+        return range;
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
+        if (slot != 0) {
+            return new Number(0);
+        }
+        return new ChebyshevFunction(source, order + 1, tolerance, breaks, slopes, maxError);
+    }
+
+    /**
+     * Returns the index of the piece holding x, or -1 outside the domain
+     */
+    private int piece(double x) {
+        if (!(x >= breaks[0] && x <= breaks[breaks.length - 1])) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(breaks, x);
+        if (index >= 0) {
+            return Math.min(index, coefficients.length - 1);
+        }
+        return -index - 2;
+    }
+
+    /**
+     * Maps x from its piece to [-1, 1]
+     */
+    private double scaled(double x, int piece) {
+        double lo = breaks[piece];
+        double hi = breaks[piece + 1];
+        return (2 * x - lo - hi) / (hi - lo);
+    }
+
+    /**
+     * Sums c[0] T0(t) + c[1] T1(t) + ... with Clenshaw's recurrence, which never forms the Tk themselves
+     */
+    static double clenshaw(double[] c, double t) {
+        double twoT = 2 * t;
+        double b1 = 0.0;
+        double b2 = 0.0;
+        for (int k = c.length - 1; k >= 1; k--) {
+            // c[k] - b2 does not wait for b1, which leaves one multiply and one add on the dependency chain
+            double b0 = twoT * b1 + (c[k] - b2);
+            b2 = b1;
+            b1 = b0;
+        }
+        return c[0] + t * b1 - b2;
+    }
+
+    /**
+     * Returns the coefficients of the derivative with respect to x of the series on a piece of the given width,
+     * from d[k-1] = d[k+1] + 2k c[k]
+     */
+    private static double[] derivativeCoefficients(double[] c, double width) {
+        int n = c.length - 1;
+        if (n == 0) {
+            return new double[] {0.0};
+        }
+        double[] d = new double[n];
+        double next = 0.0;
+        double afterNext = 0.0;
+        for (int k = n; k >= 1; k--) {
+            double value = afterNext + 2 * k * c[k];
+            d[k - 1] = value;
+            afterNext = next;
+            next = value;
+        }
+        d[0] *= 0.5;
+        double scale = 2 / width;
+        for (int k = 0; k < n; k++) {
+            d[k] *= scale;
+        }
+        return d;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("chebyshev(").append(source).append(", [").append(breaks[0])
+                .append(", ").append(breaks[breaks.length - 1]).append("], ").append(tolerance).append(')');
+        for (int k = 0; k < order; k++) {
+            text.append('\'');
+        }
+        return text.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof ChebyshevFunction) {
+            ChebyshevFunction other = (ChebyshevFunction) obj;
+            return hashCode() == other.hashCode() && Arrays.equals(breaks, other.breaks)
+                    && Arrays.deepEquals(coefficients, other.coefficients);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * Arrays.hashCode(breaks) + Arrays.deepHashCode(coefficients);
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Splits the domain into pieces and fits each one, collecting the pieces from left to right
+     */
+    private static final class Builder {
+
+        private final Function function;
+        private final double tolerance;
+        private final List<Double> breaks = new ArrayList<>();
+        private final List<double[]> pieces = new ArrayList<>();
+        /** The number of pieces the domain is split into so far, fitted or not */
+        private int count = 1;
+        private double maxError;
+
+        Builder(Function function, double tolerance) {
+            this.function = function;
+            this.tolerance = tolerance;
+        }
+
+        void build(double lo, double hi) {
+            double[] fitted = fit(lo, hi);
+            if (fitted != null) {
+                breaks.add(lo);
+                pieces.add(fitted);
+                return;
+            }
+            double middle = 0.5 * (lo + hi);
+            if (count >= MAX_PIECES || !(lo < middle && middle < hi)) {
+                throw new IllegalArgumentException("Cannot approximate " + function + " to within " + tolerance
+                        + " on [" + lo + ", " + hi + "]");
+            }
+            count++;
+            build(lo, middle);
+            build(middle, hi);
+        }
+
+        /**
+         * Returns the coefficients of a series within the tolerance on [lo, hi], or null if none up to MAX_DEGREE is
+         */
+        private double[] fit(double lo, double hi) {
+            double center = 0.5 * (lo + hi);
+            double radius = 0.5 * (hi - lo);
+            double[] values = null;
+            for (int n = INITIAL_DEGREE; n <= MAX_DEGREE; n *= 2) {
+                values = sample(values, n, lo, hi, center, radius);
+                double[] c = coefficients(values);
+                int degree = truncate(c);
+                if (degree < 0) {
+                    continue;
+                }
+                double[] series = Arrays.copyOf(c, degree + 1);
+                double error = check(series, n, center, radius);
+                if (error <= tolerance) {
+                    maxError = Math.max(maxError, error);
+                    return series;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Evaluates the function at the n + 1 Chebyshev points center + radius cos(pi j / n); the points for n / 2
+         * are every other one of these, so their values are reused
+         */
+        private double[] sample(double[] previous, int n, double lo, double hi, double center, double radius) {
+            double[] values = new double[n + 1];
+            for (int j = 0; j <= n; j++) {
+                if (previous != null && j % 2 == 0) {
+                    values[j] = previous[j / 2];
+                    continue;
+                }
+                double x = j == 0 ? hi : j == n ? lo : center + radius * Math.cos(Math.PI * j / n);
+                values[j] = finite(x, function.value(x));
+            }
+            return values;
+        }
+
+        private double finite(double x, double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new IllegalArgumentException("Cannot approximate " + function + ": value " + value + " at " + x);
+            }
+            return value;
+        }
+
+        /**
+         * Converts values at the n + 1 Chebyshev points to the coefficients of the interpolating series,
+         * c[k] = 2/n times the sum of values[j] cos(pi j k / n), with the first and last terms and c[0], c[n] halved
+         */
+        private static double[] coefficients(double[] values) {
+            int n = values.length - 1;
+            double[] cosines = new double[2 * n];
+            for (int i = 0; i < cosines.length; i++) {
+                cosines[i] = Math.cos(Math.PI * i / n);
+            }
+            double[] c = new double[n + 1];
+            for (int k = 0; k <= n; k++) {
+                double sum = 0.5 * (values[0] + values[n] * cosines[(n * k) % (2 * n)]);
+                for (int j = 1; j < n; j++) {
+                    sum += values[j] * cosines[(j * k) % (2 * n)];
+                }
+                c[k] = 2.0 * sum / n;
+            }
+            c[0] *= 0.5;
+            c[n] *= 0.5;
+            return c;
+        }
+
+        /**
+         * Returns the degree to cut the series at so that the coefficients left out add up to at most
+         * a share of the tolerance, or -1 if the last few coefficients are not yet small, showing the series
+         * has not converged at this degree. Coefficients that fall off as 1/k^2 add up beyond degree n
+         * to about n times the last one, so the last three are scaled by n / 3 before the comparison
+         */
+        private int truncate(double[] c) {
+            int n = c.length - 1;
+            double budget = TRUNCATION_SHARE * tolerance;
+            if ((Math.abs(c[n]) + Math.abs(c[n - 1]) + Math.abs(c[n - 2])) * n / 3 > budget) {
+                return -1;
+            }
+            double tail = 0.0;
+            int degree = n;
+            while (degree > 0 && tail + Math.abs(c[degree]) <= budget) {
+                tail += Math.abs(c[degree]);
+                degree--;
+            }
+            return degree;
+        }
+
+        /**
+         * Returns the largest error of the series against the function halfway, in angle, between
+         * consecutive Chebyshev points, where the interpolant is least constrained
+         */
+        private double check(double[] series, int n, double center, double radius) {
+            double error = 0.0;
+            for (int j = 0; j < n; j++) {
+                double t = Math.cos(Math.PI * (j + 0.5) / n);
+                double x = center + radius * t;
+                double difference = Math.abs(finite(x, function.value(x)) - clenshaw(series, t));
+                if (!(difference <= error)) {
+                    error = difference;
+                }
+            }
+            return error;
+        }
+    }
+}
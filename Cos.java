@@ -1,11 +1,20 @@
+/**
+ * The Cos class represents the cosine of an operand function.
+ * Instances are immutable and safe to evaluate concurrently.
+ */
 public class Cos extends Function {
 
     private final Function operand;
+    private int hash;
 
     public Cos(Function operand) {
         this.operand = operand;
     }
 
+    public Function getOperand() {
+        return operand;
+    }
+
     @Override
     public double value() {
         throw new UnsupportedOperationException("Input value required");
@@ -17,12 +26,45 @@ public class Cos extends Function {
     }
 
     @Override
-    public Function derivative() {
+    public double value(double[] environment) {
+        return Math.cos(operand.value(environment));
+    }
+
+    @Override
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        operand.valueBlock(inputs, outputs, length, evaluator);
+        for (int i = 0; i < length; i++) {
+            outputs[i] = Math.cos(outputs[i]);
+        }
+    }
+
+    @Override
+    public Interval interval(Interval x) {
+        return operand.interval(x).cos();
+    }
+
+    @Override
+    public Interval interval(Interval[] environment) {
+        return operand.interval(environment).cos();
+    }
+
+    @Override
+    public Dual dual(double x) {
+        return operand.dual(x).cos();
+    }
+
+    @Override
+    public double[] taylor(double x, int order) {
+        return Taylor.cos(operand.taylor(x, order));
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
         return new BinaryOp(BinaryOp.Operator.Multiply,
                 new Number(-1),
                 new BinaryOp(BinaryOp.Operator.Multiply,
                         new Sin(operand),
-                        operand.derivative()
+                        operand.derivative(slot)
                 )
         );
     }
@@ -32,4 +74,22 @@ public class Cos extends Function {
         return "cos(" + operand.toString() + ")";
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return obj instanceof Cos && hashCode() == obj.hashCode() && operand.equals(((Cos) obj).operand);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * operand.hashCode() + 2;
+            hash = h;
+        }
+        return h;
+    }
+
 }
@@ -0,0 +1,583 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The DagEvaluator class evaluates a Function as a DAG of distinct subexpressions.
+ * Structurally equal subtrees are merged into one slot when the evaluator is built,
+ * so a subexpression repeated across the tree, as derivatives produce, is computed only once per input.
+ * The slots form a tape in evaluation order, which gradient walks backwards to compute every partial
+ * derivative in reverse mode: one forward and one backward pass, whatever the number of variables.
+ * <p>
+ * Several functions can share one DAG, typically a function and its derivatives, whose trees repeat the
+ * same sin, cos and exp subexpressions; values then computes every output for one input in a single pass.
+ * A sine and a cosine of the same operand are computed together with one argument reduction and two short
+ * polynomials, each within an ulp of Math.sin and Math.cos.
+ * The evaluator keeps its slot and adjoint arrays for reuse and is not safe to share between threads.
+ * @author Jenny Zhang
+ */
+public class DagEvaluator {
+
+    static final int CONSTANT = 0;
+    static final int VARIABLE = 1;
+    static final int ADD = 2;
+    static final int SUBTRACT = 3;
+    static final int MULTIPLY = 4;
+    static final int DIVIDE = 5;
+    static final int POWER = 6;
+    static final int POLYNOMIAL = 7;
+    static final int SIN = 8;
+    static final int COS = 9;
+    static final int EXP = 10;
+    static final int LOG = 11;
+    static final int DENSE_POLYNOMIAL = 12;
+    static final int OTHER = 13;
+    /** Forward-pass opcode computing a SIN slot and the COS slot of the same operand together */
+    static final int SINCOS = 14;
+    /** Forward-pass opcode of a slot already filled by an earlier SINCOS */
+    static final int FUSED = 15;
+
+    /** Beyond this, sincos leaves argument reduction to Math.sin and Math.cos */
+    private static final double SINCOS_MAX_ARGUMENT = 0x1p19 * Math.PI / 2;
+    private static final double TWO_OVER_PI = 6.36619772367581382433e-01;
+    /** pi/2 split into parts of 33 bits, each followed by the rest after it, from fdlibm's __ieee754_rem_pio2 */
+    private static final double PIO2_1 = 1.57079632673412561417e+00;
+    private static final double PIO2_1T = 6.07710050650619224932e-11;
+    private static final double PIO2_2 = 6.07710050630396597660e-11;
+    private static final double PIO2_2T = 2.02226624879595063154e-21;
+    private static final double PIO2_3 = 2.02226624871116645580e-21;
+    private static final double PIO2_3T = 8.47842766036889956997e-32;
+    /** Coefficients of fdlibm's sine and cosine kernels on [-pi/4, pi/4] */
+    private static final double S1 = -1.66666666666666324348e-01;
+    private static final double S2 = 8.33333333332248946124e-03;
+    private static final double S3 = -1.98412698298579493134e-04;
+    private static final double S4 = 2.75573137070700676789e-06;
+    private static final double S5 = -2.50507602534068634195e-08;
+    private static final double S6 = 1.58969099521155010221e-10;
+    private static final double C1 = 4.16666666666666019037e-02;
+    private static final double C2 = -1.38888888888741095749e-03;
+    private static final double C3 = 2.48015872894767294178e-05;
+    private static final double C4 = -2.75573143513906633035e-07;
+    private static final double C5 = 2.08757232129817482790e-09;
+    private static final double C6 = -1.13596475577881948265e-11;
+
+    private final Function[] functions;
+    private final int[] opcodes;
+    /** The opcodes the forward pass runs: opcodes with sine and cosine pairs fused */
+    private final int[] forwardOpcodes;
+    /** For a SINCOS slot, the slot of the other half of the pair */
+    private final int[] partners;
+    private final int[] leftSlots;
+    private final int[] rightSlots;
+    private final double[] constants;
+    private final Function[] others;
+    private final double[] slots;
+    /** Whether a slot depends on any variable; constant slots get no adjoint */
+    private final boolean[] active;
+    /** The slot of each function's value */
+    private final int[] roots;
+    private final int root;
+    private double[] adjoints;
+    private double[] otherGradient;
+
+    /**
+     * Constructs a DagEvaluator for the given functions, merged into one DAG so that subexpressions
+     * they have in common are computed once for all of them
+     * @param functions the functions to evaluate; value and gradient refer to the first
+     */
+    public DagEvaluator(Function... functions) {
+        if (functions.length == 0) {
+            throw new IllegalArgumentException("At least one function is required");
+        }
+        this.functions = functions.clone();
+        Builder builder = new Builder();
+        FunctionInterner interner = new FunctionInterner();
+        roots = new int[functions.length];
+        for (int k = 0; k < functions.length; k++) {
+            roots[k] = builder.slotOf(interner.intern(functions[k]));
+        }
+        root = roots[0];
+        int size = builder.opcodes.size();
+        opcodes = new int[size];
+        leftSlots = new int[size];
+        rightSlots = new int[size];
+        constants = new double[size];
+        others = new Function[size];
+        active = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            opcodes[i] = builder.opcodes.get(i);
+            leftSlots[i] = builder.leftSlots.get(i);
+            rightSlots[i] = builder.rightSlots.get(i);
+            constants[i] = builder.constants.get(i);
+            others[i] = builder.others.get(i);
+            // Operands come before their users, so their flags are already set
+            active[i] = opcodes[i] == VARIABLE || opcodes[i] == OTHER
+                    || (leftSlots[i] >= 0 && active[leftSlots[i]])
+                    || (rightSlots[i] >= 0 && active[rightSlots[i]]);
+        }
+        forwardOpcodes = opcodes.clone();
+        partners = new int[size];
+        fuseSinCos();
+        slots = new double[size];
+    }
+
+    /**
+     * Constructs a DagEvaluator for a function and its derivatives up to the given order
+     * @param function the function of x
+     * @param order the highest derivative order wanted
+     * @return an evaluator whose outputs are f, f', ... up to the order-th derivative
+     */
+    public static DagEvaluator withDerivatives(Function function, int order) {
+        if (order < 0) {
+            throw new IllegalArgumentException("Derivative order must not be negative: " + order);
+        }
+        Function[] functions = new Function[order + 1];
+        functions[0] = function;
+        for (int k = 1; k <= order; k++) {
+            functions[k] = functions[k - 1].derivative();
+        }
+        return new DagEvaluator(functions);
+    }
+
+    /**
+     * Marks every pair of SIN and COS slots with the same operand so the forward pass computes both at the first.
+     * The Builder gives each operand at most one SIN and one COS slot, so every slot joins at most one pair
+     */
+    private void fuseSinCos() {
+        int[] sines = new int[opcodes.length];
+        int[] cosines = new int[opcodes.length];
+        Arrays.fill(sines, -1);
+        Arrays.fill(cosines, -1);
+        for (int i = 0; i < opcodes.length; i++) {
+            int[] byOperand = opcodes[i] == SIN ? sines : opcodes[i] == COS ? cosines : null;
+            if (byOperand == null) {
+                continue;
+            }
+            byOperand[leftSlots[i]] = i;
+            int sine = sines[leftSlots[i]];
+            int cosine = cosines[leftSlots[i]];
+            if (sine >= 0 && cosine >= 0) {
+                int first = Math.min(sine, cosine);
+                forwardOpcodes[first] = SINCOS;
+                forwardOpcodes[i] = FUSED;
+                partners[first] = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the first function
+     * @return the function value and gradient evaluate
+     */
+    public Function getFunction() {
+        return functions[0];
+    }
+
+    /**
+     * Returns one of the functions the evaluator was built for
+     * @param index the position of the function among the constructor's arguments
+     * @return the function
+     */
+    public Function getFunction(int index) {
+        return functions[index];
+    }
+
+    /**
+     * Returns the number of functions, and so of outputs from values
+     * @return the number of functions
+     */
+    public int getOutputCount() {
+        return roots.length;
+    }
+
+    /**
+     * Returns the number of distinct subexpressions computed per input
+     * @return the number of slots in the DAG
+     */
+    public int size() {
+        return opcodes.length;
+    }
+
+    /**
+     * Evaluates the function at the given input, computing every distinct subexpression once
+     * @param x the input value
+     * @return the value of the function at x
+     */
+    public double value(double x) {
+        return forward(x, null);
+    }
+
+    /**
+     * Evaluates every function at the given input in one pass over the DAG
+     * @param x the input value
+     * @param outputs the array receiving the value of function k at index k
+     */
+    public void values(double x, double[] outputs) {
+        forward(x, null);
+        for (int k = 0; k < roots.length; k++) {
+            outputs[k] = slots[roots[k]];
+        }
+    }
+
+    /**
+     * Evaluates every function with every variable taken from its slot of the environment, in one pass over the DAG
+     * @param environment the variable values, indexed by Variable.getSlot()
+     * @param outputs the array receiving the value of function k at index k
+     */
+    public void values(double[] environment, double[] outputs) {
+        forward(0.0, environment);
+        for (int k = 0; k < roots.length; k++) {
+            outputs[k] = slots[roots[k]];
+        }
+    }
+
+    /**
+     * Evaluates the function with every variable taken from its slot of the environment
+     * @param environment the variable values, indexed by Variable.getSlot()
+     * @return the value of the function
+     */
+    public double value(double[] environment) {
+        return forward(0.0, environment);
+    }
+
+    /**
+     * Computes the value and every partial derivative of the function in reverse mode.
+     * A forward pass fills the slots, then a backward pass from the root accumulates in each slot
+     * the derivative of the function with respect to that slot's value, its adjoint.
+     * @param environment the variable values, indexed by Variable.getSlot()
+     * @param gradient the array receiving the partial derivative for slot i at index i;
+     *                 variables with a slot beyond its length are not reported
+     * @return the value of the function
+     */
+    public double gradient(double[] environment, double[] gradient) {
+        double value = forward(0.0, environment);
+        double[] s = slots;
+        double[] a = adjoints;
+        if (a == null) {
+            a = new double[opcodes.length];
+            adjoints = a;
+        } else {
+            Arrays.fill(a, 0.0);
+        }
+        Arrays.fill(gradient, 0.0);
+        a[root] = 1.0;
+        for (int i = root; i >= 0; i--) {
+            double adjoint = a[i];
+            if (!active[i]) {
+                continue;
+            }
+            int left = leftSlots[i];
+            int right = rightSlots[i];
+            switch (opcodes[i]) {
+                case VARIABLE:
+                    int slot = (int) constants[i];
+                    if (slot < gradient.length) {
+                        gradient[slot] += adjoint;
+                    }
+                    break;
+                case ADD:
+                    a[left] += adjoint;
+                    a[right] += adjoint;
+                    break;
+                case SUBTRACT:
+                    a[left] += adjoint;
+                    a[right] -= adjoint;
+                    break;
+                case MULTIPLY:
+                    a[left] += adjoint * s[right];
+                    a[right] += adjoint * s[left];
+                    break;
+                case DIVIDE:
+                    a[left] += adjoint / s[right];
+                    a[right] -= adjoint * s[i] / s[right];
+                    break;
+                case POWER:
+                    // d(u^v) = v u^(v-1) du + u^v log(u) dv; the log term is skipped for constant exponents
+                    if (active[left]) {
+                        a[left] += adjoint * s[right] * Math.pow(s[left], s[right] - 1);
+                    }
+                    if (active[right]) {
+                        a[right] += adjoint * s[i] * Math.log(s[left]);
+                    }
+                    break;
+                case POLYNOMIAL:
+                    double power = constants[i];
+                    a[left] += adjoint * (power == 2.0 ? 2.0 * s[left] : power * Math.pow(s[left], power - 1));
+                    break;
+                case SIN:
+                    a[left] += adjoint * Math.cos(s[left]);
+                    break;
+                case COS:
+                    a[left] -= adjoint * Math.sin(s[left]);
+                    break;
+                case EXP:
+                    a[left] += adjoint * s[i];
+                    break;
+                case LOG:
+                    a[left] += adjoint / s[left];
+                    break;
+                case DENSE_POLYNOMIAL:
+                    a[left] += adjoint * ((DensePolynomial) others[i]).slopeAt(s[left]);
+                    break;
+                default:
+                    // Nodes without a rule here contribute through their own symbolic partial derivatives
+                    if (otherGradient == null || otherGradient.length != gradient.length) {
+                        otherGradient = new double[gradient.length];
+                    }
+                    others[i].gradient(environment, otherGradient);
+                    for (int k = 0; k < gradient.length; k++) {
+                        gradient[k] += adjoint * otherGradient[k];
+                    }
+                    break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Fills the slots in order; without an environment only x, slot 0, is bound
+     */
+    private double forward(double x, double[] environment) {
+        double[] s = slots;
+        for (int i = 0; i < opcodes.length; i++) {
+            switch (forwardOpcodes[i]) {
+                case CONSTANT:
+                    s[i] = constants[i];
+                    break;
+                case VARIABLE:
+                    if (environment != null) {
+                        s[i] = environment[(int) constants[i]];
+                    } else if (constants[i] == 0.0) {
+                        s[i] = x;
+                    } else {
+                        throw new UnsupportedOperationException("Variable " + others[i] + " needs an environment to be evaluated");
+                    }
+                    break;
+                case ADD:
+                    s[i] = s[leftSlots[i]] + s[rightSlots[i]];
+                    break;
+                case SUBTRACT:
+                    s[i] = s[leftSlots[i]] - s[rightSlots[i]];
+                    break;
+                case MULTIPLY:
+                    s[i] = s[leftSlots[i]] * s[rightSlots[i]];
+                    break;
+                case DIVIDE:
+                    s[i] = s[leftSlots[i]] / s[rightSlots[i]];
+                    break;
+                case POWER:
+                    s[i] = Math.pow(s[leftSlots[i]], s[rightSlots[i]]);
+                    break;
+                case POLYNOMIAL:
+                    double base = s[leftSlots[i]];
+                    s[i] = constants[i] == 2.0 ? base * base : Math.pow(base, constants[i]);
+                    break;
+                case SIN:
+                    s[i] = Math.sin(s[leftSlots[i]]);
+                    break;
+                case COS:
+                    s[i] = Math.cos(s[leftSlots[i]]);
+                    break;
+                case EXP:
+                    s[i] = Math.exp(s[leftSlots[i]]);
+                    break;
+                case LOG:
+                    s[i] = Math.log(s[leftSlots[i]]);
+                    break;
+                case DENSE_POLYNOMIAL:
+                    s[i] = ((DensePolynomial) others[i]).valueAt(s[leftSlots[i]]);
+                    break;
+                case SINCOS:
+                    if (opcodes[i] == SIN) {
+                        sincos(s[leftSlots[i]], s, i, partners[i]);
+                    } else {
+                        sincos(s[leftSlots[i]], s, partners[i], i);
+                    }
+                    break;
+                case FUSED:
+                    break;
+                default:
+                    s[i] = environment != null ? others[i].value(environment) : others[i].value(x);
+                    break;
+            }
+        }
+        return s[root];
+    }
+
+    /**
+     * Writes sin(u) and cos(u) to the given indexes of out, sharing one reduction of u to [-pi/4, pi/4]
+     * between them. The reduction and the kernels are those of fdlibm, which StrictMath also uses.
+     */
+    static void sincos(double u, double[] out, int sinIndex, int cosIndex) {
+        if (!(Math.abs(u) <= SINCOS_MAX_ARGUMENT)) {
+            out[sinIndex] = Math.sin(u);
+            out[cosIndex] = Math.cos(u);
+            return;
+        }
+        // u = n pi/2 + y0 + y1, where y1 holds the bits of the reduced argument that y0 has no room for
+        double y0 = u;
+        double y1 = 0.0;
+        int n = 0;
+        if (Math.abs(u) > Math.PI / 4) {
+            double fn = Math.rint(u * TWO_OVER_PI);
+            n = (int) fn;
+            double r = u - fn * PIO2_1;
+            double w = fn * PIO2_1T;
+            int exponent = exponent(u);
+            y0 = r - w;
+            // When u is close to a multiple of pi/2, cancellation needs more of pi/2's bits
+            if (exponent - exponent(y0) > 16) {
+                double t = r;
+                w = fn * PIO2_2;
+                r = t - w;
+                w = fn * PIO2_2T - ((t - r) - w);
+                y0 = r - w;
+                if (exponent - exponent(y0) > 49) {
+                    t = r;
+                    w = fn * PIO2_3;
+                    r = t - w;
+                    w = fn * PIO2_3T - ((t - r) - w);
+                    y0 = r - w;
+                }
+            }
+            y1 = (r - y0) - w;
+        }
+        double z = y0 * y0;
+        double v = z * y0;
+        double sine = y0 - ((z * (0.5 * y1 - v * (S2 + z * (S3 + z * (S4 + z * (S5 + z * S6))))) - y1) - v * S1);
+        double r = z * (C1 + z * (C2 + z * (C3 + z * (C4 + z * (C5 + z * C6)))));
+        double half = 0.5 * z;
+        double w = 1.0 - half;
+        double cosine = w + (((1.0 - w) - half) + (z * r - y0 * y1));
+        switch (n & 3) {
+            case 0:
+                out[sinIndex] = sine;
+                out[cosIndex] = cosine;
+                break;
+            case 1:
+                out[sinIndex] = cosine;
+                out[cosIndex] = -sine;
+                break;
+            case 2:
+                out[sinIndex] = -sine;
+                out[cosIndex] = -cosine;
+                break;
+            default:
+                out[sinIndex] = -cosine;
+                out[cosIndex] = sine;
+                break;
+        }
+    }
+
+    private static int exponent(double x) {
+        return (int) (Double.doubleToRawLongBits(x) >>> 52) & 0x7ff;
+    }
+
+    /**
+     * Assigns slots in evaluation order to the nodes of an interned DAG, so equal subexpressions share a slot
+     */
+    private static class Builder {
+
+        private final Map<Function, Integer> slotsByNode = new IdentityHashMap<>();
+        private final List<Integer> opcodes = new ArrayList<>();
+        private final List<Integer> leftSlots = new ArrayList<>();
+        private final List<Integer> rightSlots = new ArrayList<>();
+        private final List<Double> constants = new ArrayList<>();
+        private final List<Function> others = new ArrayList<>();
+        private final Map<Integer, Integer> sines = new HashMap<>();
+        private final Map<Integer, Integer> cosines = new HashMap<>();
+
+        int slotOf(Function function) {
+            Integer existing = slotsByNode.get(function);
+            if (existing != null) {
+                return existing;
+            }
+            int slot;
+            if (function instanceof Number) {
+                slot = add(CONSTANT, -1, -1, ((Number) function).getValue(), null);
+            } else if (function instanceof Variable) {
+                // The variable itself is kept only for error messages
+                slot = add(VARIABLE, -1, -1, ((Variable) function).getSlot(), function);
+            } else if (function instanceof BinaryOp) {
+                BinaryOp op = (BinaryOp) function;
+                int left = slotOf(op.getLeftOperand());
+                int right = slotOf(op.getRightOperand());
+                slot = add(binaryOpcode(op.getOperator()), left, right, 0.0, null);
+            } else if (function instanceof Polynomial) {
+                Polynomial polynomial = (Polynomial) function;
+                slot = add(POLYNOMIAL, slotOf(polynomial.getOperand()), -1, polynomial.getPower(), null);
+            } else if (function instanceof Sin) {
+                slot = sinOrCos(sines, SIN, slotOf(((Sin) function).getOperand()));
+            } else if (function instanceof Cos) {
+                slot = sinOrCos(cosines, COS, slotOf(((Cos) function).getOperand()));
+            } else if (function instanceof Trig) {
+                Trig trig = (Trig) function;
+                int operand = slotOf(trig.getOperand());
+                switch (trig.getFunction().toLowerCase()) {
+                    case "sin":
+                        slot = sinOrCos(sines, SIN, operand);
+                        break;
+                    case "cos":
+                        slot = sinOrCos(cosines, COS, operand);
+                        break;
+                    default:
+                        throw new UnsupportedOperationException("Unsupported trigonometric function: " + trig.getFunction());
+                }
+            } else if (function instanceof Exp) {
+                slot = add(EXP, slotOf(((Exp) function).getOperand()), -1, 0.0, null);
+            } else if (function instanceof Log) {
+                slot = add(LOG, slotOf(((Log) function).getOperand()), -1, 0.0, null);
+            } else if (function instanceof DensePolynomial) {
+                // The polynomial evaluates its own coefficients from the variable's slot
+                slot = add(DENSE_POLYNOMIAL, slotOf(((DensePolynomial) function).getVariable()), -1, 0.0, function);
+            } else {
+                slot = add(OTHER, -1, -1, 0.0, function);
+            }
+            slotsByNode.put(function, slot);
+            return slot;
+        }
+
+        /**
+         * Returns the slot computing sin or cos of the operand slot, shared by Sin, Cos and Trig nodes since they
+         * are unequal to each other after interning; fuseSinCos relies on there being one of each per operand
+         */
+        private int sinOrCos(Map<Integer, Integer> byOperand, int opcode, int operand) {
+            Integer existing = byOperand.get(operand);
+            if (existing != null) {
+                return existing;
+            }
+            int slot = add(opcode, operand, -1, 0.0, null);
+            byOperand.put(operand, slot);
+            return slot;
+        }
+
+        private int add(int opcode, int left, int right, double constant, Function other) {
+            opcodes.add(opcode);
+            leftSlots.add(left);
+            rightSlots.add(right);
+            constants.add(constant);
+            others.add(other);
+            return opcodes.size() - 1;
+        }
+
+        private static int binaryOpcode(BinaryOp.Operator operator) {
+            switch (operator) {
+                case Add:
+                    return ADD;
+                case Subtract:
+                    return SUBTRACT;
+                case Multiply:
+                    return MULTIPLY;
+                case Divide:
+                    return DIVIDE;
+                case Power:
+                    return POWER;
+                default:
+                    throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
+            }
+        }
+    }
+}
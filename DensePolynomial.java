@@ -0,0 +1,646 @@
+import java.util.Arrays;
+
+/**
+ * The DensePolynomial class represents a polynomial in one variable by its array of coefficients,
+ * such as 3x^4 + 2x^2 - x, instead of a tree of sums, products and powers.
+ * Evaluation uses Horner's scheme, one multiply and one add per coefficient with no calls to Math.pow;
+ * from degree 8 on it uses Estrin's scheme over groups of four coefficients, whose independent
+ * multiplications keep more of the processor busy than Horner's single dependent chain.
+ * The derivative is another DensePolynomial computed in O(n) by shifting the coefficients, and products
+ * of large polynomials use Karatsuba multiplication.
+ * <p>
+ * The parser and the Simplifier turn any subtree that is a sum of at least two monomials in one variable, each
+ * at most degree 32, into a DensePolynomial; a single power such as x^3 is left to Polynomial. They never
+ * expand a product or power of a sum: the expanded form of (x-1)^10 cancels catastrophically near x = 1,
+ * so such factors stay in factored form unless of(Function) is called explicitly.
+ * The coefficients are copied on construction, so instances are immutable and safe to evaluate concurrently.
+ * @author Jenny Zhang
+ */
+public class DensePolynomial extends Function {
+
+    /** Largest degree of the polynomials the parser and Simplifier collect */
+    static final int MAX_AUTOMATIC_DEGREE = 32;
+
+    /** How deep into a subtree the parser and Simplifier look for polynomial structure */
+    private static final int MAX_RECOGNITION_DEPTH = 16;
+
+    /** Polynomials of this degree and above are evaluated with Estrin's scheme */
+    private static final int ESTRIN_DEGREE = 8;
+
+    /** Products where both factors have at least this many coefficients use Karatsuba multiplication */
+    private static final int KARATSUBA_THRESHOLD = 32;
+
+    private final Variable variable;
+    /** coefficients[i] multiplies variable^i; the last one is non-zero unless the polynomial is zero */
+    private final double[] coefficients;
+    private int hash;
+
+    /**
+     * Constructs a polynomial in x
+     * @param coefficients the coefficients from the constant term up, so coefficients[i] multiplies x^i
+     */
+    public DensePolynomial(double... coefficients) {
+        this(new Variable(), coefficients);
+    }
+
+    /**
+     * Constructs a polynomial
+     * @param variable the variable of the polynomial
+     * @param coefficients the coefficients from the constant term up, so coefficients[i] multiplies variable^i
+     */
+    public DensePolynomial(Variable variable, double... coefficients) {
+        this(variable, trim(coefficients.clone()), true);
+    }
+
+    /**
+     * Wraps an already trimmed coefficient array that no one else holds
+     */
+    private DensePolynomial(Variable variable, double[] coefficients, boolean trimmed) {
+        this.variable = variable;
+        this.coefficients = coefficients;
+    }
+
+    /**
+     * Converts a function that is a polynomial in a single variable, expanding every product and power
+     * @param function a tree of numbers, one variable, +, -, *, division by numbers and non-negative integer powers
+     * @return the equivalent polynomial
+     * @throws IllegalArgumentException if the function is not a polynomial in one variable
+     */
+    public static DensePolynomial of(Function function) {
+        Recognizer recognizer = new Recognizer(Integer.MAX_VALUE, Integer.MAX_VALUE, true);
+        double[] coefficients = recognizer.coefficients(function, 0);
+        if (coefficients == null) {
+            throw new IllegalArgumentException("Not a polynomial in one variable: " + function);
+        }
+        Variable variable = recognizer.variable != null ? recognizer.variable : new Variable();
+        return new DensePolynomial(variable, trim(coefficients), true);
+    }
+
+    /**
+     * Builds left operator right, as a DensePolynomial when the result is a polynomial worth storing densely
+     * @param operator the binary operator
+     * @param left the left operand
+     * @param right the right operand
+     * @return the combined function
+     */
+    static Function combine(BinaryOp.Operator operator, Function left, Function right) {
+        return densify(new BinaryOp(operator, left, right));
+    }
+
+    /**
+     * Returns the function as a DensePolynomial when it is a sum of at least two monomials in one variable
+     * of degree at most MAX_AUTOMATIC_DEGREE; otherwise, including for any product or power of a sum,
+     * returns it unchanged
+     * @param function the function to convert
+     * @return the polynomial or the function itself
+     */
+    static Function densify(Function function) {
+        if (function instanceof DensePolynomial || function instanceof Number || function instanceof Variable) {
+            return function;
+        }
+        Recognizer recognizer = new Recognizer(MAX_AUTOMATIC_DEGREE, MAX_RECOGNITION_DEPTH, false);
+        double[] coefficients = recognizer.coefficients(function, 0);
+        if (coefficients == null || recognizer.variable == null) {
+            return function;
+        }
+        coefficients = trim(coefficients);
+        int terms = 0;
+        for (double coefficient : coefficients) {
+            if (coefficient != 0.0) {
+                terms++;
+            }
+        }
+        if (terms >= 2) {
+            return new DensePolynomial(recognizer.variable, coefficients, true);
+        }
+        return function;
+    }
+
+    public Variable getVariable() {
+        return variable;
+    }
+
+    public int getDegree() {
+        return coefficients.length - 1;
+    }
+
+    /**
+     * Returns the coefficient of variable^power, which is 0 above the degree
+     * @param power the power whose coefficient is wanted
+     * @return the coefficient
+     */
+    public double getCoefficient(int power) {
+        return power < coefficients.length ? coefficients[power] : 0.0;
+    }
+
+    /**
+     * Returns a copy of the coefficients from the constant term up
+     * @return the coefficients
+     */
+    public double[] getCoefficients() {
+        return coefficients.clone();
+    }
+
+    @Override
+    public double value() {
+        if (coefficients.length > 1) {
+            throw new UnsupportedOperationException("Input value required");
+        }
+        return coefficients[0];
+    }
+
+    @Override
+    public double value(double x) {
+        return valueAt(variable.value(x));
+    }
+
+    @Override
+    public double value(double[] environment) {
+        return valueAt(variable.value(environment));
+    }
+
+    /**
+     * Evaluates the polynomial with its variable set to t
+     * @param t the value of the variable
+     * @return the value of the polynomial
+     */
+    double valueAt(double t) {
+        double[] c = coefficients;
+        int degree = c.length - 1;
+        if (degree < ESTRIN_DEGREE) {
+            double result = c[degree];
+            for (int i = degree - 1; i >= 0; i--) {
+                result = result * t + c[i];
+            }
+            return result;
+        }
+        // Estrin: each group of four is (c0 + c1 t) + t^2 (c2 + c3 t), and the groups are combined by Horner in t^4
+        double t2 = t * t;
+        double t4 = t2 * t2;
+        int top = degree & ~3;
+        double result = c[top];
+        for (int i = top + 1; i <= degree; i++) {
+            // The top group may be partial; its terms are few, so they are added one by one
+            double term = c[i];
+            for (int k = top; k < i; k++) {
+                term *= t;
+            }
+            result += term;
+        }
+        for (int i = top - 4; i >= 0; i -= 4) {
+            double group = (c[i] + c[i + 1] * t) + t2 * (c[i + 2] + c[i + 3] * t);
+            result = result * t4 + group;
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates the derivative of the polynomial with its variable set to t, without building the derivative
+     * @param t the value of the variable
+     * @return the slope of the polynomial
+     */
+    double slopeAt(double t) {
+        double[] c = coefficients;
+        int degree = c.length - 1;
+        if (degree == 0) {
+            return 0.0;
+        }
+        double slope = degree * c[degree];
+        for (int i = degree - 1; i >= 1; i--) {
+            slope = slope * t + i * c[i];
+        }
+        return slope;
+    }
+
+    @Override
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        double[] t = evaluator.acquire();
+        variable.valueBlock(inputs, t, length, evaluator);
+        double[] c = coefficients;
+        double leading = c[c.length - 1];
+        for (int i = 0; i < length; i++) {
+            outputs[i] = leading;
+        }
+        // Horner one coefficient at a time across the whole block, so each pass is a loop the JIT can vectorize
+        for (int k = c.length - 2; k >= 0; k--) {
+            double coefficient = c[k];
+            for (int i = 0; i < length; i++) {
+                outputs[i] = outputs[i] * t[i] + coefficient;
+            }
+        }
+        evaluator.release(t);
+    }
+
+    @Override
+    public Interval interval(Interval x) {
+        return intervalAt(variable.interval(x));
+    }
+
+    @Override
+    public Interval interval(Interval[] environment) {
+        return intervalAt(variable.interval(environment));
+    }
+
+    /**
+     * Bounds the polynomial over a range of its variable. The coefficients are first re-expanded around the
+     * midpoint m, in interval arithmetic so that rounding cannot shrink the bound, and Horner's scheme runs
+     * over t - m, which keeps the terms small and of alternating reach instead of adding large products
+     * of the same sign. Neither form is always tighter, so both are taken. Where the slope keeps one sign the polynomial is monotone and is also bounded by
+     * its values at the ends.
+     */
+    private Interval intervalAt(Interval t) {
+        if (t.hasGap()) {
+            return intervalAt(new Interval(t.getLower(), t.getGapLower())).union(intervalAt(new Interval(t.getGapUpper(), t.getUpper())));
+        }
+        if (t.isEmpty() || t.getLower() == t.getUpper() || coefficients.length <= 2
+                || Double.isInfinite(t.getLower()) || Double.isInfinite(t.getUpper())) {
+            return horner(coefficients, t);
+        }
+        Interval m = Interval.point(t.getMidpoint());
+        Interval[] shifted = new Interval[coefficients.length];
+        for (int i = 0; i < shifted.length; i++) {
+            shifted[i] = Interval.point(coefficients[i]);
+        }
+        int degree = shifted.length - 1;
+        for (int k = 0; k < degree; k++) {
+            for (int i = degree - 1; i >= k; i--) {
+                shifted[i] = shifted[i].add(m.multiply(shifted[i + 1]));
+            }
+        }
+        Interval d = t.subtract(m);
+        Interval centered = shifted[degree];
+        for (int i = degree - 1; i >= 0; i--) {
+            centered = centered.multiply(d).add(shifted[i]);
+        }
+        Interval range = horner(coefficients, t).intersect(centered);
+        if (!horner(derivativePolynomial().coefficients, t).contains(0.0)) {
+            Interval ends = horner(coefficients, Interval.point(t.getLower())).hull(horner(coefficients, Interval.point(t.getUpper())));
+            range = range.intersect(ends);
+        }
+        return range;
+    }
+
+    private static Interval horner(double[] c, Interval t) {
+        Interval result = Interval.point(c[c.length - 1]);
+        for (int i = c.length - 2; i >= 0; i--) {
+            result = result.multiply(t).add(Interval.point(c[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public Dual dual(double x) {
+        Dual input = variable.dual(x);
+        double t = input.getValue();
+        return new Dual(valueAt(t), slopeAt(t) * input.getDerivative());
+    }
+
+    @Override
+    public double[] taylor(double x, int order) {
+        double[] input = variable.taylor(x, order);
+        // Repeated synthetic division by (variable - t) leaves the coefficients of the polynomial in (variable - t)
+        double t = input[0];
+        double[] shifted = coefficients.clone();
+        int degree = shifted.length - 1;
+        double[] result = new double[order + 1];
+        for (int k = 0; k <= Math.min(order, degree); k++) {
+            for (int i = degree - 1; i >= k; i--) {
+                shifted[i] += t * shifted[i + 1];
+            }
+            result[k] = shifted[k];
+        }
+        return result;
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
+        if (slot != variable.getSlot() || coefficients.length == 1) {
+            return new Number(0);
+        }
+        return derivativePolynomial().simplest();
+    }
+
+    /**
+     * Returns the derivative as a polynomial, computed by shifting the coefficients
+     * @return the derivative polynomial
+     */
+    public DensePolynomial derivativePolynomial() {
+        if (coefficients.length == 1) {
+            return new DensePolynomial(variable, new double[] {0.0}, true);
+        }
+        double[] result = new double[coefficients.length - 1];
+        for (int i = 1; i < coefficients.length; i++) {
+            result[i - 1] = i * coefficients[i];
+        }
+        return new DensePolynomial(variable, trim(result), true);
+    }
+
+    public DensePolynomial add(DensePolynomial other) {
+        requireSameVariable(other);
+        double[] result = Arrays.copyOf(coefficients, Math.max(coefficients.length, other.coefficients.length));
+        for (int i = 0; i < other.coefficients.length; i++) {
+            result[i] += other.coefficients[i];
+        }
+        return new DensePolynomial(variable, trim(result), true);
+    }
+
+    public DensePolynomial subtract(DensePolynomial other) {
+        return add(other.scale(-1.0));
+    }
+
+    public DensePolynomial scale(double factor) {
+        double[] result = new double[coefficients.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = factor * coefficients[i];
+        }
+        return new DensePolynomial(variable, trim(result), true);
+    }
+
+    /**
+     * Multiplies two polynomials, with Karatsuba multiplication when both have at least 32 coefficients
+     * @param other the polynomial to multiply by, in the same variable
+     * @return the product
+     */
+    public DensePolynomial multiply(DensePolynomial other) {
+        requireSameVariable(other);
+        return new DensePolynomial(variable, trim(multiply(coefficients, other.coefficients)), true);
+    }
+
+    private void requireSameVariable(DensePolynomial other) {
+        if (!variable.equals(other.variable)) {
+            throw new IllegalArgumentException("Polynomials in " + variable + " and " + other.variable + " cannot be combined");
+        }
+    }
+
+    /**
+     * Returns this polynomial, or a Number if it is constant
+     */
+    private Function simplest() {
+        return coefficients.length == 1 ? new Number(coefficients[0]) : this;
+    }
+
+    /**
+     * Multiplies coefficient arrays, splitting both in half and recombining three half-size products
+     * (Karatsuba) as long as both factors are long enough for that to beat the direct O(nm) product
+     */
+    static double[] multiply(double[] a, double[] b) {
+        if (Math.min(a.length, b.length) < KARATSUBA_THRESHOLD) {
+            double[] result = new double[a.length + b.length - 1];
+            for (int i = 0; i < a.length; i++) {
+                double ai = a[i];
+                for (int j = 0; j < b.length; j++) {
+                    result[i + j] += ai * b[j];
+                }
+            }
+            return result;
+        }
+        int half = Math.max(a.length, b.length) / 2;
+        double[] a0 = Arrays.copyOfRange(a, 0, Math.min(half, a.length));
+        double[] a1 = half < a.length ? Arrays.copyOfRange(a, half, a.length) : new double[] {0.0};
+        double[] b0 = Arrays.copyOfRange(b, 0, Math.min(half, b.length));
+        double[] b1 = half < b.length ? Arrays.copyOfRange(b, half, b.length) : new double[] {0.0};
+        double[] low = multiply(a0, b0);
+        double[] high = multiply(a1, b1);
+        double[] middle = multiply(sum(a0, a1), sum(b0, b1));
+        double[] result = new double[a.length + b.length - 1];
+        for (int i = 0; i < middle.length; i++) {
+            double lowTerm = i < low.length ? low[i] : 0.0;
+            double highTerm = i < high.length ? high[i] : 0.0;
+            middle[i] -= lowTerm + highTerm;
+        }
+        addShifted(result, low, 0);
+        addShifted(result, middle, half);
+        addShifted(result, high, 2 * half);
+        return result;
+    }
+
+    private static double[] sum(double[] a, double[] b) {
+        double[] result = Arrays.copyOf(a, Math.max(a.length, b.length));
+        for (int i = 0; i < b.length; i++) {
+            result[i] += b[i];
+        }
+        return result;
+    }
+
+    /**
+     * Adds part times variable^shift to result; terms beyond the result are zero by construction
+     */
+    private static void addShifted(double[] result, double[] part, int shift) {
+        for (int i = 0; i < part.length && i + shift < result.length; i++) {
+            result[i + shift] += part[i];
+        }
+    }
+
+    /**
+     * Drops zero coefficients above the highest non-zero one, keeping at least the constant term
+     */
+    private static double[] trim(double[] coefficients) {
+        int length = coefficients.length;
+        while (length > 1 && coefficients[length - 1] == 0.0) {
+            length--;
+        }
+        if (length == 0) {
+            return new double[] {0.0};
+        }
+        return length == coefficients.length ? coefficients : Arrays.copyOf(coefficients, length);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("(");
+        for (int i = coefficients.length - 1; i >= 0; i--) {
+            double coefficient = coefficients[i];
+            if (coefficient == 0.0 && (i > 0 || text.length() > 1)) {
+                continue;
+            }
+            if (text.length() > 1) {
+                text.append(coefficient < 0 ? " - " : " + ");
+                coefficient = Math.abs(coefficient);
+            }
+            if (i == 0 || coefficient != 1.0) {
+                text.append(coefficient);
+                if (i > 0) {
+                    text.append('*');
+                }
+            }
+            if (i > 0) {
+                text.append(variable);
+                if (i > 1) {
+                    text.append('^').append(i);
+                }
+            }
+        }
+        return text.append(')').toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof DensePolynomial) {
+            DensePolynomial other = (DensePolynomial) obj;
+            return hashCode() == other.hashCode() && variable.equals(other.variable)
+                    && Arrays.equals(coefficients, other.coefficients);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * variable.hashCode() + Arrays.hashCode(coefficients);
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Computes the coefficients of a tree that is a polynomial in one variable, or null if it is not one
+     */
+    private static final class Recognizer {
+
+        private final int maxDegree;
+        private final int maxDepth;
+        /** Whether products and powers of sums are multiplied out, rather than only products of monomials */
+        private final boolean expand;
+        private Variable variable;
+
+        Recognizer(int maxDegree, int maxDepth, boolean expand) {
+            this.maxDegree = maxDegree;
+            this.maxDepth = maxDepth;
+            this.expand = expand;
+        }
+
+        double[] coefficients(Function function, int depth) {
+            if (depth > maxDepth) {
+                return null;
+            }
+            if (function instanceof Number) {
+                double value = ((Number) function).getValue();
+                return isFinite(value) ? new double[] {value} : null;
+            } else if (function instanceof Variable) {
+                return sameVariable((Variable) function) ? new double[] {0.0, 1.0} : null;
+            } else if (function instanceof DensePolynomial) {
+                DensePolynomial polynomial = (DensePolynomial) function;
+                return sameVariable(polynomial.variable) ? polynomial.coefficients : null;
+            } else if (function instanceof Polynomial) {
+                Polynomial power = (Polynomial) function;
+                return power(power.getOperand(), power.getPower(), depth);
+            } else if (!(function instanceof BinaryOp)) {
+                return null;
+            }
+            BinaryOp op = (BinaryOp) function;
+            if (op.getOperator() == BinaryOp.Operator.Power) {
+                Function exponent = op.getRightOperand();
+                return exponent instanceof Number ? power(op.getLeftOperand(), ((Number) exponent).getValue(), depth) : null;
+            }
+            double[] left = coefficients(op.getLeftOperand(), depth + 1);
+            if (left == null) {
+                return null;
+            }
+            double[] right = coefficients(op.getRightOperand(), depth + 1);
+            if (right == null) {
+                return null;
+            }
+            switch (op.getOperator()) {
+                case Add:
+                    return checked(sum(left, right));
+                case Subtract:
+                    double[] negated = new double[right.length];
+                    for (int i = 0; i < right.length; i++) {
+                        negated[i] = -right[i];
+                    }
+                    return checked(sum(left, negated));
+                case Multiply:
+                    if (degree(left) + degree(right) > maxDegree || (!expand && !(isMonomial(left) && isMonomial(right)))) {
+                        return null;
+                    }
+                    return checked(multiply(trim(left.clone()), trim(right.clone())));
+                case Divide:
+                    if (right.length != 1 || right[0] == 0.0) {
+                        return null;
+                    }
+                    double[] quotient = new double[left.length];
+                    for (int i = 0; i < left.length; i++) {
+                        quotient[i] = left[i] / right[0];
+                    }
+                    return checked(quotient);
+                default:
+                    return null;
+            }
+        }
+
+        private double[] power(Function base, double exponent, int depth) {
+            if (exponent < 0 || exponent != Math.rint(exponent) || exponent > maxDegree) {
+                return null;
+            }
+            double[] coefficients = coefficients(base, depth + 1);
+            if (coefficients == null) {
+                return null;
+            }
+            coefficients = trim(coefficients.clone());
+            if (!expand && !isMonomial(coefficients)) {
+                return null;
+            }
+            int n = (int) exponent;
+            if ((long) degree(coefficients) * n > maxDegree) {
+                return null;
+            }
+            double[] result = {1.0};
+            double[] square = coefficients;
+            while (n > 0) {
+                if ((n & 1) == 1) {
+                    result = multiply(result, square);
+                }
+                n >>= 1;
+                if (n > 0) {
+                    square = multiply(square, square);
+                }
+            }
+            return checked(result);
+        }
+
+        private boolean sameVariable(Variable other) {
+            if (variable == null) {
+                variable = other;
+                return true;
+            }
+            return variable.equals(other);
+        }
+
+        /**
+         * Returns whether at most one coefficient is non-zero, so multiplying by it cannot cause cancellation
+         */
+        private static boolean isMonomial(double[] coefficients) {
+            int terms = 0;
+            for (double coefficient : coefficients) {
+                if (coefficient != 0.0) {
+                    terms++;
+                }
+            }
+            return terms <= 1;
+        }
+
+        private static int degree(double[] coefficients) {
+            return trim(coefficients).length - 1;
+        }
+
+        /**
+         * Rejects results with overflowed coefficients, which the tree would not have produced for every input
+         */
+        private static double[] checked(double[] coefficients) {
+            for (double coefficient : coefficients) {
+                if (!isFinite(coefficient)) {
+                    return null;
+                }
+            }
+            return coefficients;
+        }
+
+        private static boolean isFinite(double value) {
+            return !Double.isNaN(value) && !Double.isInfinite(value);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * The Dual class represents a dual number, a value paired with its derivative.
+ * Propagating dual numbers through a Function gives f(x) and f'(x) in one walk of the tree,
+ * without building the derivative tree.
+ * Dual numbers are immutable.
+ * @author Jenny Zhang
+ */
+public final class Dual {
+
+    private final double value;
+    private final double derivative;
+
+    /**
+     * Constructs a dual number
+     * @param value the value part
+     * @param derivative the derivative part
+     */
+    public Dual(double value, double derivative) {
+        this.value = value;
+        this.derivative = derivative;
+    }
+
+    /**
+     * Returns a constant, whose derivative is zero
+     * @param value the constant value
+     * @return the dual number (value, 0)
+     */
+    public static Dual constant(double value) {
+        return new Dual(value, 0.0);
+    }
+
+    /**
+     * Returns the independent variable at the given point, whose derivative is one
+     * @param x the point
+     * @return the dual number (x, 1)
+     */
+    public static Dual variable(double x) {
+        return new Dual(x, 1.0);
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public double getDerivative() {
+        return derivative;
+    }
+
+    public Dual add(Dual other) {
+        return new Dual(value + other.value, derivative + other.derivative);
+    }
+
+    public Dual subtract(Dual other) {
+        return new Dual(value - other.value, derivative - other.derivative);
+    }
+
+    public Dual multiply(Dual other) {
+        return new Dual(value * other.value, derivative * other.value + value * other.derivative);
+    }
+
+    public Dual divide(Dual other) {
+        double quotient = value / other.value;
+        return new Dual(quotient, (derivative - quotient * other.derivative) / other.value);
+    }
+
+    /**
+     * Raises this dual number to a constant power
+     * @param power the exponent
+     * @return the dual number (u^n, n * u^(n-1) * u')
+     */
+    public Dual pow(double power) {
+        if (power == 0.0) {
+            return constant(1.0);
+        }
+        return new Dual(Math.pow(value, power), power * Math.pow(value, power - 1) * derivative);
+    }
+
+    /**
+     * Raises this dual number to a power that may itself vary,
+     * using d(u^v) = u^v * (v' * log(u) + v * u' / u)
+     * @param power the exponent
+     * @return the dual number for this ^ power
+     */
+    public Dual pow(Dual power) {
+        if (power.derivative == 0.0) {
+            // A constant exponent also works for negative bases, where log(u) is undefined
+            return pow(power.value);
+        }
+        double result = Math.pow(value, power.value);
+        double logTerm = power.derivative * Math.log(value);
+        double baseTerm = derivative == 0.0 ? 0.0 : power.value * derivative / value;
+        return new Dual(result, result * (logTerm + baseTerm));
+    }
+
+    public Dual sin() {
+        return new Dual(Math.sin(value), Math.cos(value) * derivative);
+    }
+
+    public Dual cos() {
+        return new Dual(Math.cos(value), -Math.sin(value) * derivative);
+    }
+
+    public Dual exp() {
+        double result = Math.exp(value);
+        return new Dual(result, result * derivative);
+    }
+
+    public Dual log() {
+        return new Dual(Math.log(value), derivative / value);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + value + ", " + derivative + ")";
+    }
+}
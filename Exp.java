@@ -1,11 +1,20 @@
+/**
+ * The Exp class represents e raised to an operand function.
+ * Instances are immutable and safe to evaluate concurrently.
+ */
 public class Exp extends Function {
 
     private final Function operand;
+    private int hash;
 
     public Exp(Function operand) {
         this.operand = operand;
     }
 
+    public Function getOperand() {
+        return operand;
+    }
+
     @Override
     public double value() {
         throw new UnsupportedOperationException("Input value required");
@@ -17,10 +26,43 @@ public class Exp extends Function {
     }
 
     @Override
-    public Function derivative() {
+    public double value(double[] environment) {
+        return Math.exp(operand.value(environment));
+    }
+
+    @Override
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        operand.valueBlock(inputs, outputs, length, evaluator);
+        for (int i = 0; i < length; i++) {
+            outputs[i] = Math.exp(outputs[i]);
+        }
+    }
+
+    @Override
+    public Interval interval(Interval x) {
+        return operand.interval(x).exp();
+    }
+
+    @Override
+    public Interval interval(Interval[] environment) {
+        return operand.interval(environment).exp();
+    }
+
+    @Override
+    public Dual dual(double x) {
+        return operand.dual(x).exp();
+    }
+
+    @Override
+    public double[] taylor(double x, int order) {
+        return Taylor.exp(operand.taylor(x, order));
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
         return new BinaryOp(BinaryOp.Operator.Multiply,
                 new Exp(operand),
-                operand.derivative()
+                operand.derivative(slot)
         );
     }
 
@@ -29,5 +71,23 @@ public class Exp extends Function {
         return "exp(" + operand.toString() + ")";
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return obj instanceof Exp && hashCode() == obj.hashCode() && operand.equals(((Exp) obj).operand);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * operand.hashCode() + 3;
+            hash = h;
+        }
+        return h;
+    }
+
 }
 
@@ -0,0 +1,243 @@
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The ExpressionCache class keeps parsed, differentiated and compiled forms of expression text,
+ * so formulas that arrive again and again are parsed only once.
+ * Entries are keyed on the expression with surrounding whitespace stripped, weighted by the number of nodes
+ * in their tree, and evicted least recently used first once the total weight exceeds the limit.
+ * The cache is safe to share between threads. Values are computed outside the lock,
+ * so two threads missing on the same key at once may both compute it.
+ * The hit and miss counters record one lookup per call, for the form the caller asked for.
+ * @author Jenny Zhang
+ */
+public class ExpressionCache {
+
+    private final long maxWeight;
+    private final boolean simplify;
+    private final Map<Key, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructs a cache that stores parsed expressions as written
+     * @param maxWeight the largest total number of tree nodes kept before entries are evicted
+     */
+    public ExpressionCache(long maxWeight) {
+        this(maxWeight, false);
+    }
+
+    /**
+     * Constructs a cache
+     * @param maxWeight the largest total number of tree nodes kept before entries are evicted
+     * @param simplify true to pass parsed expressions through the Simplifier before caching them
+     */
+    public ExpressionCache(long maxWeight, boolean simplify) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.simplify = simplify;
+    }
+
+    /**
+     * Returns the parsed function for the given expression
+     * @param expression the expression text
+     * @return the function the text describes
+     * @throws ExpressionParseException if the text is not a valid expression
+     */
+    public Function parse(String expression) {
+        return derivative(expression, 0);
+    }
+
+    /**
+     * Returns the derivative of the given order of the expression
+     * @param expression the expression text
+     * @param order the derivative order, 0 for the expression itself
+     * @return the derivative function
+     */
+    public Function derivative(String expression, int order) {
+        if (order < 0) {
+            throw new IllegalArgumentException("Derivative order must not be negative: " + order);
+        }
+        return derivative(expression, order, true);
+    }
+
+    /**
+     * Returns the derivative of the given order, counting the lookup in the hit and miss statistics only if
+     * counted is true, so that the lower orders a request computes on the way are not reported as requests
+     */
+    private Function derivative(String expression, int order, boolean counted) {
+        Key key = new Key(expression.strip(), order, false);
+        CacheEntry cached = lookup(key, counted);
+        if (cached != null) {
+            return (Function) cached.value;
+        }
+        Function function;
+        if (order == 0) {
+            function = ExpressionParser.parse(expression);
+            if (simplify) {
+                function = Simplifier.simplify(function);
+            }
+        } else {
+            function = derivative(expression, order - 1, false).derivative();
+        }
+        store(key, function, countNodes(function));
+        return function;
+    }
+
+    /**
+     * Returns the compiled form of the derivative of the given order of the expression
+     * @param expression the expression text
+     * @param order the derivative order, 0 for the expression itself
+     * @return an operator evaluating the derivative
+     */
+    public DoubleUnaryOperator compiled(String expression, int order) {
+        if (order < 0) {
+            throw new IllegalArgumentException("Derivative order must not be negative: " + order);
+        }
+        Key key = new Key(expression.strip(), order, true);
+        CacheEntry cached = lookup(key, true);
+        if (cached != null) {
+            return (DoubleUnaryOperator) cached.value;
+        }
+        Function function = derivative(expression, order, false);
+        DoubleUnaryOperator operator = FunctionCompiler.compile(function);
+        store(key, operator, countNodes(function));
+        return operator;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of cached entries
+     * @return the entry count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total weight of the cached entries
+     * @return the sum of the node counts of all entries
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Removes every entry, leaving the counters untouched
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    private CacheEntry lookup(Key key, boolean counted) {
+        CacheEntry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (!counted) {
+            return entry;
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    private synchronized void store(Key key, Object value, long entryWeight) {
+        if (entryWeight > maxWeight) {
+            // An entry heavier than the whole cache would evict everything and then itself
+            return;
+        }
+        CacheEntry previous = entries.put(key, new CacheEntry(value, entryWeight));
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += entryWeight;
+        Iterator<CacheEntry> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts the distinct node objects in the function, so shared subtrees are weighed once
+     */
+    static long countNodes(Function function) {
+        return countNodes(function, new IdentityHashMap<Function, Boolean>());
+    }
+
+    private static long countNodes(Function function, Map<Function, Boolean> seen) {
+        if (seen.put(function, Boolean.TRUE) != null) {
+            return 0;
+        }
+        if (function instanceof BinaryOp) {
+            BinaryOp op = (BinaryOp) function;
+            return 1 + countNodes(op.getLeftOperand(), seen) + countNodes(op.getRightOperand(), seen);
+        }
+        Function operand = FunctionCompiler.unaryOperand(function);
+        return operand != null ? 1 + countNodes(operand, seen) : 1;
+    }
+
+    private static final class Key {
+
+        private final String expression;
+        private final int order;
+        private final boolean compiled;
+
+        Key(String expression, int order, boolean compiled) {
+            this.expression = expression;
+            this.order = order;
+            this.compiled = compiled;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Key) {
+                Key key = (Key) obj;
+                return order == key.order && compiled == key.compiled && expression.equals(key.expression);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * expression.hashCode() + order) * 2 + (compiled ? 1 : 0);
+        }
+    }
+
+    private static final class CacheEntry {
+
+        private final Object value;
+        private final long weight;
+
+        CacheEntry(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
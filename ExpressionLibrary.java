@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The ExpressionLibrary class reads functions stored by FunctionCodec.
+ * Opening a library only checks its header, so a memory-mapped file of millions of formulas opens at once;
+ * each node is decoded the first time a function that uses it is requested and shared from then on.
+ * Decoding reads fixed-width fields at known offsets, with no text to parse.
+ * A library is safe to read from several threads; two threads decoding the same node may each
+ * build a copy, but only one is kept.
+ * @author Jenny Zhang
+ */
+public final class ExpressionLibrary {
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int version;
+    private final int nodeCount;
+    private final int rootCount;
+    private final int nodeBytes;
+    private final int offsetsStart;
+    private final int rootsStart;
+    private final int nodesStart;
+    private final AtomicReferenceArray<Function> nodes;
+
+    private ExpressionLibrary(ByteBuffer buffer, int start) {
+        this.buffer = buffer;
+        this.start = start;
+        if (buffer.limit() - start < FunctionCodec.HEADER_BYTES) {
+            throw corrupt("truncated header");
+        }
+        if (buffer.getInt(start) != FunctionCodec.MAGIC) {
+            throw new IllegalArgumentException("Not an encoded expression library");
+        }
+        version = buffer.getInt(start + 4);
+        if (version < 1 || version > FunctionCodec.VERSION) {
+            throw new IllegalArgumentException("Unsupported expression library version: " + version);
+        }
+        nodeCount = buffer.getInt(start + 8);
+        rootCount = buffer.getInt(start + 12);
+        nodeBytes = buffer.getInt(start + 16);
+        if (nodeCount < 0 || rootCount < 0 || nodeBytes < 0) {
+            throw corrupt("negative section size");
+        }
+        offsetsStart = start + FunctionCodec.HEADER_BYTES;
+        rootsStart = offsetsStart + 4 * nodeCount;
+        nodesStart = rootsStart + 4 * rootCount;
+        if (encodedSize() > buffer.limit() - start) {
+            throw corrupt("truncated data");
+        }
+        nodes = new AtomicReferenceArray<>(nodeCount);
+    }
+
+    /**
+     * Maps the given file read-only and opens the library it holds
+     * @param path the file written by FunctionCodec
+     * @return the library
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static ExpressionLibrary open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new ExpressionLibrary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), 0);
+        }
+    }
+
+    /**
+     * Opens the library that starts at the buffer's position; the buffer's position is left unchanged
+     * @param buffer the buffer holding the encoded library
+     * @return the library
+     */
+    public static ExpressionLibrary wrap(ByteBuffer buffer) {
+        return new ExpressionLibrary(buffer, buffer.position());
+    }
+
+    /**
+     * Returns the number of stored functions
+     * @return the function count
+     */
+    public int size() {
+        return rootCount;
+    }
+
+    /**
+     * Returns the number of distinct nodes shared by the stored functions
+     * @return the node count
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of bytes the library occupies in its buffer
+     * @return the encoded size in bytes
+     */
+    public long encodedSize() {
+        return (long) nodesStart - start + nodeBytes;
+    }
+
+    /**
+     * Returns the stored function at the given index
+     * @param index the position of the function in the list it was written from
+     * @return the function
+     */
+    public Function get(int index) {
+        if (index < 0 || index >= rootCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + rootCount);
+        }
+        return node(buffer.getInt(rootsStart + 4 * index), nodeCount);
+    }
+
+    /**
+     * Decodes every node in one forward pass and returns all stored functions in order
+     * @return the stored functions
+     */
+    public List<Function> getAll() {
+        for (int i = 0; i < nodeCount; i++) {
+            // Operands precede their users, so each node finds its operands already decoded
+            node(i, i + 1);
+        }
+        List<Function> functions = new ArrayList<>(rootCount);
+        for (int i = 0; i < rootCount; i++) {
+            functions.add(get(i));
+        }
+        return functions;
+    }
+
+    /**
+     * Returns node index, decoding it if needed; valid indexes are below limit.
+     * Operands not yet decoded are collected on an explicit work stack and decoded before their users,
+     * so a deeply nested function does not recurse once per level
+     */
+    private Function node(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw corrupt("node reference " + index + " out of range");
+        }
+        Function function = nodes.get(index);
+        if (function != null) {
+            return function;
+        }
+        int[] stack = new int[16];
+        int size = 0;
+        stack[size++] = index;
+        while (size > 0) {
+            int top = stack[size - 1];
+            if (nodes.get(top) != null) {
+                size--;
+                continue;
+            }
+            boolean ready = true;
+            for (int operand : operands(top)) {
+                if (operand < 0 || operand >= top) {
+                    throw corrupt("node reference " + operand + " out of range");
+                }
+                if (nodes.get(operand) == null) {
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, 2 * size);
+                    }
+                    stack[size++] = operand;
+                    ready = false;
+                }
+            }
+            if (ready) {
+                size--;
+                nodes.compareAndSet(top, null, decode(top));
+            }
+        }
+        return nodes.get(index);
+    }
+
+    /**
+     * Returns the indexes of a node's operands, read without decoding the node
+     */
+    private int[] operands(int index) {
+        int position = nodesStart + offset(index);
+        switch (buffer.get(position)) {
+            case FunctionCodec.BINARY_OP:
+                return new int[] {buffer.getInt(position + 2), buffer.getInt(position + 6)};
+            case FunctionCodec.POLYNOMIAL:
+            case FunctionCodec.SIN:
+            case FunctionCodec.COS:
+            case FunctionCodec.EXP:
+            case FunctionCodec.LOG:
+            case FunctionCodec.TRIG:
+            case FunctionCodec.DENSE_POLYNOMIAL:
+                return new int[] {buffer.getInt(position + 1)};
+            default:
+                // Leaves have no operands, and decode rejects unknown tags
+                return new int[0];
+        }
+    }
+
+    private int offset(int index) {
+        int offset = buffer.getInt(offsetsStart + 4 * index);
+        if (offset < 0 || offset >= nodeBytes) {
+            throw corrupt("node offset " + offset + " out of range");
+        }
+        return offset;
+    }
+
+    private Function decode(int index) {
+        int offset = offset(index);
+        int position = nodesStart + offset;
+        byte tag = buffer.get(position);
+        switch (tag) {
+            case FunctionCodec.NUMBER:
+                return new Number(buffer.getDouble(position + 1));
+            case FunctionCodec.VARIABLE:
+                if (version == 1) {
+                    return new Variable();
+                }
+                int slot = buffer.getInt(position + 1);
+                if (slot < 0) {
+                    throw corrupt("negative variable slot " + slot);
+                }
+                return new Variable(string(position + 5), slot);
+            case FunctionCodec.BINARY_OP:
+                int code = buffer.get(position + 1);
+                if (code < 0 || code >= FunctionCodec.OPERATORS.length) {
+                    throw corrupt("unknown operator code " + code);
+                }
+                return new BinaryOp(FunctionCodec.OPERATORS[code],
+                        operand(position + 2, index), operand(position + 6, index));
+            case FunctionCodec.POLYNOMIAL:
+                return new Polynomial(operand(position + 1, index), buffer.getDouble(position + 5));
+            case FunctionCodec.SIN:
+                return new Sin(operand(position + 1, index));
+            case FunctionCodec.COS:
+                return new Cos(operand(position + 1, index));
+            case FunctionCodec.EXP:
+                return new Exp(operand(position + 1, index));
+            case FunctionCodec.LOG:
+                return new Log(operand(position + 1, index));
+            case FunctionCodec.TRIG:
+                return new Trig(string(position + 5), operand(position + 1, index));
+            case FunctionCodec.DENSE_POLYNOMIAL:
+                if (version < 3) {
+                    throw corrupt("dense polynomial node in a version " + version + " library");
+                }
+                Function variable = operand(position + 1, index);
+                int count = buffer.getInt(position + 5);
+                if (!(variable instanceof Variable)) {
+                    throw corrupt("polynomial of a non-variable node " + variable);
+                }
+                if (count <= 0 || count > (nodeBytes - offset) / 8) {
+                    throw corrupt("polynomial coefficient count " + count + " out of range");
+                }
+                double[] coefficients = new double[count];
+                for (int k = 0; k < count; k++) {
+                    coefficients[k] = buffer.getDouble(position + 9 + 8 * k);
+                }
+                return new DensePolynomial((Variable) variable, coefficients);
+            default:
+                throw corrupt("unknown node tag " + tag);
+        }
+    }
+
+    /**
+     * Reads a string stored as an unsigned short length followed by its UTF-8 bytes
+     */
+    private String string(int position) {
+        int length = buffer.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads an operand reference, which must point to a node written before the one being decoded
+     */
+    private Function operand(int position, int user) {
+        return node(buffer.getInt(position), user);
+    }
+
+    private static IllegalArgumentException corrupt(String detail) {
+        return new IllegalArgumentException("Corrupt expression library: " + detail);
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * The ExpressionParseException class reports a syntax error in an expression together with where it was found.
+ * It extends IllegalArgumentException so callers that already handle invalid expressions keep working.
+ * @author Jenny Zhang
+ */
+public class ExpressionParseException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Index of the character at which the error was detected */
+    private final int position;
+
+    /**
+     * Constructs a new ExpressionParseException
+     * @param message the description of the error
+     * @param position the index of the offending character in the expression
+     */
+    public ExpressionParseException(String message, int position) {
+        super(message + " at position " + position);
+        this.position = position;
+    }
+
+    /**
+     * Returns the index of the character at which the error was detected
+     * @return the error position
+     */
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,426 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ExpressionParser class turns expression text such as "sin(2*x) + x^2" into a Function tree.
+ * It reads the text once with a cursor and builds the tree with precedence climbing,
+ * so parsing is linear in the length of the input and no substrings are copied.
+ * Supported syntax: numbers, variables, + - * / and right-associative ^, unary + and -,
+ * parentheses, the functions sin, cos, log, exp and sqrt, and the prefix square root sign (\u221A).
+ * Any other run of letters is a variable. Variables are numbered by a list of names: a name's slot
+ * is its index in the list, and names not yet in the list are appended to it. Unless a list is given,
+ * it starts as x, y, z, so x is always slot 0.
+ * Sums of monomials in one variable, such as 3*x^4 + 2*x^2 - x, are built as a DensePolynomial; products and
+ * powers of sums, such as (x-1)^10, are kept in factored form.
+ * An IncrementalParser can give the parser a memo of subtrees from earlier parses of the same text,
+ * which lets it skip every part of the input that an edit did not touch.
+ * @author Jenny Zhang
+ */
+public class ExpressionParser {
+
+    private static final int ADDITIVE = 1;
+    private static final int MULTIPLICATIVE = 2;
+    private static final int UNARY = 3;
+    private static final int POWER = 4;
+
+    /** Powers of ten that are exactly representable as doubles */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final CharSequence expression;
+    private final int limit;
+    private final List<String> variables;
+    private final List<Variable> variableNodes = new ArrayList<>();
+    private final Map<Long, List<Checkpoint>> memo;
+    private int position;
+    /** The furthest character read, and the limit if the end of the input was seen, since the current memo entry began */
+    private int examined = -1;
+    private int endSeen = -1;
+
+    /**
+     * Constructs a parser for the given expression text whose variables start out as x, y and z
+     * @param expression the text to parse
+     */
+    public ExpressionParser(CharSequence expression) {
+        this(expression, new ArrayList<>(Arrays.asList("x", "y", "z")));
+    }
+
+    /**
+     * Constructs a parser for the given expression text that numbers variables by the given names
+     * @param expression the text to parse
+     * @param variables the variable names by slot; names the expression introduces are appended
+     */
+    public ExpressionParser(CharSequence expression, List<String> variables) {
+        this(expression, expression.length(), variables, null);
+    }
+
+    /**
+     * Constructs a parser for the first length characters of the text that reuses and extends the given memo
+     */
+    ExpressionParser(CharSequence expression, int length, List<String> variables, Map<Long, List<Checkpoint>> memo) {
+        this.expression = expression;
+        this.limit = length;
+        this.variables = variables;
+        this.memo = memo;
+    }
+
+    /**
+     * Parses the given expression text
+     * @param expression the text to parse
+     * @return the function the text describes
+     * @throws ExpressionParseException if the text is not a valid expression
+     */
+    public static Function parse(CharSequence expression) {
+        return new ExpressionParser(expression).parse();
+    }
+
+    /**
+     * Parses the given expression text, numbering its variables by the given names
+     * @param expression the text to parse
+     * @param variables the variable names by slot; names the expression introduces are appended
+     * @return the function the text describes
+     * @throws ExpressionParseException if the text is not a valid expression
+     */
+    public static Function parse(CharSequence expression, List<String> variables) {
+        return new ExpressionParser(expression, variables).parse();
+    }
+
+    /**
+     * Parses the whole expression
+     * @return the function the text describes
+     * @throws ExpressionParseException if the text is not a valid expression
+     */
+    public Function parse() {
+        position = 0;
+        Function result = parseExpression(ADDITIVE);
+        skipWhitespace();
+        if (!atEnd()) {
+            if (peek() == ')') {
+                throw error("Unbalanced parentheses");
+            }
+            throw error("Unexpected character '" + peek() + "'");
+        }
+        return result;
+    }
+
+    /**
+     * Parses an expression whose binary operators all bind at least as tightly as minPrecedence
+     */
+    private Function parseExpression(int minPrecedence) {
+        if (memo == null) {
+            return parseOperators(parsePrefix(), minPrecedence, null);
+        }
+        int start = position;
+        int outerExamined = examined;
+        int outerEndSeen = endSeen;
+        Long key = ((long) start << 3) | minPrecedence;
+        List<Checkpoint> checkpoints = memo.get(key);
+        if (checkpoints == null) {
+            checkpoints = new ArrayList<>();
+            memo.put(key, checkpoints);
+        }
+        // Checkpoints that looked at the end of a different prefix of the text do not apply to this one
+        while (!checkpoints.isEmpty() && !checkpoints.get(checkpoints.size() - 1).isValidFor(limit)) {
+            checkpoints.remove(checkpoints.size() - 1);
+        }
+        Function result;
+        if (checkpoints.isEmpty()) {
+            examined = start - 1;
+            endSeen = -1;
+            Function left = parsePrefix();
+            checkpoints.add(new Checkpoint(left, position, examined, endSeen, false));
+            result = parseOperators(left, minPrecedence, checkpoints);
+        } else {
+            Checkpoint resume = checkpoints.get(checkpoints.size() - 1);
+            position = resume.end;
+            examined = resume.examined;
+            endSeen = resume.endSeen;
+            result = resume.complete ? resume.left : parseOperators(resume.left, minPrecedence, checkpoints);
+        }
+        examined = Math.max(examined, outerExamined);
+        endSeen = Math.max(endSeen, outerEndSeen);
+        return result;
+    }
+
+    /**
+     * Applies binary operators of at least minPrecedence to the given left operand for as long as they follow it,
+     * recording a checkpoint after each one when memoizing
+     */
+    private Function parseOperators(Function left, int minPrecedence, List<Checkpoint> checkpoints) {
+        while (true) {
+            skipWhitespace();
+            BinaryOp.Operator operator = atEnd() ? null : operatorAt(peek());
+            if (operator == null || precedence(operator) < minPrecedence) {
+                if (checkpoints != null) {
+                    checkpoints.add(new Checkpoint(left, position, examined, endSeen, true));
+                }
+                return left;
+            }
+            int precedence = precedence(operator);
+            position++;
+            // ^ is right-associative, the other operators are left-associative
+            int nextPrecedence = operator == BinaryOp.Operator.Power ? precedence : precedence + 1;
+            Function right = parseExpression(nextPrecedence);
+            left = DensePolynomial.combine(operator, left, right);
+            if (checkpoints != null) {
+                checkpoints.add(new Checkpoint(left, position, examined, endSeen, false));
+            }
+        }
+    }
+
+    private Function parsePrefix() {
+        skipWhitespace();
+        if (atEnd()) {
+            throw error("Operand expected");
+        }
+        char ch = peek();
+        if (isDigit(ch) || ch == '.') {
+            return new Number(parseNumber());
+        } else if (Character.isLetter(ch)) {
+            return parseIdentifier();
+        } else if (ch == '(') {
+            position++;
+            Function inner = parseExpression(ADDITIVE);
+            expectClosingParenthesis();
+            return inner;
+        } else if (ch == '-') {
+            position++;
+            // Unary minus is 0 - operand, binding tighter than * and / but looser than ^
+            return DensePolynomial.combine(BinaryOp.Operator.Subtract, new Number(0), parseExpression(UNARY));
+        } else if (ch == '+') {
+            position++;
+            return parseExpression(UNARY);
+        } else if (ch == '\u221A') {
+            position++;
+            return new Polynomial(parseExpression(UNARY), 0.5);
+        } else if (ch == ')') {
+            throw error("Operand expected");
+        }
+        throw error("Invalid character '" + ch + "'");
+    }
+
+    private Function parseIdentifier() {
+        int start = position;
+        while (!atEnd() && Character.isLetter(peek())) {
+            position++;
+        }
+        int end = position;
+        skipWhitespace();
+        if (!atEnd() && peek() == '(') {
+            position++;
+            Function operand = parseExpression(ADDITIVE);
+            expectClosingParenthesis();
+            return createFunction(start, end, operand);
+        }
+        position = end;
+        return variable(start, end);
+    }
+
+    /**
+     * Returns the variable named by expression[start, end), giving a new name the next free slot
+     */
+    private Variable variable(int start, int end) {
+        int slot = 0;
+        while (slot < variables.size() && !nameEquals(start, end, variables.get(slot), false)) {
+            slot++;
+        }
+        if (slot == variables.size()) {
+            variables.add(expression.subSequence(start, end).toString());
+        }
+        while (variableNodes.size() <= slot) {
+            variableNodes.add(null);
+        }
+        Variable variable = variableNodes.get(slot);
+        if (variable == null) {
+            variable = new Variable(variables.get(slot), slot);
+            variableNodes.set(slot, variable);
+        }
+        return variable;
+    }
+
+    /**
+     * Creates the function named by expression[start, end), comparing names in place without copying them
+     */
+    private Function createFunction(int start, int end, Function operand) {
+        if (nameEquals(start, end, "sin", true)) {
+            return new Sin(operand);
+        } else if (nameEquals(start, end, "cos", true)) {
+            return new Cos(operand);
+        } else if (nameEquals(start, end, "log", true)) {
+            return new Log(operand);
+        } else if (nameEquals(start, end, "exp", true)) {
+            return new Exp(operand);
+        } else if (nameEquals(start, end, "sqrt", true)) {
+            return new Polynomial(operand, 0.5);
+        }
+        position = start;
+        throw error("Invalid function name: " + expression.subSequence(start, end));
+    }
+
+    private boolean nameEquals(int start, int end, String name, boolean ignoreCase) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char ch = expression.charAt(start + i);
+            if ((ignoreCase ? Character.toLowerCase(ch) : ch) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a decimal number. Numbers with at most 15 significant digits are converted exactly
+     * from their digits; longer ones fall back to Double.parseDouble.
+     */
+    private double parseNumber() {
+        int start = position;
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        while (!atEnd()) {
+            char ch = peek();
+            if (isDigit(ch)) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (ch - '0');
+                }
+                if (mantissa != 0 || digits > 0) {
+                    digits++;
+                }
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (ch == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+            position++;
+        }
+        if (position - start == 1 && seenPoint) {
+            position = start;
+            throw error("Invalid number");
+        }
+        if (digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            // Both the mantissa and the power of ten are exact, so one division rounds correctly
+            return mantissa / POWERS_OF_TEN[fractionDigits];
+        }
+        return Double.parseDouble(expression.subSequence(start, position).toString());
+    }
+
+    private void expectClosingParenthesis() {
+        skipWhitespace();
+        if (atEnd() || peek() != ')') {
+            throw error("Unbalanced parentheses");
+        }
+        position++;
+    }
+
+    private void skipWhitespace() {
+        while (!atEnd() && Character.isWhitespace(peek())) {
+            position++;
+        }
+    }
+
+    /**
+     * Returns whether the cursor is at the end of the input, noting that the end was seen
+     */
+    private boolean atEnd() {
+        if (position < limit) {
+            return false;
+        }
+        endSeen = limit;
+        return true;
+    }
+
+    /**
+     * Returns the character at the cursor, noting how far the input has been read
+     */
+    private char peek() {
+        if (position > examined) {
+            examined = position;
+        }
+        return expression.charAt(position);
+    }
+
+    private ExpressionParseException error(String message) {
+        return new ExpressionParseException(message, position);
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static BinaryOp.Operator operatorAt(char ch) {
+        switch (ch) {
+            case '+':
+                return BinaryOp.Operator.Add;
+            case '-':
+                return BinaryOp.Operator.Subtract;
+            case '*':
+                return BinaryOp.Operator.Multiply;
+            case '/':
+                return BinaryOp.Operator.Divide;
+            case '^':
+                return BinaryOp.Operator.Power;
+            default:
+                return null;
+        }
+    }
+
+    private static int precedence(BinaryOp.Operator operator) {
+        switch (operator) {
+            case Add:
+            case Subtract:
+                return ADDITIVE;
+            case Multiply:
+            case Divide:
+                return MULTIPLICATIVE;
+            case Power:
+                return POWER;
+            default:
+                throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
+        }
+    }
+
+    /**
+     * The state of parseExpression at one start position and precedence after some operators were applied.
+     * Positions are absolute; IncrementalParser shifts them when text is inserted or deleted before them.
+     */
+    static final class Checkpoint {
+
+        final Function left;
+        final boolean complete;
+        int end;
+        /** The furthest character read to get here, or -1 */
+        int examined;
+        /** The text length at which the end of the input was seen, or -1 */
+        int endSeen;
+
+        Checkpoint(Function left, int end, int examined, int endSeen, boolean complete) {
+            this.left = left;
+            this.end = end;
+            this.examined = examined;
+            this.endSeen = endSeen;
+            this.complete = complete;
+        }
+
+        boolean isValidFor(int limit) {
+            return examined < limit && (endSeen < 0 || endSeen == limit);
+        }
+
+        void shift(int delta) {
+            end += delta;
+            examined += delta;
+            if (endSeen >= 0) {
+                endSeen += delta;
+            }
+        }
+    }
+}
@@ -1,9 +1,25 @@
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
 /**
  *An abstract class to represent a mathematical function with the ability to evaluate the function's value, derivative, and value at the given input
+ * Functions are immutable, and each one computes its derivative at most once and then reuses it
+ * Every subclass must keep value(x) free of shared mutable state, so one function can be evaluated
+ * by many threads at once, as RangeSampler does
  * @author Jenny Zhang
  */
 public abstract class Function {
 
+    /** Whether derivative() passes its result through the Simplifier */
+    private static volatile boolean simplifyDerivatives = true;
+
+    /** The derivative computed with and without simplification, filled in on first use */
+    private volatile Function simplifiedDerivative;
+    private volatile Function rawDerivative;
+
+    /** Partial derivatives indexed by variable slot, replaced by a longer copy when a new slot is asked for */
+    private volatile Function[] simplifiedPartials;
+    private volatile Function[] rawPartials;
 
      public Function() {
     }
@@ -12,7 +28,210 @@ public abstract class Function {
 
     public abstract double value(double input);
 
-    public abstract Function derivative();
+    /**
+     * Evaluates the function with every variable taking its value from its slot of the environment.
+     * Subclasses with operands override this; the default treats the function as a function of x alone.
+     * @param environment the variable values, indexed by Variable.getSlot()
+     * @return the value of the function
+     */
+    public double value(double[] environment) {
+        return value(environment[0]);
+    }
+
+    /**
+     * Returns the derivative of this function, simplified unless simplification has been turned off
+     * with setSimplifyDerivatives.
+     * The derivative is computed on the first call and the same instance is returned afterwards.
+     * @return the derivative function
+     */
+    public Function derivative() {
+        boolean simplify = simplifyDerivatives;
+        Function derivative = simplify ? simplifiedDerivative : rawDerivative;
+        if (derivative != null) {
+            return derivative;
+        }
+        // Locks are only ever taken from a node down to its operands, so nested derivative calls cannot deadlock
+        synchronized (this) {
+            if (simplify) {
+                if (simplifiedDerivative == null) {
+                    simplifiedDerivative = Simplifier.simplify(differentiate(0));
+                }
+                return simplifiedDerivative;
+            }
+            if (rawDerivative == null) {
+                rawDerivative = differentiate(0);
+            }
+            return rawDerivative;
+        }
+    }
+
+    /**
+     * Returns the partial derivative of this function with respect to the variable in the given slot,
+     * simplified and memoized like derivative(), which is the same as derivative(0)
+     * @param slot the slot of the variable to differentiate by
+     * @return the partial derivative function
+     */
+    public Function derivative(int slot) {
+        if (slot == 0) {
+            return derivative();
+        }
+        if (slot < 0) {
+            throw new IllegalArgumentException("Variable slot must not be negative: " + slot);
+        }
+        boolean simplify = simplifyDerivatives;
+        Function[] partials = simplify ? simplifiedPartials : rawPartials;
+        if (partials != null && slot < partials.length && partials[slot] != null) {
+            return partials[slot];
+        }
+        synchronized (this) {
+            partials = simplify ? simplifiedPartials : rawPartials;
+            if (partials != null && slot < partials.length && partials[slot] != null) {
+                return partials[slot];
+            }
+            Function derivative = simplify ? Simplifier.simplify(differentiate(slot)) : differentiate(slot);
+            // Published arrays are never written again, so readers need no lock
+            Function[] updated = partials == null ? new Function[slot + 1]
+                    : Arrays.copyOf(partials, Math.max(partials.length, slot + 1));
+            updated[slot] = derivative;
+            if (simplify) {
+                simplifiedPartials = updated;
+            } else {
+                rawPartials = updated;
+            }
+            return derivative;
+        }
+    }
+
+    /**
+     * Evaluates every partial derivative at the given point, writing the one for slot i to gradient[i]
+     * @param environment the variable values, indexed by slot
+     * @param gradient the array receiving the partial derivatives; its length is the number of slots differentiated
+     */
+    public void gradient(double[] environment, double[] gradient) {
+        for (int slot = 0; slot < gradient.length; slot++) {
+            gradient[slot] = derivative(slot).value(environment);
+        }
+    }
+
+    /**
+     * Bounds the values of the function while x varies over the given interval, in one walk of the tree.
+     * If the result does not contain a value, such as zero or any value in a plot's range,
+     * the function takes that value nowhere in the interval.
+     * Subclasses override this with their own rule; the default knows nothing about the function
+     * and returns the whole line.
+     * @param x the range of the input
+     * @return an interval containing every defined value of the function over x
+     */
+    public Interval interval(Interval x) {
+        return Interval.ENTIRE;
+    }
+
+    /**
+     * Bounds the values of the function while every variable varies over its slot of the environment.
+     * Subclasses with operands override this; the default treats the function as a function of x alone.
+     * @param environment the variable ranges, indexed by Variable.getSlot()
+     * @return an interval containing every defined value of the function
+     */
+    public Interval interval(Interval[] environment) {
+        return interval(environment[0]);
+    }
+
+    /**
+     * Evaluates the function and its derivative at the given input in a single walk,
+     * by propagating dual numbers instead of building the derivative tree.
+     * Subclasses override this with their own rule; the default falls back to derivative().
+     * @param x the input value
+     * @return the dual number (f(x), f'(x))
+     */
+    public Dual dual(double x) {
+        return new Dual(value(x), derivative().value(x));
+    }
+
+    /**
+     * Returns the Taylor coefficients of the function around x up to the given order,
+     * where coefficient i is the i-th derivative divided by i!.
+     * Subclasses override this to propagate truncated series; the default differentiates symbolically.
+     * @param x the expansion point
+     * @param order the highest derivative order wanted
+     * @return the order + 1 Taylor coefficients
+     */
+    public double[] taylor(double x, int order) {
+        double[] coefficients = new double[order + 1];
+        Function current = this;
+        double factorial = 1.0;
+        for (int k = 0; k <= order; k++) {
+            if (k > 0) {
+                current = current.derivative();
+                factorial *= k;
+            }
+            coefficients[k] = current.value(x) / factorial;
+        }
+        return coefficients;
+    }
+
+    /**
+     * Returns the derivatives of the function at x up to the given order, computed from its Taylor series
+     * @param x the input value
+     * @param order the highest derivative order wanted
+     * @return f(x), f'(x), ..., the order-th derivative at x
+     */
+    public double[] derivatives(double x, int order) {
+        if (order < 0) {
+            throw new IllegalArgumentException("Derivative order must not be negative: " + order);
+        }
+        return Taylor.toDerivatives(taylor(x, order));
+    }
+
+    /**
+     * Applies the differentiation rule of this function without any simplification
+     * @param slot the slot of the variable to differentiate by, 0 for x
+     * @return the derivative function as produced by the rule
+     */
+    protected abstract Function differentiate(int slot);
+
+    /**
+     * Sets whether derivative() simplifies its result, which it does by default
+     * @param simplify false to get derivatives exactly as the differentiation rules produce them
+     */
+    public static void setSimplifyDerivatives(boolean simplify) {
+        simplifyDerivatives = simplify;
+    }
+
+    public static boolean isSimplifyDerivatives() {
+        return simplifyDerivatives;
+    }
+
+    /**
+     * Evaluates the function at every input, writing value(inputs[i]) to outputs[i]
+     * @param inputs the input values
+     * @param outputs the array receiving the results, at least as long as inputs
+     */
+    public void value(double[] inputs, double[] outputs) {
+        new BatchEvaluator().evaluate(this, inputs, outputs);
+    }
+
+    /**
+     * Evaluates the function for every remaining value of inputs and puts the results into outputs
+     * @param inputs the buffer of input values
+     * @param outputs the buffer receiving the results
+     */
+    public void value(DoubleBuffer inputs, DoubleBuffer outputs) {
+        new BatchEvaluator().evaluate(this, inputs, outputs);
+    }
+
+    /**
+     * Evaluates one block of inputs for the BatchEvaluator.
+     * Subclasses override this to process the whole column at once; the default evaluates value by value.
+     * @param inputs the block of input values, which must not be modified
+     * @param outputs the column receiving the results
+     * @param length the number of values in the block
+     * @param evaluator the evaluator supplying scratch columns
+     */
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        for (int i = 0; i < length; i++) {
+            outputs[i] = value(inputs[i]);
+        }
+    }
 
 }
 
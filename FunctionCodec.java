@@ -0,0 +1,369 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The FunctionCodec class writes Function graphs in a compact, versioned binary format.
+ * Every distinct subexpression is stored once as a node that refers to its operands by index,
+ * so sharing inside one function and across the functions of a library survives the round trip.
+ * Nodes are written operands first, which lets a reader decode them in one forward pass.
+ * <p>
+ * Layout, all integers big-endian:
+ * <pre>
+ * int magic, int version, int nodeCount, int rootCount, int nodeBytes
+ * int[nodeCount] node offsets, relative to the start of the node section
+ * int[rootCount] root node indexes
+ * node section: per node a tag byte followed by its payload
+ * </pre>
+ * Version 2 added the name and slot to variable nodes; version 1 data, whose variables are all x, is still read.
+ * Version 3 added dense polynomial nodes: the index of their variable, the coefficient count and the coefficients from c0 up.
+ * Use ExpressionLibrary to read the format, in particular from memory-mapped files.
+ * @author Jenny Zhang
+ */
+public final class FunctionCodec {
+
+    /** "CALC" in ASCII */
+    static final int MAGIC = 0x43414C43;
+    static final int VERSION = 3;
+    static final int HEADER_BYTES = 20;
+
+    static final byte NUMBER = 1;
+    static final byte VARIABLE = 2;
+    static final byte BINARY_OP = 3;
+    static final byte POLYNOMIAL = 4;
+    static final byte SIN = 5;
+    static final byte COS = 6;
+    static final byte EXP = 7;
+    static final byte LOG = 8;
+    static final byte TRIG = 9;
+    static final byte DENSE_POLYNOMIAL = 10;
+
+    /** Operator codes are positions in this array, kept independent of the enum's declaration order */
+    static final BinaryOp.Operator[] OPERATORS = {
+            BinaryOp.Operator.Add,
+            BinaryOp.Operator.Subtract,
+            BinaryOp.Operator.Multiply,
+            BinaryOp.Operator.Divide,
+            BinaryOp.Operator.Power
+    };
+
+    private static final int CHANNEL_BUFFER_BYTES = 1 << 16;
+
+    private FunctionCodec() {
+    }
+
+    /**
+     * Returns the number of bytes write needs for the given functions
+     * @param functions the functions to encode
+     * @return the encoded size in bytes
+     */
+    public static long encodedSize(List<? extends Function> functions) {
+        return new Encoder(functions).totalBytes();
+    }
+
+    /**
+     * Writes a single function to the buffer
+     * @param function the function to encode
+     * @param buffer the buffer to write to
+     */
+    public static void write(Function function, ByteBuffer buffer) {
+        write(Collections.singletonList(function), buffer);
+    }
+
+    /**
+     * Writes the functions to the buffer as one library whose common subexpressions are stored once
+     * @param functions the functions to encode, in the order ExpressionLibrary.get returns them
+     * @param buffer the buffer to write to
+     * @throws java.nio.BufferOverflowException if the buffer has less than encodedSize bytes remaining
+     */
+    public static void write(List<? extends Function> functions, ByteBuffer buffer) {
+        try {
+            new Encoder(functions).writeTo(buffer, null);
+        } catch (IOException e) {
+            // Only writes to a channel can fail with an IOException
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the functions to the channel as one library, streaming through a small buffer
+     * @param functions the functions to encode
+     * @param channel the channel to write to, at its current position
+     * @throws IOException if writing to the channel fails
+     */
+    public static void write(List<? extends Function> functions, FileChannel channel) throws IOException {
+        Encoder encoder = new Encoder(functions);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_BYTES);
+        encoder.writeTo(buffer, channel);
+        flush(buffer, channel);
+    }
+
+    /**
+     * Reads one function written by write, advancing the buffer past it
+     * @param buffer the buffer positioned at the start of the encoded data
+     * @return the first function stored in the data
+     */
+    public static Function read(ByteBuffer buffer) {
+        List<Function> functions = readAll(buffer);
+        if (functions.isEmpty()) {
+            throw new IllegalArgumentException("Encoded data holds no function");
+        }
+        return functions.get(0);
+    }
+
+    /**
+     * Reads every function written by write, advancing the buffer past them
+     * @param buffer the buffer positioned at the start of the encoded data
+     * @return the stored functions in order
+     */
+    public static List<Function> readAll(ByteBuffer buffer) {
+        ExpressionLibrary library = ExpressionLibrary.wrap(buffer);
+        List<Function> functions = library.getAll();
+        buffer.position(buffer.position() + (int) library.encodedSize());
+        return functions;
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static int operatorCode(BinaryOp.Operator operator) {
+        for (int i = 0; i < OPERATORS.length; i++) {
+            if (OPERATORS[i] == operator) {
+                return i;
+            }
+        }
+        throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
+    }
+
+    /**
+     * Numbers the distinct nodes of the functions operands first and lays them out
+     */
+    private static class Encoder {
+
+        private final List<Function> nodes = new ArrayList<>();
+        /** The operand indexes of each node, in the order they are written */
+        private final List<int[]> operandIndexes = new ArrayList<>();
+        private final Map<Function, Integer> indexes = new HashMap<>();
+        /** The index of every node instance visited, so a shared instance is numbered once without comparing trees */
+        private final Map<Function, Integer> visited = new IdentityHashMap<>();
+        /** The operands of each instance waiting on the work stack, taken once so a LinearizedFunction is converted once */
+        private final Map<Function, Function[]> pending = new IdentityHashMap<>();
+        private final int[] roots;
+        private final int[] offsets;
+        private final int nodeBytes;
+
+        Encoder(List<? extends Function> functions) {
+            roots = new int[functions.size()];
+            for (int i = 0; i < roots.length; i++) {
+                roots[i] = add(functions.get(i));
+            }
+            offsets = new int[nodes.size()];
+            long offset = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                if (offset > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many nodes to encode");
+                }
+                offsets[i] = (int) offset;
+                offset += nodeSize(nodes.get(i));
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many nodes to encode");
+            }
+            nodeBytes = (int) offset;
+        }
+
+        long totalBytes() {
+            return HEADER_BYTES + 4L * offsets.length + 4L * roots.length + nodeBytes;
+        }
+
+        /**
+         * Returns the index of the node, adding it and its operands first if it has not been seen.
+         * The tree is walked with an explicit work stack, so its depth is not limited by the call stack,
+         * and a node is looked up by value only once its operands are, so every hash code is built bottom-up
+         */
+        private int add(Function root) {
+            Function start = normalize(root);
+            List<Function> stack = new ArrayList<>();
+            stack.add(start);
+            while (!stack.isEmpty()) {
+                Function function = stack.get(stack.size() - 1);
+                if (visited.containsKey(function)) {
+                    stack.remove(stack.size() - 1);
+                    continue;
+                }
+                Function[] operands = pending.get(function);
+                if (operands == null) {
+                    operands = operands(function);
+                    pending.put(function, operands);
+                }
+                boolean ready = true;
+                // Pushed right to left, so the left operand is numbered first
+                for (int i = operands.length - 1; i >= 0; i--) {
+                    if (!visited.containsKey(operands[i])) {
+                        stack.add(operands[i]);
+                        ready = false;
+                    }
+                }
+                if (!ready) {
+                    continue;
+                }
+                stack.remove(stack.size() - 1);
+                pending.remove(function);
+                Integer index = indexes.get(function);
+                if (index == null) {
+                    int[] references = new int[operands.length];
+                    for (int i = 0; i < operands.length; i++) {
+                        references[i] = visited.get(operands[i]);
+                    }
+                    index = nodes.size();
+                    nodes.add(function);
+                    operandIndexes.add(references);
+                    indexes.put(function, index);
+                }
+                visited.put(function, index);
+            }
+            return visited.get(start);
+        }
+
+        /**
+         * Returns the operands of a node in the order they are written
+         */
+        private static Function[] operands(Function function) {
+            if (function instanceof BinaryOp) {
+                BinaryOp op = (BinaryOp) function;
+                return new Function[] {normalize(op.getLeftOperand()), normalize(op.getRightOperand())};
+            } else if (function instanceof Number || function instanceof Variable) {
+                return new Function[0];
+            }
+            Function operand = FunctionCompiler.unaryOperand(function);
+            if (operand == null) {
+                throw new IllegalArgumentException("Cannot encode " + function.getClass().getName() + ": " + function);
+            }
+            return new Function[] {normalize(operand)};
+        }
+
+        private static Function normalize(Function function) {
+            return function instanceof LinearizedFunction ? ((LinearizedFunction) function).toFunction() : function;
+        }
+
+        private static int nodeSize(Function function) {
+            if (function instanceof Number) {
+                return 1 + 8;
+            } else if (function instanceof Variable) {
+                return 1 + 4 + 2 + ((Variable) function).getName().getBytes(StandardCharsets.UTF_8).length;
+            } else if (function instanceof BinaryOp) {
+                return 1 + 1 + 4 + 4;
+            } else if (function instanceof Polynomial) {
+                return 1 + 4 + 8;
+            } else if (function instanceof DensePolynomial) {
+                return 1 + 4 + 4 + 8 * (((DensePolynomial) function).getDegree() + 1);
+            } else if (function instanceof Trig) {
+                return 1 + 4 + 2 + ((Trig) function).getFunction().getBytes(StandardCharsets.UTF_8).length;
+            }
+            return 1 + 4;
+        }
+
+        /**
+         * Writes the encoding to the buffer; when a channel is given, the buffer is flushed to it whenever it fills up
+         */
+        void writeTo(ByteBuffer buffer, FileChannel channel) throws IOException {
+            int[] header = {MAGIC, VERSION, offsets.length, roots.length, nodeBytes};
+            for (int value : header) {
+                putInt(buffer, channel, value);
+            }
+            for (int offset : offsets) {
+                putInt(buffer, channel, offset);
+            }
+            for (int root : roots) {
+                putInt(buffer, channel, root);
+            }
+            for (int i = 0; i < nodes.size(); i++) {
+                Function node = nodes.get(i);
+                // A dense polynomial may not fit in the buffer at all, so only its fixed part has to fit up front
+                int size = node instanceof DensePolynomial ? 1 + 4 + 4 : nodeSize(node);
+                if (channel != null && buffer.remaining() < size) {
+                    flush(buffer, channel);
+                }
+                writeNode(node, operandIndexes.get(i), buffer, channel);
+            }
+        }
+
+        private static void putInt(ByteBuffer buffer, FileChannel channel, int value) throws IOException {
+            if (channel != null && buffer.remaining() < 4) {
+                flush(buffer, channel);
+            }
+            buffer.putInt(value);
+        }
+
+        private static void writeNode(Function function, int[] operands, ByteBuffer buffer, FileChannel channel) throws IOException {
+            if (function instanceof Number) {
+                buffer.put(NUMBER);
+                buffer.putDouble(((Number) function).getValue());
+            } else if (function instanceof Variable) {
+                Variable variable = (Variable) function;
+                byte[] name = variable.getName().getBytes(StandardCharsets.UTF_8);
+                buffer.put(VARIABLE);
+                buffer.putInt(variable.getSlot());
+                buffer.putShort((short) name.length);
+                buffer.put(name);
+            } else if (function instanceof BinaryOp) {
+                BinaryOp op = (BinaryOp) function;
+                buffer.put(BINARY_OP);
+                buffer.put((byte) operatorCode(op.getOperator()));
+                buffer.putInt(operands[0]);
+                buffer.putInt(operands[1]);
+            } else if (function instanceof Polynomial) {
+                Polynomial polynomial = (Polynomial) function;
+                buffer.put(POLYNOMIAL);
+                buffer.putInt(operands[0]);
+                buffer.putDouble(polynomial.getPower());
+            } else if (function instanceof DensePolynomial) {
+                DensePolynomial polynomial = (DensePolynomial) function;
+                buffer.put(DENSE_POLYNOMIAL);
+                buffer.putInt(operands[0]);
+                buffer.putInt(polynomial.getDegree() + 1);
+                for (int k = 0; k <= polynomial.getDegree(); k++) {
+                    if (channel != null && buffer.remaining() < 8) {
+                        flush(buffer, channel);
+                    }
+                    buffer.putDouble(polynomial.getCoefficient(k));
+                }
+            } else if (function instanceof Trig) {
+                Trig trig = (Trig) function;
+                byte[] name = trig.getFunction().getBytes(StandardCharsets.UTF_8);
+                buffer.put(TRIG);
+                buffer.putInt(operands[0]);
+                buffer.putShort((short) name.length);
+                buffer.put(name);
+            } else {
+                buffer.put(unaryTag(function));
+                buffer.putInt(operands[0]);
+            }
+        }
+
+        private static byte unaryTag(Function function) {
+            if (function instanceof Sin) {
+                return SIN;
+            } else if (function instanceof Cos) {
+                return COS;
+            } else if (function instanceof Exp) {
+                return EXP;
+            } else if (function instanceof Log) {
+                return LOG;
+            }
+            throw new IllegalArgumentException("Cannot encode " + function.getClass().getName() + ": " + function);
+        }
+    }
+}
@@ -0,0 +1,523 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The FunctionCompiler class turns a Function tree into a hidden class whose single method
+ * evaluates the whole expression as straight-line bytecode.
+ * Constant subtrees are folded and inlined, and every node is lowered to the matching
+ * double instruction or Math call, so the JIT sees one method instead of a chain of virtual calls.
+ * Nodes the compiler does not know are called through their own value(x) method.
+ * @author Jenny Zhang
+ */
+public final class FunctionCompiler {
+
+    /** Largest method body the JVM accepts */
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int DLOAD_1 = 0x27;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int LDC2_W = 0x14;
+    private static final int SIPUSH = 0x11;
+    private static final int AALOAD = 0x32;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    private FunctionCompiler() {
+    }
+
+    /**
+     * Compiles the given function into a DoubleUnaryOperator backed by a generated hidden class
+     * @param function the function to compile
+     * @return an operator computing function.value(x)
+     */
+    public static DoubleUnaryOperator compile(Function function) {
+        Generator generator = new Generator();
+        byte[] classBytes;
+        try {
+            classBytes = generator.generate(function);
+        } catch (CodeTooLargeException e) {
+            return function::value;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+            MethodHandle constructor = lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, Function[].class));
+            Function[] nodes = generator.opaqueNodes.toArray(new Function[0]);
+            return (DoubleUnaryOperator) constructor.invoke(nodes);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to define compiled function for " + function, e);
+        }
+    }
+
+    /**
+     * Returns the body of the applyAsDouble method that compile generates for the given function
+     * @param function the function to compile
+     * @return the bytecode, or null if it is too large and compile falls back to value(x)
+     */
+    static byte[] code(Function function) {
+        Generator generator = new Generator();
+        try {
+            generator.generate(function);
+        } catch (CodeTooLargeException e) {
+            return null;
+        }
+        return generator.code.toByteArray();
+    }
+
+    /**
+     * Checks if the given function has no dependence on the input and can be folded to a constant
+     * @param function the function to check
+     * @return true if the function always evaluates to the same value
+     */
+    static boolean isConstant(Function function) {
+        if (function instanceof Number) {
+            return true;
+        } else if (function instanceof BinaryOp) {
+            BinaryOp op = (BinaryOp) function;
+            return isConstant(op.getLeftOperand()) && isConstant(op.getRightOperand());
+        }
+        Function operand = unaryOperand(function);
+        return operand != null && isConstant(operand);
+    }
+
+    /**
+     * Returns the operand of a single-operand node such as Sin or Polynomial
+     * @param function the node to inspect
+     * @return the operand, or null if the node is not a known unary node
+     */
+    static Function unaryOperand(Function function) {
+        if (function instanceof Polynomial) {
+            return ((Polynomial) function).getOperand();
+        } else if (function instanceof DensePolynomial) {
+            return ((DensePolynomial) function).getVariable();
+        } else if (function instanceof Sin) {
+            return ((Sin) function).getOperand();
+        } else if (function instanceof Cos) {
+            return ((Cos) function).getOperand();
+        } else if (function instanceof Trig) {
+            return ((Trig) function).getOperand();
+        } else if (function instanceof Exp) {
+            return ((Exp) function).getOperand();
+        } else if (function instanceof Log) {
+            return ((Log) function).getOperand();
+        }
+        return null;
+    }
+
+    private static class CodeTooLargeException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Emits the class file for one compiled function
+     */
+    private static class Generator {
+
+        private final ConstantPool pool = new ConstantPool();
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<Function> opaqueNodes = new ArrayList<>();
+        private final Map<Function, Boolean> constants = new IdentityHashMap<>();
+        private int stack;
+        private int maxStack;
+
+        private final int thisClass = pool.classRef("FunctionCompiler$Compiled");
+        private final int superClass = pool.classRef("java/lang/Object");
+        private final int interfaceClass = pool.classRef("java/util/function/DoubleUnaryOperator");
+        private final int nodesField = pool.fieldRef("FunctionCompiler$Compiled", "nodes", "[LFunction;");
+        private final int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+
+        byte[] generate(Function function) throws CodeTooLargeException {
+            emit(function);
+            op(DRETURN);
+            if (code.size() > MAX_CODE_LENGTH || maxStack > 0xffff || pool.size > 0xffff) {
+                throw new CodeTooLargeException();
+            }
+
+            int initName = pool.utf8("<init>");
+            int initDescriptor = pool.utf8("([LFunction;)V");
+            int applyName = pool.utf8("applyAsDouble");
+            int applyDescriptor = pool.utf8("(D)D");
+            int fieldName = pool.utf8("nodes");
+            int fieldDescriptor = pool.utf8("[LFunction;");
+            int codeAttribute = pool.utf8("Code");
+
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(52);
+                pool.writeTo(out);
+                out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(interfaceClass);
+
+                out.writeShort(1);
+                out.writeShort(ACC_PRIVATE | ACC_FINAL);
+                out.writeShort(fieldName);
+                out.writeShort(fieldDescriptor);
+                out.writeShort(0);
+
+                out.writeShort(2);
+                byte[] init = {
+                        (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+                        (byte) ALOAD_0, (byte) ALOAD_1, (byte) PUTFIELD, (byte) (nodesField >> 8), (byte) nodesField,
+                        (byte) RETURN
+                };
+                writeMethod(out, initName, initDescriptor, codeAttribute, 2, 2, init);
+                writeMethod(out, applyName, applyDescriptor, codeAttribute, maxStack, 3, code.toByteArray());
+                out.writeShort(0);
+                out.flush();
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute,
+                                        int maxStack, int maxLocals, byte[] body) throws IOException {
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + body.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        private void emit(Function function) throws CodeTooLargeException {
+            if (code.size() > MAX_CODE_LENGTH) {
+                throw new CodeTooLargeException();
+            }
+            if (constant(function)) {
+                pushConstant(function.value(0.0));
+            } else if (function instanceof Variable && ((Variable) function).getSlot() == 0) {
+                op(DLOAD_1);
+                push(2);
+            } else if (function instanceof BinaryOp) {
+                emitBinaryOp((BinaryOp) function);
+            } else if (function instanceof Polynomial) {
+                Polynomial polynomial = (Polynomial) function;
+                emitPower(polynomial.getOperand(), polynomial.getPower());
+            } else if (function instanceof DensePolynomial && ((DensePolynomial) function).getVariable().getSlot() == 0) {
+                emitHorner((DensePolynomial) function);
+            } else if (function instanceof Sin) {
+                emit(((Sin) function).getOperand());
+                invokeMath("sin", "(D)D", 0);
+            } else if (function instanceof Cos) {
+                emit(((Cos) function).getOperand());
+                invokeMath("cos", "(D)D", 0);
+            } else if (function instanceof Trig) {
+                Trig trig = (Trig) function;
+                String name = trig.getFunction().toLowerCase();
+                if (!name.equals("sin") && !name.equals("cos")) {
+                    throw new UnsupportedOperationException("Unsupported trigonometric function: " + trig.getFunction());
+                }
+                emit(trig.getOperand());
+                invokeMath(name, "(D)D", 0);
+            } else if (function instanceof Exp) {
+                emit(((Exp) function).getOperand());
+                invokeMath("exp", "(D)D", 0);
+            } else if (function instanceof Log) {
+                emit(((Log) function).getOperand());
+                invokeMath("log", "(D)D", 0);
+            } else {
+                emitOpaque(function);
+            }
+        }
+
+        /**
+         * Memoized isConstant so that checking every node while emitting stays linear
+         */
+        private boolean constant(Function function) {
+            Boolean known = constants.get(function);
+            if (known == null) {
+                if (function instanceof BinaryOp) {
+                    BinaryOp op = (BinaryOp) function;
+                    known = constant(op.getLeftOperand()) && constant(op.getRightOperand());
+                } else if (unaryOperand(function) != null) {
+                    known = constant(unaryOperand(function));
+                } else {
+                    known = function instanceof Number;
+                }
+                constants.put(function, known);
+            }
+            return known;
+        }
+
+        private void emitBinaryOp(BinaryOp op) throws CodeTooLargeException {
+            if (op.getOperator() == BinaryOp.Operator.Power) {
+                if (constant(op.getRightOperand())) {
+                    emitPower(op.getLeftOperand(), op.getRightOperand().value(0.0));
+                } else {
+                    emit(op.getLeftOperand());
+                    emit(op.getRightOperand());
+                    invokeMath("pow", "(DD)D", 2);
+                }
+                return;
+            }
+            emit(op.getLeftOperand());
+            emit(op.getRightOperand());
+            switch (op.getOperator()) {
+                case Add:
+                    op(DADD);
+                    break;
+                case Subtract:
+                    op(DSUB);
+                    break;
+                case Multiply:
+                    op(DMUL);
+                    break;
+                case Divide:
+                    op(DDIV);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unsupported binary operator: " + op.getOperator());
+            }
+            pop(2);
+        }
+
+        private void emitPower(Function base, double power) throws CodeTooLargeException {
+            if (power == 0.0) {
+                // Math.pow(x, 0) is 1 for every x, including NaN
+                pushConstant(1.0);
+                return;
+            }
+            emit(base);
+            if (power == 1.0) {
+                return;
+            }
+            if (power == 2.0) {
+                op(DUP2);
+                push(2);
+                op(DMUL);
+                pop(2);
+            } else {
+                pushConstant(power);
+                invokeMath("pow", "(DD)D", 2);
+            }
+        }
+
+        /**
+         * Emits Horner's scheme inline, one multiply by x and one add per coefficient
+         */
+        private void emitHorner(DensePolynomial polynomial) {
+            int degree = polynomial.getDegree();
+            pushConstant(polynomial.getCoefficient(degree));
+            for (int k = degree - 1; k >= 0; k--) {
+                op(DLOAD_1);
+                push(2);
+                op(DMUL);
+                pop(2);
+                pushConstant(polynomial.getCoefficient(k));
+                op(DADD);
+                pop(2);
+            }
+        }
+
+        private void emitOpaque(Function function) {
+            int index = opaqueNodes.size();
+            opaqueNodes.add(function);
+            if (index > Short.MAX_VALUE) {
+                throw new UnsupportedOperationException("Too many uncompiled nodes in " + function);
+            }
+            op(ALOAD_0);
+            push(1);
+            op(GETFIELD);
+            u2(nodesField);
+            op(SIPUSH);
+            u2(index);
+            push(1);
+            op(AALOAD);
+            pop(1);
+            op(DLOAD_1);
+            push(2);
+            op(INVOKEVIRTUAL);
+            u2(pool.methodRef("Function", "value", "(D)D"));
+            pop(1);
+        }
+
+        private void pushConstant(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                op(DCONST_0);
+            } else if (value == 1.0) {
+                op(DCONST_1);
+            } else {
+                op(LDC2_W);
+                u2(pool.doubleConstant(value));
+            }
+            push(2);
+        }
+
+        /**
+         * Calls a static Math method, popping the given number of extra argument slots
+         */
+        private void invokeMath(String name, String descriptor, int poppedSlots) {
+            op(INVOKESTATIC);
+            u2(pool.methodRef("java/lang/Math", name, descriptor));
+            pop(poppedSlots);
+        }
+
+        private void op(int opcode) {
+            code.write(opcode);
+        }
+
+        private void u2(int value) {
+            code.write(value >> 8);
+            code.write(value);
+        }
+
+        private void push(int slots) {
+            stack += slots;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void pop(int slots) {
+            stack -= slots;
+        }
+    }
+
+    /**
+     * A minimal class file constant pool that reuses identical entries
+     */
+    private static class ConstantPool {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int size = 1;
+
+        int utf8(String value) {
+            Integer index = entries.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return register("U" + value, 1);
+        }
+
+        int classRef(String internalName) {
+            Integer index = entries.get("C" + internalName);
+            if (index != null) {
+                return index;
+            }
+            int name = utf8(internalName);
+            writeEntry(7, name);
+            return register("C" + internalName, 1);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return memberRef(10, owner, name, descriptor);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return memberRef(9, owner, name, descriptor);
+        }
+
+        int doubleConstant(double value) {
+            String key = "D" + Double.doubleToRawLongBits(value);
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(6);
+                out.writeDouble(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            // Doubles take up two constant pool slots
+            return register(key, 2);
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(size);
+            bytes.writeTo(target);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) {
+            String key = tag + owner + "." + name + descriptor;
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            int ownerIndex = classRef(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            writeEntry(tag, ownerIndex, nameAndType);
+            return register(key, 1);
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            String key = "N" + name + ":" + descriptor;
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            writeEntry(12, nameIndex, descriptorIndex);
+            return register(key, 1);
+        }
+
+        private void writeEntry(int tag, int... references) {
+            try {
+                out.writeByte(tag);
+                for (int reference : references) {
+                    out.writeShort(reference);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int register(String key, int slots) {
+            int index = size;
+            entries.put(key, index);
+            size += slots;
+            return index;
+        }
+    }
+}
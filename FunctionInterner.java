@@ -0,0 +1,133 @@
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The FunctionInterner class hash-conses Function nodes so that structurally equal subexpressions
+ * are represented by a single shared instance.
+ * Interning a tree turns it into a DAG in which every distinct subexpression appears once,
+ * which keeps repeated derivatives small and lets DagEvaluator compute each of them once per input.
+ * An interner may be shared between threads.
+ * @author Jenny Zhang
+ */
+public class FunctionInterner {
+
+    private final Map<Function, Function> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the canonical instance of the given function, interning all of its subexpressions
+     * @param function the function to intern
+     * @return a structurally equal function whose nodes are all canonical
+     */
+    public Function intern(Function function) {
+        return intern(function, new IdentityHashMap<Function, Function>());
+    }
+
+    public Function number(double value) {
+        return canonical(new Number(value));
+    }
+
+    public Function variable() {
+        return canonical(new Variable());
+    }
+
+    public Function variable(String name, int slot) {
+        return canonical(new Variable(name, slot));
+    }
+
+    public Function binaryOp(BinaryOp.Operator operator, Function leftOperand, Function rightOperand) {
+        return canonical(new BinaryOp(operator, intern(leftOperand), intern(rightOperand)));
+    }
+
+    public Function polynomial(Function operand, double power) {
+        return canonical(new Polynomial(intern(operand), power));
+    }
+
+    public Function sin(Function operand) {
+        return canonical(new Sin(intern(operand)));
+    }
+
+    public Function cos(Function operand) {
+        return canonical(new Cos(intern(operand)));
+    }
+
+    public Function trig(String function, Function operand) {
+        return canonical(new Trig(function, intern(operand)));
+    }
+
+    public Function exp(Function operand) {
+        return canonical(new Exp(intern(operand)));
+    }
+
+    public Function log(Function operand) {
+        return canonical(new Log(intern(operand)));
+    }
+
+    /**
+     * Returns the number of distinct nodes held by this interner
+     * @return the number of canonical nodes
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Interns the function bottom-up, remembering nodes already visited in this call so shared
+     * subtrees of the input are only walked once
+     */
+    private Function intern(Function function, Map<Function, Function> visited) {
+        Function done = visited.get(function);
+        if (done != null) {
+            return done;
+        }
+        Function rebuilt;
+        if (function instanceof BinaryOp) {
+            BinaryOp op = (BinaryOp) function;
+            Function left = intern(op.getLeftOperand(), visited);
+            Function right = intern(op.getRightOperand(), visited);
+            rebuilt = left == op.getLeftOperand() && right == op.getRightOperand()
+                    ? op : new BinaryOp(op.getOperator(), left, right);
+        } else if (function instanceof Polynomial) {
+            Polynomial polynomial = (Polynomial) function;
+            Function operand = intern(polynomial.getOperand(), visited);
+            rebuilt = operand == polynomial.getOperand() ? polynomial : new Polynomial(operand, polynomial.getPower());
+        } else if (function instanceof Sin) {
+            Sin sin = (Sin) function;
+            Function operand = intern(sin.getOperand(), visited);
+            rebuilt = operand == sin.getOperand() ? sin : new Sin(operand);
+        } else if (function instanceof Cos) {
+            Cos cos = (Cos) function;
+            Function operand = intern(cos.getOperand(), visited);
+            rebuilt = operand == cos.getOperand() ? cos : new Cos(operand);
+        } else if (function instanceof Trig) {
+            Trig trig = (Trig) function;
+            Function operand = intern(trig.getOperand(), visited);
+            rebuilt = operand == trig.getOperand() ? trig : new Trig(trig.getFunction(), operand);
+        } else if (function instanceof Exp) {
+            Exp exp = (Exp) function;
+            Function operand = intern(exp.getOperand(), visited);
+            rebuilt = operand == exp.getOperand() ? exp : new Exp(operand);
+        } else if (function instanceof Log) {
+            Log log = (Log) function;
+            Function operand = intern(log.getOperand(), visited);
+            rebuilt = operand == log.getOperand() ? log : new Log(operand);
+        } else if (function instanceof DensePolynomial) {
+            DensePolynomial polynomial = (DensePolynomial) function;
+            Function variable = intern(polynomial.getVariable(), visited);
+            rebuilt = variable == polynomial.getVariable() ? polynomial
+                    : new DensePolynomial((Variable) variable, polynomial.getCoefficients());
+        } else {
+            // Leaves and node types without rebuild support are interned as they are
+            rebuilt = function;
+        }
+
+        Function result = canonical(rebuilt);
+        visited.put(function, result);
+        return result;
+    }
+
+    private Function canonical(Function function) {
+        Function existing = nodes.putIfAbsent(function, function);
+        return existing != null ? existing : function;
+    }
+}
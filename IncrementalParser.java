@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The IncrementalParser class keeps the text of an expression that is edited one change at a time
+ * and re-parses it after each change without starting over.
+ * Every parse records, for each position and precedence level it parsed from, the subtrees it built
+ * and how far into the text each one looked. An edit keeps the records that looked only at text
+ * before it and shifts the ones that start after it, so the next parse rebuilds only the nodes
+ * whose text contains the edit and reuses everything else as it is.
+ * Variable slots are numbered by one list kept across parses, starting as x, y, z.
+ * An IncrementalParser is meant for a single editor and is not safe to share between threads.
+ * @author Jenny Zhang
+ */
+public class IncrementalParser {
+
+    private static final List<String> DEFAULT_VARIABLES = Arrays.asList("x", "y", "z");
+
+    private final StringBuilder text = new StringBuilder();
+    private final List<String> variables = new ArrayList<>(DEFAULT_VARIABLES);
+    private final Map<Long, List<ExpressionParser.Checkpoint>> memo = new HashMap<>();
+
+    public String getText() {
+        return text.toString();
+    }
+
+    public int length() {
+        return text.length();
+    }
+
+    /**
+     * Returns the variable names by slot used for every parse so far
+     * @return the variable names, which must not be modified
+     */
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Inserts text at the given offset
+     * @param offset the position to insert at
+     * @param inserted the text to insert
+     */
+    public void insert(int offset, CharSequence inserted) {
+        text.insert(offset, inserted);
+        edited(offset, 0, inserted.length());
+    }
+
+    /**
+     * Deletes the characters from start up to but not including end
+     * @param start the first position to delete
+     * @param end the position after the last one to delete
+     */
+    public void delete(int start, int end) {
+        text.delete(start, end);
+        edited(start, end - start, 0);
+    }
+
+    /**
+     * Removes all text, forgets every recorded subtree and numbers variables from x, y, z again
+     */
+    public void clear() {
+        text.setLength(0);
+        memo.clear();
+        variables.clear();
+        variables.addAll(DEFAULT_VARIABLES);
+    }
+
+    /**
+     * Parses the whole text
+     * @return the function the text describes
+     * @throws ExpressionParseException if the text is not a valid expression
+     */
+    public Function parse() {
+        return parse(text.length());
+    }
+
+    /**
+     * Parses the first length characters of the text, for editors that keep a suffix such as a derivative mark
+     * @param length the number of characters to parse
+     * @return the function those characters describe
+     * @throws ExpressionParseException if they are not a valid expression
+     */
+    public Function parse(int length) {
+        if (length < 0 || length > text.length()) {
+            throw new IndexOutOfBoundsException("Length " + length + " out of bounds for text of length " + text.length());
+        }
+        return new ExpressionParser(text, length, variables, memo).parse();
+    }
+
+    /**
+     * Returns the number of recorded parse positions, for monitoring how much a parse can reuse
+     * @return the number of memo entries
+     */
+    public int getMemoSize() {
+        return memo.size();
+    }
+
+    /**
+     * Updates the memo after removed characters at offset were replaced by inserted new ones.
+     * Entries before the edit are updated in place, so typing at the end of the text moves nothing.
+     */
+    private void edited(int offset, int removed, int inserted) {
+        int delta = inserted - removed;
+        List<Map.Entry<Long, List<ExpressionParser.Checkpoint>>> shifted = new ArrayList<>();
+        Iterator<Map.Entry<Long, List<ExpressionParser.Checkpoint>>> entries = memo.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Long, List<ExpressionParser.Checkpoint>> entry = entries.next();
+            int start = (int) (entry.getKey() >>> 3);
+            List<ExpressionParser.Checkpoint> checkpoints = entry.getValue();
+            if (start >= offset + removed) {
+                if (delta != 0) {
+                    // Parsing only reads forward, so text that starts after the edit parses the same at its new position
+                    for (ExpressionParser.Checkpoint checkpoint : checkpoints) {
+                        checkpoint.shift(delta);
+                    }
+                    shifted.add(entry);
+                    entries.remove();
+                }
+            } else if (start >= offset) {
+                entries.remove();
+            } else {
+                int keep = 0;
+                while (keep < checkpoints.size() && lastRead(checkpoints.get(keep)) < offset) {
+                    keep++;
+                }
+                if (keep == 0) {
+                    entries.remove();
+                } else if (keep < checkpoints.size()) {
+                    checkpoints.subList(keep, checkpoints.size()).clear();
+                }
+            }
+        }
+        for (Map.Entry<Long, List<ExpressionParser.Checkpoint>> entry : shifted) {
+            long key = entry.getKey();
+            memo.put((((key >>> 3) + delta) << 3) | (key & 7), entry.getValue());
+        }
+    }
+
+    private static int lastRead(ExpressionParser.Checkpoint checkpoint) {
+        return Math.max(checkpoint.examined, checkpoint.endSeen);
+    }
+}
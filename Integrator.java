@@ -0,0 +1,442 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Integrator class computes definite integrals of a Function of x with an estimate of their error.
+ * <p>
+ * The adaptive rules estimate the integral over a panel twice, with a cheap and an accurate formula, and take
+ * their difference as the panel's error. A panel whose error is above its share of the tolerance, in
+ * proportion to its width, is halved, so evaluations gather where the integrand oscillates or bends sharply.
+ * Halves are refined as separate fork-join tasks, and the points of each panel are evaluated together
+ * with a BatchEvaluator, so each panel visits every node of the tree once.
+ * <ul>
+ * <li>GAUSS_KRONROD uses the 21-point Kronrod rule and its embedded 10-point Gauss rule. It never evaluates
+ * the ends of a panel, so integrable singularities at the ends of the interval are handled.</li>
+ * <li>SIMPSON compares Simpson's rule on a panel with Simpson's rule on its halves, and needs only two new
+ * points per panel because every child reuses three of its parent's. It evaluates the ends of the interval,
+ * which must therefore be finite.</li>
+ * <li>ROMBERG halves the trapezoid spacing over the whole interval and extrapolates; it converges very fast
+ * for smooth integrands, with each level's new points sampled in parallel by a RangeSampler, but gains
+ * nothing from adaptivity, so kinks and singularities exhaust its levels.</li>
+ * </ul>
+ * Integrators hold only their settings and are safe to share between threads.
+ * @author Jenny Zhang
+ */
+public class Integrator {
+
+    /** Default absolute error the result should stay within */
+    public static final double DEFAULT_ABSOLUTE_TOLERANCE = 1e-10;
+
+    /** Default error the result should stay within, relative to its size */
+    public static final double DEFAULT_RELATIVE_TOLERANCE = 1e-10;
+
+    /** Default limit on the number of panels one integral is cut into */
+    public static final int DEFAULT_MAX_PANELS = 1 << 20;
+
+    /** Panels are never halved below this depth, since their width would reach the spacing of doubles */
+    private static final int MAX_DEPTH = 50;
+
+    /** Romberg doubles the number of points at most this many times */
+    private static final int MAX_ROMBERG_LEVELS = 24;
+
+    /**
+     * The quadrature rule used
+     */
+    public enum Rule {
+        GAUSS_KRONROD,
+        SIMPSON,
+        ROMBERG
+    }
+
+    /** Kronrod nodes on [-1, 1] from the outside in; the odd ones are also the 10-point Gauss nodes */
+    private static final double[] KRONROD_NODES = {
+            0.995657163025808080735527280689003, 0.973906528517171720077964012084452,
+            0.930157491355708226001207180059508, 0.865063366688984510732096688423493,
+            0.780817726586416897063717578345042, 0.679409568299024406234327365114874,
+            0.562757134668604683339000099272694, 0.433395394129247190799265943165784,
+            0.294392862701460198131126603103866, 0.148874338981631210884826001129720,
+            0.0
+    };
+
+    private static final double[] KRONROD_WEIGHTS = {
+            0.011694638867371874278064396062192, 0.032558162307964727478818972459390,
+            0.054755896574351996031381300244580, 0.075039674810919952767043140916190,
+            0.093125454583697605535065465083366, 0.109387158802297641899210590325805,
+            0.123491976262065851077568437563196, 0.134709217311473325928054001771707,
+            0.142775938577060080797094273138717, 0.147739104901338491374841515972068,
+            0.149445554002916905664936468389821
+    };
+
+    /** Gauss weights for KRONROD_NODES[1], [3], [5], [7] and [9] */
+    private static final double[] GAUSS_WEIGHTS = {
+            0.066671344308688137593568809893332, 0.149451349150580593145776339657697,
+            0.219086362515982043995534934228163, 0.269266719309996355091226921569469,
+            0.295524224714752870173892994651338
+    };
+
+    private static final int KRONROD_POINTS = 2 * KRONROD_NODES.length - 1;
+
+    /** Evaluators are not safe to share, so every pool thread keeps its own with its node and value columns */
+    private static final ThreadLocal<Panels> PANELS = ThreadLocal.withInitial(Panels::new);
+
+    private final Rule rule;
+    private final double absoluteTolerance;
+    private final double relativeTolerance;
+    private final int maxPanels;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs an adaptive Gauss-Kronrod integrator with the default tolerances, running on the common pool
+     */
+    public Integrator() {
+        this(Rule.GAUSS_KRONROD, DEFAULT_ABSOLUTE_TOLERANCE, DEFAULT_RELATIVE_TOLERANCE, DEFAULT_MAX_PANELS);
+    }
+
+    /**
+     * Constructs an integrator running on the common pool
+     * @param rule the quadrature rule
+     * @param absoluteTolerance the absolute error the result should stay within
+     * @param relativeTolerance the error the result should stay within, relative to its size
+     * @param maxPanels the limit on panels, or for Romberg on points, spent on one integral
+     */
+    public Integrator(Rule rule, double absoluteTolerance, double relativeTolerance, int maxPanels) {
+        this(rule, absoluteTolerance, relativeTolerance, maxPanels, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs an integrator
+     * @param rule the quadrature rule
+     * @param absoluteTolerance the absolute error the result should stay within
+     * @param relativeTolerance the error the result should stay within, relative to its size
+     * @param maxPanels the limit on panels, or for Romberg on points, spent on one integral
+     * @param pool the pool that refines panels, or samples the levels of Romberg's method, in parallel
+     */
+    public Integrator(Rule rule, double absoluteTolerance, double relativeTolerance, int maxPanels, ForkJoinPool pool) {
+        if (!(absoluteTolerance >= 0) || !(relativeTolerance >= 0) || absoluteTolerance + relativeTolerance == 0) {
+            throw new IllegalArgumentException("Tolerances must not be negative and not both zero: "
+                    + absoluteTolerance + ", " + relativeTolerance);
+        }
+        if (maxPanels <= 0) {
+            throw new IllegalArgumentException("Panel limit must be positive: " + maxPanels);
+        }
+        this.rule = rule;
+        this.absoluteTolerance = absoluteTolerance;
+        this.relativeTolerance = relativeTolerance;
+        this.maxPanels = maxPanels;
+        this.pool = pool;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    public double getAbsoluteTolerance() {
+        return absoluteTolerance;
+    }
+
+    public double getRelativeTolerance() {
+        return relativeTolerance;
+    }
+
+    public int getMaxPanels() {
+        return maxPanels;
+    }
+
+    /**
+     * Integrates the function from a to b; a greater than b gives the negated integral from b to a
+     * @param function the integrand
+     * @param a the lower limit
+     * @param b the upper limit
+     * @return the integral with its error estimate
+     */
+    public Result integrate(Function function, double a, double b) {
+        if (Double.isNaN(a) || Double.isNaN(b) || Double.isInfinite(a) || Double.isInfinite(b)) {
+            throw new IllegalArgumentException("Integration limits must be finite: " + a + ", " + b);
+        }
+        if (a == b) {
+            return new Result(0, 0, 0, 0, true);
+        } else if (a > b) {
+            Result reversed = integrate(function, b, a);
+            return new Result(-reversed.value, reversed.error, reversed.evaluations, reversed.panels, reversed.converged);
+        }
+        if (rule == Rule.ROMBERG) {
+            return romberg(function, a, b);
+        }
+        Estimate whole;
+        double[] known = null;
+        if (rule == Rule.GAUSS_KRONROD) {
+            whole = PANELS.get().gaussKronrod(function, a, b);
+        } else {
+            known = new double[5];
+            PANELS.get().values(function, known, a, 0.5 * (a + b), b);
+            whole = PANELS.get().simpson(function, a, b, known);
+        }
+        double tolerance = Math.max(absoluteTolerance, relativeTolerance * Math.abs(whole.value));
+        Refinement refinement = new Refinement(function, tolerance / (b - a), new AtomicInteger(maxPanels - 1));
+        Estimate total = pool.invoke(refinement.new PanelTask(a, b, whole, known, 0));
+        int startEvaluations = rule == Rule.SIMPSON ? 3 : 0;
+        // Panels stopped by the depth or panel limit still count their error, so only the total decides
+        return new Result(total.value, total.error, total.evaluations + startEvaluations, total.panels,
+                total.error <= tolerance);
+    }
+
+    /**
+     * Integrates with Romberg's method: trapezoid sums with halving spacing, extrapolated to zero spacing
+     */
+    private Result romberg(Function function, double a, double b) {
+        RangeSampler sampler = new RangeSampler(pool, RangeSampler.DEFAULT_CHUNK_SIZE);
+        double[] ends = new double[2];
+        PANELS.get().values(function, ends, a, b);
+        double h = b - a;
+        double[] previous = {0.5 * h * (ends[0] + ends[1])};
+        int evaluations = 2;
+        double error = Double.POSITIVE_INFINITY;
+        int points = 1;
+        for (int level = 1; level <= MAX_ROMBERG_LEVELS && evaluations + points <= maxPanels; level++) {
+            h *= 0.5;
+            // The new points lie halfway between the previous ones
+            double[] values = sampler.sample(function, a + h, b - h, points);
+            double sum = 0.0;
+            for (double value : values) {
+                sum += value;
+            }
+            evaluations += points;
+            points *= 2;
+            double[] row = new double[level + 1];
+            row[0] = 0.5 * previous[0] + h * sum;
+            double factor = 1.0;
+            for (int k = 1; k <= level; k++) {
+                factor *= 4.0;
+                row[k] = row[k - 1] + (row[k - 1] - previous[k - 1]) / (factor - 1.0);
+            }
+            error = Math.abs(row[level] - previous[level - 1]);
+            if (Double.isNaN(error)) {
+                return new Result(row[level], error, evaluations, points, false);
+            }
+            // Early levels can agree by accident on periodic or symmetric integrands
+            if (level >= 4 && error <= Math.max(absoluteTolerance, relativeTolerance * Math.abs(row[level]))) {
+                return new Result(row[level], error, evaluations, points, true);
+            }
+            previous = row;
+        }
+        return new Result(previous[previous.length - 1], error, evaluations, points, false);
+    }
+
+    /**
+     * The Result class holds an integral, its estimated error and what it cost
+     */
+    public static final class Result {
+
+        private final double value;
+        private final double error;
+        private final int evaluations;
+        private final int panels;
+        private final boolean converged;
+
+        Result(double value, double error, int evaluations, int panels, boolean converged) {
+            this.value = value;
+            this.error = error;
+            this.evaluations = evaluations;
+            this.panels = panels;
+            this.converged = converged;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the estimated absolute error, the sum of the panels' estimates
+         * @return the error estimate
+         */
+        public double getError() {
+            return error;
+        }
+
+        /**
+         * Returns the number of points at which the integrand was evaluated
+         * @return the number of evaluations
+         */
+        public int getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * Returns the number of panels the final estimate is made of; for Romberg, the number of trapezoids
+         * @return the number of panels
+         */
+        public int getPanels() {
+            return panels;
+        }
+
+        /**
+         * Returns whether the error estimate met the tolerance before a limit on panels or depth was reached
+         * @return true if the integral converged
+         */
+        public boolean isConverged() {
+            return converged;
+        }
+
+        public String toString() {
+            return value + " \u00B1 " + error + (converged ? "" : " (not converged)") + ", "
+                    + evaluations + " evaluations, " + panels + " panels";
+        }
+    }
+
+    /**
+     * An estimate over one or more panels; sums of estimates add their values, errors and costs
+     */
+    private static final class Estimate {
+
+        final double value;
+        final double error;
+        final int evaluations;
+        final int panels;
+
+        Estimate(double value, double error, int evaluations, int panels) {
+            this.value = value;
+            this.error = error;
+            this.evaluations = evaluations;
+            this.panels = panels;
+        }
+
+        Estimate plus(Estimate other, int extraEvaluations) {
+            return new Estimate(value + other.value, error + other.error, evaluations + other.evaluations + extraEvaluations,
+                    panels + other.panels);
+        }
+    }
+
+    /**
+     * The state of one adaptive integral shared by all of its tasks
+     */
+    private final class Refinement {
+
+        private final Function function;
+        /** The error allowed per unit of width */
+        private final double density;
+        /** The number of panels that may still be split */
+        private final AtomicInteger budget;
+
+        Refinement(Function function, double density, AtomicInteger budget) {
+            this.function = function;
+            this.density = density;
+            this.budget = budget;
+        }
+
+        /**
+         * Refines the panel [lo, hi], whose estimate is already known; for Simpson, known holds the values
+         * at its ends, midpoint and quarter points
+         */
+        final class PanelTask extends RecursiveTask<Estimate> {
+
+            private static final long serialVersionUID = 1L;
+
+            private final double lo;
+            private final double hi;
+            private final Estimate estimate;
+            private final double[] known;
+            private final int depth;
+
+            PanelTask(double lo, double hi, Estimate estimate, double[] known, int depth) {
+                this.lo = lo;
+                this.hi = hi;
+                this.estimate = estimate;
+                this.known = known;
+                this.depth = depth;
+            }
+
+            @Override
+            protected Estimate compute() {
+                if (estimate.error <= density * (hi - lo) || Double.isNaN(estimate.value)) {
+                    return estimate;
+                }
+                double mid = 0.5 * (lo + hi);
+                if (depth >= MAX_DEPTH || !(mid > lo && mid < hi) || budget.getAndDecrement() <= 0) {
+                    return estimate;
+                }
+                Panels panels = PANELS.get();
+                PanelTask left;
+                PanelTask right;
+                if (rule == Rule.GAUSS_KRONROD) {
+                    left = new PanelTask(lo, mid, panels.gaussKronrod(function, lo, mid), null, depth + 1);
+                    right = new PanelTask(mid, hi, panels.gaussKronrod(function, mid, hi), null, depth + 1);
+                } else {
+                    double[] leftKnown = {known[0], known[3], known[1], 0, 0};
+                    double[] rightKnown = {known[1], known[4], known[2], 0, 0};
+                    left = new PanelTask(lo, mid, panels.simpson(function, lo, mid, leftKnown), leftKnown, depth + 1);
+                    right = new PanelTask(mid, hi, panels.simpson(function, mid, hi, rightKnown), rightKnown, depth + 1);
+                }
+                left.fork();
+                Estimate sum = right.compute();
+                // The parent's own evaluations are counted here, its value and error are replaced by the halves'
+                return left.join().plus(sum, estimate.evaluations);
+            }
+        }
+    }
+
+    /**
+     * Per-thread buffers for evaluating the points of a panel in one batch
+     */
+    private static final class Panels {
+
+        private final BatchEvaluator evaluator = new BatchEvaluator(KRONROD_POINTS);
+        private final double[] xs = new double[KRONROD_POINTS];
+        private final double[] ys = new double[KRONROD_POINTS];
+
+        void values(Function function, double[] values, double... points) {
+            evaluator.evaluate(function, points, 0, values, 0, points.length);
+        }
+
+        /**
+         * Estimates the integral over [lo, hi] with the 21-point Kronrod rule; the error is its difference
+         * from the embedded 10-point Gauss rule, which overstates the Kronrod result's own error
+         */
+        Estimate gaussKronrod(Function function, double lo, double hi) {
+            double center = 0.5 * (lo + hi);
+            double halfWidth = 0.5 * (hi - lo);
+            int last = KRONROD_NODES.length - 1;
+            // On a panel a few ulps wide the outer nodes round onto its ends, where the integrand may be singular
+            double above = Math.nextUp(lo);
+            double below = Math.nextDown(hi);
+            for (int i = 0; i < last; i++) {
+                double offset = halfWidth * KRONROD_NODES[i];
+                xs[2 * i] = Math.max(above, center - offset);
+                xs[2 * i + 1] = Math.min(below, center + offset);
+            }
+            xs[2 * last] = center;
+            evaluator.evaluate(function, xs, ys);
+            double kronrod = KRONROD_WEIGHTS[last] * ys[2 * last];
+            double gauss = 0.0;
+            for (int i = 0; i < last; i++) {
+                double pair = ys[2 * i] + ys[2 * i + 1];
+                kronrod += KRONROD_WEIGHTS[i] * pair;
+                if ((i & 1) == 1) {
+                    gauss += GAUSS_WEIGHTS[i >> 1] * pair;
+                }
+            }
+            kronrod *= halfWidth;
+            gauss *= halfWidth;
+            return new Estimate(kronrod, Math.abs(kronrod - gauss), KRONROD_POINTS, 1);
+        }
+
+        /**
+         * Estimates the integral over [lo, hi] by Simpson's rule on the panel and on its halves, extrapolated.
+         * known holds the values at lo, the midpoint and hi; the values at the quarter points are stored after them.
+         */
+        Estimate simpson(Function function, double lo, double hi, double[] known) {
+            double mid = 0.5 * (lo + hi);
+            xs[0] = 0.5 * (lo + mid);
+            xs[1] = 0.5 * (mid + hi);
+            evaluator.evaluate(function, xs, 0, known, 3, 2);
+            double fa = known[0];
+            double fm = known[1];
+            double fb = known[2];
+            double width = hi - lo;
+            double coarse = width / 6 * (fa + 4 * fm + fb);
+            double fine = width / 12 * (fa + 4 * known[3] + 2 * fm + 4 * known[4] + fb);
+            double difference = (fine - coarse) / 15;
+            return new Estimate(fine + difference, Math.abs(difference), 2, 1);
+        }
+    }
+}
@@ -0,0 +1,521 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * The Interval class represents a closed range of real numbers [lower, upper], used to bound every value
+ * a Function takes while its input varies over an interval.
+ * Each operation returns an interval that contains the result of the operation applied to every pair of
+ * points from its operands, with the bounds rounded outward by one ulp so that rounding in the computation
+ * can never make the enclosure too small. The enclosure can be wider than the exact range, notably when a
+ * variable appears more than once, as in x - x, but it is never narrower.
+ * <p>
+ * Intervals bound the values that are defined: points where the function is NaN, such as log of a negative
+ * number, are left out, and an interval over which the function is nowhere defined evaluates to EMPTY.
+ * An infinite bound means the values are unbounded in that direction, for example near a pole.
+ * <p>
+ * An interval may have one gap: it then holds the two pieces [lower, gapLower] and [gapUpper, upper].
+ * Division by an interval whose interior contains zero gives such a pair of rays, so 1 / (x - 1) over [0, 2]
+ * is known to miss zero. Operations on an interval with a gap apply to each piece and join the results,
+ * keeping the widest gap between them when there are more than two.
+ * Intervals are immutable.
+ * @author Jenny Zhang
+ */
+public final class Interval {
+
+    /** The interval containing no values */
+    public static final Interval EMPTY = new Interval(Double.NaN, Double.NaN, true);
+
+    /** The interval containing every value */
+    public static final Interval ENTIRE = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, true);
+
+    private static final double TWO_PI = 2 * Math.PI;
+
+    /** Margin by which a multiple of pi/2 is taken to lie inside an interval, covering the rounding of Math.PI */
+    private static final double PHASE_SLACK = 1e-9;
+
+    private final double lower;
+    private final double upper;
+    /** The ends of the open range of missing values, both NaN when there is no gap */
+    private final double gapLower;
+    private final double gapUpper;
+
+    /**
+     * Constructs an interval
+     * @param lower the smallest value
+     * @param upper the largest value, not less than lower
+     */
+    public Interval(double lower, double upper) {
+        if (!(lower <= upper)) {
+            throw new IllegalArgumentException("Invalid interval: [" + lower + ", " + upper + "]");
+        }
+        this.lower = lower;
+        this.upper = upper;
+        this.gapLower = Double.NaN;
+        this.gapUpper = Double.NaN;
+    }
+
+    private Interval(double lower, double upper, boolean trusted) {
+        this(lower, Double.NaN, Double.NaN, upper);
+    }
+
+    private Interval(double lower, double gapLower, double gapUpper, double upper) {
+        this.lower = lower;
+        this.upper = upper;
+        this.gapLower = gapLower;
+        this.gapUpper = gapUpper;
+    }
+
+    /**
+     * Returns the interval holding a single value
+     * @param value the value
+     * @return the interval [value, value], or EMPTY for NaN
+     */
+    public static Interval point(double value) {
+        return Double.isNaN(value) ? EMPTY : new Interval(value, value, true);
+    }
+
+    /**
+     * Returns the interval from lower to upper widened by one ulp on each side; NaN bounds give EMPTY
+     */
+    private static Interval outward(double lower, double upper) {
+        if (Double.isNaN(lower) || Double.isNaN(upper)) {
+            return EMPTY;
+        }
+        return new Interval(Math.nextDown(lower), Math.nextUp(upper), true);
+    }
+
+    /**
+     * Returns the line without the values strictly between below and above, both rounded outward into the gap;
+     * the whole line if rounding closes the gap
+     */
+    private static Interval rays(double below, double above) {
+        double gapLower = Math.nextUp(below);
+        double gapUpper = Math.nextDown(above);
+        if (!(gapLower < gapUpper)) {
+            return ENTIRE;
+        }
+        return new Interval(Double.NEGATIVE_INFINITY, gapLower, gapUpper, Double.POSITIVE_INFINITY);
+    }
+
+    public double getLower() {
+        return lower;
+    }
+
+    public double getUpper() {
+        return upper;
+    }
+
+    /**
+     * Returns whether the interval has a range of missing values between its ends
+     * @return true if it holds two separate pieces
+     */
+    public boolean hasGap() {
+        return !Double.isNaN(gapLower);
+    }
+
+    /**
+     * Returns the largest value below the gap
+     * @return the upper end of the lower piece, NaN if there is no gap
+     */
+    public double getGapLower() {
+        return gapLower;
+    }
+
+    /**
+     * Returns the smallest value above the gap
+     * @return the lower end of the upper piece, NaN if there is no gap
+     */
+    public double getGapUpper() {
+        return gapUpper;
+    }
+
+    public double getWidth() {
+        return upper - lower;
+    }
+
+    public double getMidpoint() {
+        return isEmpty() ? Double.NaN : lower + 0.5 * (upper - lower);
+    }
+
+    public boolean isEmpty() {
+        return Double.isNaN(lower);
+    }
+
+    /**
+     * Returns whether the value lies in the interval
+     * @param value the value to test
+     * @return true if lower <= value <= upper and the value is not in the gap
+     */
+    public boolean contains(double value) {
+        return lower <= value && value <= upper && !(gapLower < value && value < gapUpper);
+    }
+
+    /**
+     * Returns whether the two intervals share at least one value
+     * @param other the other interval
+     * @return true if they overlap
+     */
+    public boolean intersects(Interval other) {
+        if (hasGap() || other.hasGap()) {
+            for (Interval piece : pieces()) {
+                for (Interval otherPiece : other.pieces()) {
+                    if (piece.intersects(otherPiece)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        return lower <= other.upper && other.lower <= upper;
+    }
+
+    /**
+     * Returns the values in both intervals
+     * @param other the other interval
+     * @return the intersection, EMPTY if they do not overlap
+     */
+    public Interval intersect(Interval other) {
+        if (hasGap() || other.hasGap()) {
+            return split(other, Interval::intersect);
+        }
+        if (!intersects(other)) {
+            return EMPTY;
+        }
+        return new Interval(Math.max(lower, other.lower), Math.min(upper, other.upper), true);
+    }
+
+    /**
+     * Returns an interval holding the values of both intervals. Pieces that overlap are merged; of the
+     * spaces left between the rest only the widest stays a gap
+     * @param other the other interval
+     * @return the union of the two, or an interval containing it
+     */
+    public Interval union(Interval other) {
+        List<Interval> pieces = new ArrayList<>(4);
+        Collections.addAll(pieces, pieces());
+        Collections.addAll(pieces, other.pieces());
+        pieces.removeIf(Interval::isEmpty);
+        if (pieces.isEmpty()) {
+            return EMPTY;
+        }
+        pieces.sort(Comparator.comparingDouble(Interval::getLower));
+        double low = pieces.get(0).lower;
+        double high = pieces.get(0).upper;
+        double gapLower = Double.NaN;
+        double gapUpper = Double.NaN;
+        for (Interval piece : pieces.subList(1, pieces.size())) {
+            if (piece.lower > high && !(piece.lower - high <= gapUpper - gapLower)) {
+                gapLower = high;
+                gapUpper = piece.lower;
+            }
+            high = Math.max(high, piece.upper);
+        }
+        return new Interval(low, gapLower, gapUpper, high);
+    }
+
+    /**
+     * Returns the smallest single range containing both intervals, filling any gap
+     * @param other the other interval
+     * @return the hull of the two
+     */
+    public Interval hull(Interval other) {
+        if (isEmpty()) {
+            return other.isEmpty() ? EMPTY : new Interval(other.lower, other.upper, true);
+        } else if (other.isEmpty()) {
+            return new Interval(lower, upper, true);
+        }
+        return new Interval(Math.min(lower, other.lower), Math.max(upper, other.upper), true);
+    }
+
+    public Interval add(Interval other) {
+        if (isEmpty() || other.isEmpty()) {
+            return EMPTY;
+        }
+        if (hasGap() || other.hasGap()) {
+            return split(other, Interval::add);
+        }
+        return outward(lower + other.lower, upper + other.upper);
+    }
+
+    public Interval subtract(Interval other) {
+        if (isEmpty() || other.isEmpty()) {
+            return EMPTY;
+        }
+        if (hasGap() || other.hasGap()) {
+            return split(other, Interval::subtract);
+        }
+        return outward(lower - other.upper, upper - other.lower);
+    }
+
+    public Interval negate() {
+        return isEmpty() ? EMPTY : new Interval(-upper, -gapUpper, -gapLower, -lower);
+    }
+
+    public Interval multiply(Interval other) {
+        if (isEmpty() || other.isEmpty()) {
+            return EMPTY;
+        }
+        if (hasGap() || other.hasGap()) {
+            return split(other, Interval::multiply);
+        }
+        double a = product(lower, other.lower);
+        double b = product(lower, other.upper);
+        double c = product(upper, other.lower);
+        double d = product(upper, other.upper);
+        return outward(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+    }
+
+    /**
+     * Divides by an interval. A divisor with zero at one end gives a ray, and one with zero inside gives
+     * two rays with a gap around zero, or the whole line if the dividend contains zero too;
+     * the quotient by exactly zero is nowhere defined
+     * @param other the divisor
+     * @return the quotient
+     */
+    public Interval divide(Interval other) {
+        if (isEmpty() || other.isEmpty()) {
+            return EMPTY;
+        }
+        if (hasGap() || other.hasGap()) {
+            return split(other, Interval::divide);
+        }
+        if (other.lower > 0 || other.upper < 0) {
+            double a = lower / other.lower;
+            double b = lower / other.upper;
+            double c = upper / other.lower;
+            double d = upper / other.upper;
+            if (Double.isNaN(a) || Double.isNaN(b) || Double.isNaN(c) || Double.isNaN(d)) {
+                // Infinity over infinity: the bounds alone do not say how large the quotient gets
+                return ENTIRE;
+            }
+            return outward(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+        }
+        if (other.lower == 0 && other.upper == 0) {
+            return EMPTY;
+        }
+        if (lower == 0 && upper == 0) {
+            return point(0.0);
+        }
+        if (contains(0.0)) {
+            return ENTIRE;
+        }
+        if (other.lower < 0 && other.upper > 0) {
+            // A dividend of one sign over a divisor near zero on either side grows large with both signs
+            return lower > 0 ? rays(lower / other.lower, lower / other.upper)
+                    : rays(upper / other.upper, upper / other.lower);
+        }
+        // Zero is one end of the divisor, so the quotient runs from the other end out to infinity
+        if (other.lower == 0) {
+            return lower > 0 ? outward(lower / other.upper, Double.POSITIVE_INFINITY)
+                    : outward(Double.NEGATIVE_INFINITY, upper / other.upper);
+        }
+        return lower > 0 ? outward(Double.NEGATIVE_INFINITY, lower / other.lower)
+                : outward(upper / other.lower, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Raises the interval to a constant power, using that even powers are smallest at zero
+     * and that fractional powers are only defined for non-negative bases
+     * @param power the exponent
+     * @return the range of x^power
+     */
+    public Interval pow(double power) {
+        if (isEmpty() || Double.isNaN(power)) {
+            return EMPTY;
+        }
+        if (hasGap()) {
+            return split(piece -> piece.pow(power));
+        }
+        if (power == 0.0) {
+            // Math.pow(x, 0) is 1 for every x, including NaN
+            return point(1.0);
+        }
+        if (power == 1.0) {
+            return this;
+        }
+        if (power == Math.rint(power) && !Double.isInfinite(power)) {
+            if (power < 0) {
+                return point(1.0).divide(pow(-power));
+            }
+            if (power % 2 == 0) {
+                double near = contains(0.0) ? 0.0 : Math.min(Math.abs(lower), Math.abs(upper));
+                double far = Math.max(Math.abs(lower), Math.abs(upper));
+                return outward(Math.pow(near, power), Math.pow(far, power)).intersect(new Interval(0.0, Double.POSITIVE_INFINITY, true));
+            }
+            return outward(Math.pow(lower, power), Math.pow(upper, power));
+        }
+        Interval base = intersect(new Interval(0.0, Double.POSITIVE_INFINITY, true));
+        if (base.isEmpty()) {
+            return EMPTY;
+        }
+        double a = Math.pow(base.lower, power);
+        double b = Math.pow(base.upper, power);
+        return outward(Math.min(a, b), Math.max(a, b)).intersect(new Interval(0.0, Double.POSITIVE_INFINITY, true));
+    }
+
+    /**
+     * Raises the interval to a power that varies over an interval, as exp(power * log(x)) for positive bases
+     * @param power the range of the exponent
+     * @return the range of x^power
+     */
+    public Interval pow(Interval power) {
+        if (isEmpty() || power.isEmpty()) {
+            return EMPTY;
+        }
+        if (hasGap() || power.hasGap()) {
+            return split(power, Interval::pow);
+        }
+        if (power.lower == power.upper) {
+            return pow(power.lower);
+        }
+        if (lower < 0) {
+            // A negative base has defined powers at every integer exponent, with either sign
+            return ENTIRE;
+        }
+        return power.multiply(log()).exp();
+    }
+
+    public Interval exp() {
+        if (isEmpty()) {
+            return EMPTY;
+        }
+        if (hasGap()) {
+            return split(Interval::exp);
+        }
+        return new Interval(Math.max(0.0, Math.nextDown(Math.exp(lower))), Math.nextUp(Math.exp(upper)), true);
+    }
+
+    /**
+     * Returns the range of log over the positive part of the interval
+     * @return the range of log(x), EMPTY if the interval has no positive values
+     */
+    public Interval log() {
+        if (isEmpty() || upper < 0) {
+            return EMPTY;
+        }
+        if (hasGap()) {
+            return split(Interval::log);
+        }
+        double low = lower <= 0 ? Double.NEGATIVE_INFINITY : Math.nextDown(Math.log(lower));
+        return new Interval(low, Math.nextUp(Math.log(upper)), true);
+    }
+
+    /**
+     * Returns the range of sin, which reaches 1 or -1 wherever the interval contains pi/2 or -pi/2 plus
+     * a multiple of 2 pi, and otherwise lies between its values at the ends
+     * @return the range of sin(x)
+     */
+    public Interval sin() {
+        return periodic(Math.PI / 2, true);
+    }
+
+    /**
+     * Returns the range of cos, which reaches 1 or -1 wherever the interval contains a multiple of 2 pi
+     * or pi plus one, and otherwise lies between its values at the ends
+     * @return the range of cos(x)
+     */
+    public Interval cos() {
+        return periodic(0.0, false);
+    }
+
+    /**
+     * Bounds sin or cos, whose maxima lie at peak plus multiples of 2 pi and whose minima lie pi further on
+     */
+    private Interval periodic(double peak, boolean sine) {
+        if (isEmpty()) {
+            return EMPTY;
+        }
+        if (hasGap()) {
+            return split(piece -> piece.periodic(peak, sine));
+        }
+        if (!(upper - lower < TWO_PI)) {
+            return new Interval(-1.0, 1.0, true);
+        }
+        double a = sine ? Math.sin(lower) : Math.cos(lower);
+        double b = sine ? Math.sin(upper) : Math.cos(upper);
+        double low = containsPhase(peak + Math.PI) ? -1.0 : Math.max(-1.0, Math.nextDown(Math.min(a, b)));
+        double high = containsPhase(peak) ? 1.0 : Math.min(1.0, Math.nextUp(Math.max(a, b)));
+        return new Interval(low, high, true);
+    }
+
+    /**
+     * Returns whether phase plus some multiple of 2 pi lies in the interval, erring towards yes
+     */
+    private boolean containsPhase(double phase) {
+        double k = Math.ceil((lower - phase) / TWO_PI - PHASE_SLACK);
+        double candidate = phase + k * TWO_PI;
+        return candidate <= upper + PHASE_SLACK * Math.max(1.0, Math.abs(candidate));
+    }
+
+    /**
+     * Returns the pieces of the interval: itself, or the ranges below and above its gap
+     */
+    private Interval[] pieces() {
+        if (!hasGap()) {
+            return new Interval[] {this};
+        }
+        return new Interval[] {new Interval(lower, gapLower, true), new Interval(gapUpper, upper, true)};
+    }
+
+    /**
+     * Applies the operation to each piece and joins the results
+     */
+    private Interval split(UnaryOperator<Interval> operation) {
+        Interval result = EMPTY;
+        for (Interval piece : pieces()) {
+            result = result.union(operation.apply(piece));
+        }
+        return result;
+    }
+
+    /**
+     * Applies the operation to every pair of pieces of the two intervals and joins the results
+     */
+    private Interval split(Interval other, BinaryOperator<Interval> operation) {
+        Interval result = EMPTY;
+        for (Interval piece : pieces()) {
+            for (Interval otherPiece : other.pieces()) {
+                result = result.union(operation.apply(piece, otherPiece));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Multiplies two bounds, taking zero times an infinite bound as zero since the bound is never reached
+     */
+    private static double product(double a, double b) {
+        return a == 0.0 || b == 0.0 ? 0.0 : a * b;
+    }
+
+    @Override
+    public String toString() {
+        if (hasGap()) {
+            return "[" + lower + ", " + gapLower + "] U [" + gapUpper + ", " + upper + "]";
+        }
+        return isEmpty() ? "[]" : "[" + lower + ", " + upper + "]";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof Interval) {
+            Interval other = (Interval) obj;
+            return Double.compare(lower, other.lower) == 0 && Double.compare(upper, other.upper) == 0
+                    && Double.compare(gapLower, other.gapLower) == 0 && Double.compare(gapUpper, other.gapUpper) == 0;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 31 * Double.hashCode(lower) + Double.hashCode(upper);
+        return 31 * (31 * result + Double.hashCode(gapLower)) + Double.hashCode(gapUpper);
+    }
+}
@@ -1,12 +1,13 @@
 /**
  *The Inverses class represents a mathematical function that computes log and its inverse exp
  * It is an abstract class that extends the Function class.
+ * The operand is final; subclasses should stay immutable so they can be evaluated concurrently.
  * @author Jenny Zhang
  */
 public abstract class Inverses extends Function{
 
     /**Stores the operand function*/
-    private Function operand;
+    private final Function operand;
 
     /**
      * Constructs a new Inverses object with the given operand function
@@ -51,4 +52,12 @@ public abstract class Inverses extends Function{
             return false;
         }
     }
+
+    /**
+     * Returns a hash code consistent with equals
+     * @return the hash code of the name and operand function
+     */
+    public int hashCode() {
+        return 31 * getInverses().hashCode() + getOperand().hashCode();
+    }
 }
@@ -0,0 +1,577 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The LinearizedFunction class is a Function lowered to a postfix program over primitive arrays:
+ * an int instruction stream and a double constant pool.
+ * Evaluation runs the program on a fixed-size double stack, so it allocates nothing and touches
+ * only two small arrays instead of chasing pointers through a tree of objects.
+ * Each instruction is one int, an opcode in the low byte and a constant pool index or variable slot above it,
+ * which keeps programs small enough for thousands to fit in cache or in one off-heap buffer;
+ * see writeTo and evaluate(ByteBuffer, int, double, double[]).
+ * Instances are immutable and safe to evaluate concurrently; each thread gets its own stack.
+ * @author Jenny Zhang
+ */
+public final class LinearizedFunction extends Function {
+
+    static final int CONSTANT = 0;
+    static final int VARIABLE = 1;
+    static final int ADD = 2;
+    static final int SUBTRACT = 3;
+    static final int MULTIPLY = 4;
+    static final int DIVIDE = 5;
+    static final int POWER = 6;
+    static final int POWER_CONSTANT = 7;
+    static final int SQUARE = 8;
+    static final int SIN = 9;
+    static final int COS = 10;
+    static final int EXP = 11;
+    static final int LOG = 12;
+    /** Evaluates a polynomial in the top of the stack; its operand indexes the degree n in the pool, followed by c0 to cn */
+    static final int HORNER = 13;
+
+    private static final int OPCODE_BITS = 8;
+    private static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+    private static final int MAX_CONSTANTS = 1 << (32 - OPCODE_BITS - 1);
+
+    private final int[] code;
+    private final double[] constants;
+    private final int maxStack;
+    /** Variable names by slot, kept so toFunction can rebuild the variables; unused slots are null */
+    private final String[] variables;
+    private final ThreadLocal<double[]> stacks;
+
+    private LinearizedFunction(int[] code, double[] constants, int maxStack, String[] variables) {
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+        this.variables = variables;
+        this.stacks = ThreadLocal.withInitial(() -> new double[maxStack]);
+    }
+
+    /**
+     * Lowers the given function to a postfix program, folding constant subtrees into single constants
+     * @param function the function to linearize
+     * @return the linearized function
+     * @throws IllegalArgumentException if the function contains a node type that has no instruction
+     */
+    public static LinearizedFunction linearize(Function function) {
+        if (function instanceof LinearizedFunction) {
+            return (LinearizedFunction) function;
+        }
+        Emitter emitter = new Emitter();
+        emitter.emit(function);
+        return emitter.build();
+    }
+
+    /**
+     * Reads a program written by writeTo, advancing the buffer past it
+     * @param buffer the buffer positioned at the start of a program
+     * @return the linearized function
+     */
+    public static LinearizedFunction readFrom(ByteBuffer buffer) {
+        int codeLength = buffer.getInt();
+        int constantCount = buffer.getInt();
+        int maxStack = buffer.getInt();
+        int[] code = new int[codeLength];
+        for (int i = 0; i < codeLength; i++) {
+            code[i] = buffer.getInt();
+        }
+        double[] constants = new double[constantCount];
+        for (int i = 0; i < constantCount; i++) {
+            constants[i] = buffer.getDouble();
+        }
+        String[] variables = new String[buffer.getInt()];
+        for (int i = 0; i < variables.length; i++) {
+            byte[] name = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(name);
+            variables[i] = name.length > 0 ? new String(name, StandardCharsets.UTF_8) : null;
+        }
+        return new LinearizedFunction(code, constants, maxStack, variables);
+    }
+
+    /**
+     * Evaluates a program stored in a buffer by writeTo, without copying it onto the heap
+     * @param buffer the buffer holding the program, which may be direct or memory-mapped
+     * @param offset the absolute index at which the program starts
+     * @param x the input value
+     * @param stack a work array at least getMaxStack() long
+     * @return the value of the program at x
+     * @throws UnsupportedOperationException if the program uses a variable other than x
+     */
+    public static double evaluate(ByteBuffer buffer, int offset, double x, double[] stack) {
+        int codeLength = buffer.getInt(offset);
+        int codeStart = offset + 12;
+        int constantStart = codeStart + 4 * codeLength;
+        int top = -1;
+        for (int pc = 0; pc < codeLength; pc++) {
+            int instruction = buffer.getInt(codeStart + 4 * pc);
+            int opcode = instruction & OPCODE_MASK;
+            if (opcode == CONSTANT) {
+                stack[++top] = buffer.getDouble(constantStart + 8 * (instruction >>> OPCODE_BITS));
+            } else if (opcode == POWER_CONSTANT) {
+                stack[top] = Math.pow(stack[top], buffer.getDouble(constantStart + 8 * (instruction >>> OPCODE_BITS)));
+            } else if (opcode == VARIABLE) {
+                stack[++top] = variable(instruction >>> OPCODE_BITS, x, null);
+            } else if (opcode == HORNER) {
+                int start = constantStart + 8 * (instruction >>> OPCODE_BITS);
+                int degree = (int) buffer.getDouble(start);
+                double t = stack[top];
+                double result = buffer.getDouble(start + 8 * (degree + 1));
+                for (int k = degree; k >= 1; k--) {
+                    result = result * t + buffer.getDouble(start + 8 * k);
+                }
+                stack[top] = result;
+            } else {
+                top = execute(opcode, stack, top);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Returns the number of bytes writeTo needs for this program
+     * @return the encoded size in bytes
+     */
+    public int encodedSize() {
+        int size = 16 + 4 * code.length + 8 * constants.length;
+        for (String name : variables) {
+            size += 2 + (name != null ? name.getBytes(StandardCharsets.UTF_8).length : 0);
+        }
+        return size;
+    }
+
+    /**
+     * Writes the program to the buffer as its instruction count, constant count and stack depth,
+     * followed by the instructions, the constants and the variable names by slot
+     * @param buffer the buffer to write to
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(code.length);
+        buffer.putInt(constants.length);
+        buffer.putInt(maxStack);
+        for (int instruction : code) {
+            buffer.putInt(instruction);
+        }
+        for (double constant : constants) {
+            buffer.putDouble(constant);
+        }
+        buffer.putInt(variables.length);
+        for (String name : variables) {
+            byte[] bytes = name != null ? name.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Returns the number of instructions in the program
+     * @return the program length
+     */
+    public int length() {
+        return code.length;
+    }
+
+    @Override
+    public double value() {
+        for (int instruction : code) {
+            if ((instruction & OPCODE_MASK) == VARIABLE) {
+                throw new UnsupportedOperationException("Input expected.");
+            }
+        }
+        return value(0.0);
+    }
+
+    @Override
+    public double value(double x) {
+        return value(x, stacks.get());
+    }
+
+    /**
+     * Evaluates the program using the given work array as its stack
+     * @param x the input value
+     * @param stack a work array at least getMaxStack() long
+     * @return the value of the function at x
+     */
+    public double value(double x, double[] stack) {
+        return run(x, null, stack);
+    }
+
+    @Override
+    public double value(double[] environment) {
+        return evaluate(environment, stacks.get());
+    }
+
+    /**
+     * Evaluates the program with every variable taken from its slot of the environment,
+     * using the given work array as its stack
+     * @param environment the variable values, indexed by slot
+     * @param stack a work array at least getMaxStack() long
+     * @return the value of the function
+     */
+    public double evaluate(double[] environment, double[] stack) {
+        return run(0.0, environment, stack);
+    }
+
+    private double run(double x, double[] environment, double[] stack) {
+        int[] program = code;
+        int top = -1;
+        for (int pc = 0; pc < program.length; pc++) {
+            int instruction = program[pc];
+            int opcode = instruction & OPCODE_MASK;
+            if (opcode == CONSTANT) {
+                stack[++top] = constants[instruction >>> OPCODE_BITS];
+            } else if (opcode == POWER_CONSTANT) {
+                stack[top] = Math.pow(stack[top], constants[instruction >>> OPCODE_BITS]);
+            } else if (opcode == VARIABLE) {
+                stack[++top] = variable(instruction >>> OPCODE_BITS, x, environment);
+            } else if (opcode == HORNER) {
+                stack[top] = horner(stack[top], constants, instruction >>> OPCODE_BITS);
+            } else {
+                top = execute(opcode, stack, top);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Returns the value of the variable in the given slot; without an environment only x, slot 0, is bound
+     */
+    private static double variable(int slot, double x, double[] environment) {
+        if (environment != null) {
+            return environment[slot];
+        }
+        if (slot != 0) {
+            throw new UnsupportedOperationException("Variable in slot " + slot + " needs an environment to be evaluated");
+        }
+        return x;
+    }
+
+    /**
+     * Evaluates the polynomial whose degree is stored at start in the pool, followed by its coefficients from c0 up
+     */
+    private static double horner(double t, double[] pool, int start) {
+        int degree = (int) pool[start];
+        double result = pool[start + degree + 1];
+        for (int k = start + degree; k > start; k--) {
+            result = result * t + pool[k];
+        }
+        return result;
+    }
+
+    /**
+     * Runs one instruction that needs neither a constant nor a variable and returns the new top of the stack
+     */
+    private static int execute(int opcode, double[] stack, int top) {
+        switch (opcode) {
+            case ADD:
+                stack[top - 1] += stack[top];
+                return top - 1;
+            case SUBTRACT:
+                stack[top - 1] -= stack[top];
+                return top - 1;
+            case MULTIPLY:
+                stack[top - 1] *= stack[top];
+                return top - 1;
+            case DIVIDE:
+                stack[top - 1] /= stack[top];
+                return top - 1;
+            case POWER:
+                stack[top - 1] = Math.pow(stack[top - 1], stack[top]);
+                return top - 1;
+            case SQUARE:
+                stack[top] *= stack[top];
+                return top;
+            case SIN:
+                stack[top] = Math.sin(stack[top]);
+                return top;
+            case COS:
+                stack[top] = Math.cos(stack[top]);
+                return top;
+            case EXP:
+                stack[top] = Math.exp(stack[top]);
+                return top;
+            case LOG:
+                stack[top] = Math.log(stack[top]);
+                return top;
+            default:
+                throw new IllegalStateException("Invalid opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Rebuilds the expression tree the program was lowered from, with constant subtrees folded
+     * @return an equivalent Function tree
+     */
+    public Function toFunction() {
+        Deque<Function> stack = new ArrayDeque<>();
+        for (int instruction : code) {
+            int opcode = instruction & OPCODE_MASK;
+            Function right;
+            switch (opcode) {
+                case CONSTANT:
+                    stack.push(new Number(constants[instruction >>> OPCODE_BITS]));
+                    break;
+                case VARIABLE:
+                    int slot = instruction >>> OPCODE_BITS;
+                    stack.push(new Variable(variables[slot], slot));
+                    break;
+                case ADD:
+                    right = stack.pop();
+                    stack.push(new BinaryOp(BinaryOp.Operator.Add, stack.pop(), right));
+                    break;
+                case SUBTRACT:
+                    right = stack.pop();
+                    stack.push(new BinaryOp(BinaryOp.Operator.Subtract, stack.pop(), right));
+                    break;
+                case MULTIPLY:
+                    right = stack.pop();
+                    stack.push(new BinaryOp(BinaryOp.Operator.Multiply, stack.pop(), right));
+                    break;
+                case DIVIDE:
+                    right = stack.pop();
+                    stack.push(new BinaryOp(BinaryOp.Operator.Divide, stack.pop(), right));
+                    break;
+                case POWER:
+                    right = stack.pop();
+                    stack.push(new BinaryOp(BinaryOp.Operator.Power, stack.pop(), right));
+                    break;
+                case POWER_CONSTANT:
+                    stack.push(new Polynomial(stack.pop(), constants[instruction >>> OPCODE_BITS]));
+                    break;
+                case SQUARE:
+                    stack.push(new Polynomial(stack.pop(), 2.0));
+                    break;
+                case SIN:
+                    stack.push(new Sin(stack.pop()));
+                    break;
+                case COS:
+                    stack.push(new Cos(stack.pop()));
+                    break;
+                case EXP:
+                    stack.push(new Exp(stack.pop()));
+                    break;
+                case LOG:
+                    stack.push(new Log(stack.pop()));
+                    break;
+                case HORNER:
+                    int start = instruction >>> OPCODE_BITS;
+                    int degree = (int) constants[start];
+                    Function operand = stack.pop();
+                    if (!(operand instanceof Variable)) {
+                        throw new IllegalStateException("Polynomial of a non-variable operand: " + operand);
+                    }
+                    stack.push(new DensePolynomial((Variable) operand, Arrays.copyOfRange(constants, start + 1, start + degree + 2)));
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid opcode: " + opcode);
+            }
+        }
+        return stack.pop();
+    }
+
+    @Override
+    public Interval interval(Interval x) {
+        return toFunction().interval(x);
+    }
+
+    @Override
+    public Interval interval(Interval[] environment) {
+        return toFunction().interval(environment);
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
+        return linearize(toFunction().derivative(slot));
+    }
+
+    @Override
+    public String toString() {
+        return toFunction().toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof LinearizedFunction) {
+            LinearizedFunction other = (LinearizedFunction) obj;
+            return Arrays.equals(code, other.code) && Arrays.equals(constants, other.constants);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(code) + Arrays.hashCode(constants);
+    }
+
+    /**
+     * Walks a Function tree in postfix order, appending instructions and tracking the stack depth
+     */
+    private static class Emitter {
+
+        private int[] code = new int[16];
+        private int length;
+        private final List<Double> constants = new ArrayList<>();
+        private final Map<Long, Integer> constantIndexes = new HashMap<>();
+        private String[] variables = new String[0];
+        private int depth;
+        private int maxDepth;
+
+        void emit(Function function) {
+            if (FunctionCompiler.isConstant(function)) {
+                emitConstant(CONSTANT, function.value(0.0));
+                push();
+            } else if (function instanceof Variable) {
+                Variable variable = (Variable) function;
+                int slot = variable.getSlot();
+                if (slot >= MAX_CONSTANTS) {
+                    throw new IllegalArgumentException("Variable slot too large to linearize: " + slot);
+                }
+                if (slot >= variables.length) {
+                    variables = Arrays.copyOf(variables, slot + 1);
+                }
+                variables[slot] = variable.getName();
+                append(VARIABLE | (slot << OPCODE_BITS));
+                push();
+            } else if (function instanceof BinaryOp) {
+                BinaryOp op = (BinaryOp) function;
+                if (op.getOperator() == BinaryOp.Operator.Power && FunctionCompiler.isConstant(op.getRightOperand())) {
+                    emitPower(op.getLeftOperand(), op.getRightOperand().value(0.0));
+                    return;
+                }
+                emit(op.getLeftOperand());
+                emit(op.getRightOperand());
+                append(binaryOpcode(op.getOperator()));
+                depth--;
+            } else if (function instanceof Polynomial) {
+                Polynomial polynomial = (Polynomial) function;
+                emitPower(polynomial.getOperand(), polynomial.getPower());
+            } else if (function instanceof Sin) {
+                emit(((Sin) function).getOperand());
+                append(SIN);
+            } else if (function instanceof Cos) {
+                emit(((Cos) function).getOperand());
+                append(COS);
+            } else if (function instanceof Trig) {
+                Trig trig = (Trig) function;
+                emit(trig.getOperand());
+                switch (trig.getFunction().toLowerCase()) {
+                    case "sin":
+                        append(SIN);
+                        break;
+                    case "cos":
+                        append(COS);
+                        break;
+                    default:
+                        throw new UnsupportedOperationException("Unsupported trigonometric function: " + trig.getFunction());
+                }
+            } else if (function instanceof Exp) {
+                emit(((Exp) function).getOperand());
+                append(EXP);
+            } else if (function instanceof Log) {
+                emit(((Log) function).getOperand());
+                append(LOG);
+            } else if (function instanceof DensePolynomial) {
+                DensePolynomial polynomial = (DensePolynomial) function;
+                emit(polynomial.getVariable());
+                emitCoefficients(polynomial);
+            } else if (function instanceof LinearizedFunction) {
+                emit(((LinearizedFunction) function).toFunction());
+            } else {
+                throw new IllegalArgumentException("Cannot linearize " + function.getClass().getName() + ": " + function);
+            }
+        }
+
+        private void emitPower(Function base, double power) {
+            if (power == 0.0) {
+                emitConstant(CONSTANT, 1.0);
+                push();
+                return;
+            }
+            emit(base);
+            if (power == 2.0) {
+                append(SQUARE);
+            } else if (power != 1.0) {
+                emitConstant(POWER_CONSTANT, power);
+            }
+        }
+
+        /**
+         * Appends a HORNER instruction whose degree and coefficients are stored contiguously in the pool, outside the deduplicated constants
+         */
+        private void emitCoefficients(DensePolynomial polynomial) {
+            int index = constants.size();
+            int degree = polynomial.getDegree();
+            if (index + degree + 2 > MAX_CONSTANTS) {
+                throw new IllegalArgumentException("Too many distinct constants to linearize");
+            }
+            constants.add((double) degree);
+            for (int k = 0; k <= degree; k++) {
+                constants.add(polynomial.getCoefficient(k));
+            }
+            append(HORNER | (index << OPCODE_BITS));
+        }
+
+        private void emitConstant(int opcode, double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            Integer index = constantIndexes.get(bits);
+            if (index == null) {
+                index = constants.size();
+                if (index >= MAX_CONSTANTS) {
+                    throw new IllegalArgumentException("Too many distinct constants to linearize");
+                }
+                constants.add(value);
+                constantIndexes.put(bits, index);
+            }
+            append(opcode | (index << OPCODE_BITS));
+        }
+
+        private void append(int instruction) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = instruction;
+        }
+
+        private void push() {
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        LinearizedFunction build() {
+            double[] pool = new double[constants.size()];
+            for (int i = 0; i < pool.length; i++) {
+                pool[i] = constants.get(i);
+            }
+            return new LinearizedFunction(Arrays.copyOf(code, length), pool, maxDepth, variables);
+        }
+
+        private static int binaryOpcode(BinaryOp.Operator operator) {
+            switch (operator) {
+                case Add:
+                    return ADD;
+                case Subtract:
+                    return SUBTRACT;
+                case Multiply:
+                    return MULTIPLY;
+                case Divide:
+                    return DIVIDE;
+                case Power:
+                    return POWER;
+                default:
+                    throw new UnsupportedOperationException("Unsupported binary operator: " + operator);
+            }
+        }
+    }
+}
@@ -1,11 +1,20 @@
+/**
+ * The Log class represents the natural logarithm of an operand function.
+ * Instances are immutable and safe to evaluate concurrently.
+ */
 public class Log extends Function {
 
     private final Function operand;
+    private int hash;
 
     public Log(Function operand) {
         this.operand = operand;
     }
 
+    public Function getOperand() {
+        return operand;
+    }
+
     @Override
     public double value() {
         throw new UnsupportedOperationException("Input value required");
@@ -17,9 +26,42 @@ public class Log extends Function {
     }
 
     @Override
-    public Function derivative() {
+    public double value(double[] environment) {
+        return Math.log(operand.value(environment));
+    }
+
+    @Override
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        operand.valueBlock(inputs, outputs, length, evaluator);
+        for (int i = 0; i < length; i++) {
+            outputs[i] = Math.log(outputs[i]);
+        }
+    }
+
+    @Override
+    public Interval interval(Interval x) {
+        return operand.interval(x).log();
+    }
+
+    @Override
+    public Interval interval(Interval[] environment) {
+        return operand.interval(environment).log();
+    }
+
+    @Override
+    public Dual dual(double x) {
+        return operand.dual(x).log();
+    }
+
+    @Override
+    public double[] taylor(double x, int order) {
+        return Taylor.log(operand.taylor(x, order));
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
         return new BinaryOp(BinaryOp.Operator.Divide,
-                operand.derivative(),
+                operand.derivative(slot),
                 operand
         );
     }
@@ -29,4 +71,22 @@ public class Log extends Function {
         return "log(" + operand.toString() + ")";
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return obj instanceof Log && hashCode() == obj.hashCode() && operand.equals(((Log) obj).operand);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * operand.hashCode() + 4;
+            hash = h;
+        }
+        return h;
+    }
+
 }
@@ -1,6 +1,12 @@
+import java.util.Arrays;
+
+/**
+ * The Number class represents a constant.
+ * The value is final, so a Number can be shared and evaluated by any number of threads.
+ */
 public class Number extends Function {
 
-    private double value;
+    private final double value;
 
     public Number(double value) {
         this.value = value;
@@ -17,7 +23,37 @@ public class Number extends Function {
     }
 
     @Override
-    public Function derivative() {
+    public double value(double[] environment) {
+        return value;
+    }
+
+    @Override
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        Arrays.fill(outputs, 0, length, value);
+    }
+
+    @Override
+    public Interval interval(Interval x) {
+        return Interval.point(value);
+    }
+
+    @Override
+    public Interval interval(Interval[] environment) {
+        return Interval.point(value);
+    }
+
+    @Override
+    public Dual dual(double x) {
+        return Dual.constant(value);
+    }
+
+    @Override
+    public double[] taylor(double x, int order) {
+        return Taylor.constant(value, order);
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
         return new Number(0);
     }
 
@@ -25,4 +61,19 @@ public class Number extends Function {
         return value;
     }
 
+    @Override
+    public String toString() {
+        return Double.toString(value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Number && Double.compare(value, ((Number) obj).value) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(value);
+    }
+
 }
@@ -3,10 +3,12 @@
  * Polynomial class is a subclass of Function.
  * This implementation assumes that the exponent is a constant value (not a function of the variable 'x').
  * If the exponent varies with 'x', additional logic needs to be implemented.
+ * The operand and power are final, so concurrent calls to value(x) are safe.
  */
 public class Polynomial extends Function {
-    private Function operand;
-    private double power;
+    private final Function operand;
+    private final double power;
+    private int hash;
 
     public Polynomial(Function operand, double power) {
         this.operand = operand;
@@ -33,17 +35,56 @@ public class Polynomial extends Function {
     }
 
     @Override
-    public Function derivative() {
+    public double value(double[] environment) {
+        return Math.pow(operand.value(environment), power);
+    }
+
+    @Override
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        operand.valueBlock(inputs, outputs, length, evaluator);
+        if (power == 2.0) {
+            for (int i = 0; i < length; i++) {
+                outputs[i] = outputs[i] * outputs[i];
+            }
+        } else if (power != 1.0) {
+            for (int i = 0; i < length; i++) {
+                outputs[i] = Math.pow(outputs[i], power);
+            }
+        }
+    }
+
+    @Override
+    public Interval interval(Interval x) {
+        return operand.interval(x).pow(power);
+    }
+
+    @Override
+    public Interval interval(Interval[] environment) {
+        return operand.interval(environment).pow(power);
+    }
+
+    @Override
+    public Dual dual(double x) {
+        return operand.dual(x).pow(power);
+    }
+
+    @Override
+    public double[] taylor(double x, int order) {
+        return Taylor.pow(operand.taylor(x, order), power);
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
         // Apply the chain rule: f(g(x))^n = n * f(g(x))^(n-1) * g'(x)
         if (power == 0.0) {
             // Derivative of constant function is zero
             return new Number(0);
         } else if (power == 1.0) {
-            return operand.derivative();
+            return operand.derivative(slot);
         } else {
             Function left = new BinaryOp(BinaryOp.Operator.Multiply, new Number(power),
                     new Polynomial(operand, power - 1));
-            Function right = operand.derivative();
+            Function right = operand.derivative(slot);
             return new BinaryOp(BinaryOp.Operator.Multiply, left, right);
         }
     }
@@ -59,12 +100,25 @@ public class Polynomial extends Function {
 
     @Override
     public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
         if (obj instanceof Polynomial) {
             Polynomial power = (Polynomial) obj;
-            return (getOperand().equals(power.getOperand()) && (getPower() == power.getPower()));
+            return hashCode() == power.hashCode() && getOperand().equals(power.getOperand()) && (getPower() == power.getPower());
         } else {
             return false;
         }
     }
-}
 
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            // Adding 0.0 folds -0.0 into 0.0, which equals treats as the same power
+            h = 31 * getOperand().hashCode() + Double.hashCode(getPower() + 0.0);
+            hash = h;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,233 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The RangeSampler class evaluates a Function at evenly spaced points of [a, b] on several threads.
+ * The range is cut into chunks of consecutive points, and each chunk is written straight into the
+ * caller's result array with batch evaluation, so threads never share intermediate state.
+ * Chunks run either on a ForkJoinPool, which suits a few large ranges, or one task per chunk on
+ * virtual threads, which suits many small concurrent jobs. Virtual threads need Java 21; on older
+ * runtimes that mode falls back to a fixed pool of platform threads.
+ * @author Jenny Zhang
+ */
+public class RangeSampler implements AutoCloseable {
+
+    /** Default number of points evaluated by one task */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    /**
+     * How the chunks of a range are scheduled
+     */
+    public enum Mode {
+        FORK_JOIN,
+        VIRTUAL_THREADS
+    }
+
+    /**
+     * Batch evaluator of each ForkJoinPool worker, so a worker reuses its scratch blocks from one chunk to the next.
+     * A virtual thread runs a single chunk, so virtual-thread mode gives each chunk its own evaluator instead
+     */
+    private static final ThreadLocal<BatchEvaluator> EVALUATORS = ThreadLocal.withInitial(BatchEvaluator::new);
+
+    private final Mode mode;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+    private final ExecutorService executor;
+    private final boolean ownsPool;
+
+    /**
+     * Constructs a sampler that runs on the common ForkJoinPool with the default chunk size
+     */
+    public RangeSampler() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a sampler that runs on a pool owned by the caller, which close leaves running
+     * @param pool the pool that evaluates the chunks
+     * @param chunkSize the number of points evaluated by one task
+     */
+    public RangeSampler(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.mode = Mode.FORK_JOIN;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+        this.executor = null;
+        this.ownsPool = false;
+    }
+
+    /**
+     * Constructs a sampler with its own threads
+     * @param mode how chunks are scheduled
+     * @param parallelism the number of ForkJoinPool workers, or of platform threads when virtual threads are unavailable
+     * @param chunkSize the number of points evaluated by one task
+     */
+    public RangeSampler(Mode mode, int parallelism, int chunkSize) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.mode = mode;
+        this.chunkSize = chunkSize;
+        this.ownsPool = true;
+        if (mode == Mode.FORK_JOIN) {
+            this.pool = new ForkJoinPool(parallelism);
+            this.executor = null;
+        } else {
+            this.pool = null;
+            this.executor = newVirtualThreadExecutor(parallelism);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Samples the function at count evenly spaced points from a to b inclusive
+     * @param function the function to sample
+     * @param a the first point
+     * @param b the last point
+     * @param count the number of points
+     * @return the values of the function at the points
+     */
+    public double[] sample(Function function, double a, double b, int count) {
+        double[] values = new double[count];
+        sample(function, a, b, values);
+        return values;
+    }
+
+    /**
+     * Samples the function at values.length evenly spaced points from a to b inclusive,
+     * writing the value at the i-th point to values[i]
+     * @param function the function to sample
+     * @param a the first point
+     * @param b the last point
+     * @param values the preallocated array receiving the results
+     */
+    public void sample(Function function, double a, double b, double[] values) {
+        int count = values.length;
+        if (count == 0) {
+            return;
+        }
+        double step = count > 1 ? (b - a) / (count - 1) : 0.0;
+        if (mode == Mode.FORK_JOIN) {
+            pool.invoke(new SampleTask(function, a, step, values, 0, count));
+            return;
+        }
+        List<Future<?>> chunks = new ArrayList<>();
+        for (int start = 0; start < count; start += chunkSize) {
+            int from = start;
+            int to = Math.min(count, start + chunkSize);
+            chunks.add(executor.submit(() -> sampleChunk(new BatchEvaluator(), function, a, step, values, from, to)));
+        }
+        try {
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll(chunks);
+            throw new IllegalStateException("Interrupted while sampling " + function, e);
+        } catch (ExecutionException e) {
+            cancelAll(chunks);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Sampling " + function + " failed", cause);
+        }
+    }
+
+    /**
+     * Shuts down the threads this sampler created; the common pool is left running
+     */
+    @Override
+    public void close() {
+        if (!ownsPool) {
+            return;
+        }
+        if (pool != null) {
+            pool.shutdown();
+        } else {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Evaluates points [from, to) by filling the range with the sample points and evaluating it in place
+     */
+    private static void sampleChunk(BatchEvaluator evaluator, Function function, double a, double step,
+                                    double[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            values[i] = a + i * step;
+        }
+        evaluator.evaluate(function, values, from, values, from, to - from);
+    }
+
+    private static void cancelAll(List<Future<?>> chunks) {
+        for (Future<?> chunk : chunks) {
+            chunk.cancel(true);
+        }
+    }
+
+    /**
+     * Returns Executors.newVirtualThreadPerTaskExecutor() when the runtime has it, or a fixed pool otherwise.
+     * The method is looked up reflectively so the code still compiles and runs on Java 17.
+     */
+    private static ExecutorService newVirtualThreadExecutor(int parallelism) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(parallelism);
+        }
+    }
+
+    private class SampleTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Function function;
+        private final double a;
+        private final double step;
+        private final double[] values;
+        private final int from;
+        private final int to;
+
+        SampleTask(Function function, double a, double step, double[] values, int from, int to) {
+            this.function = function;
+            this.a = a;
+            this.step = step;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                sampleChunk(EVALUATORS.get(), function, a, step, values, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SampleTask(function, a, step, values, from, middle),
+                    new SampleTask(function, a, step, values, middle, to));
+        }
+    }
+}
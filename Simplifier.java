@@ -0,0 +1,323 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Simplifier class rewrites a Function into a smaller equivalent form.
+ * It repeats a bottom-up pass until nothing changes, removing identities such as 0 + f, 1 * f and f ^ 1,
+ * folding constant subtrees, merging integer powers of the same base and collecting like terms.
+ * Sums and products are rebuilt in a canonical order so equal expressions end up with equal trees.
+ * Rewrites treat 0 * f as 0 even where f is undefined, as is usual for symbolic simplification.
+ * @author Jenny Zhang
+ */
+public class Simplifier {
+
+    /** Upper bound on passes, reached only if two rules keep undoing each other */
+    private static final int MAX_PASSES = 32;
+
+    private final Map<Function, Function> simplified = new HashMap<>();
+    private final Map<Function, String> orderKeys = new HashMap<>();
+    private final Comparator<Function> canonicalOrder = new Comparator<Function>() {
+        @Override
+        public int compare(Function a, Function b) {
+            int rank = Integer.compare(rank(a), rank(b));
+            if (rank != 0) {
+                return rank;
+            }
+            // Hash codes are derived from structure alone, so they order equal trees the same way in every run
+            int hash = Integer.compare(a.hashCode(), b.hashCode());
+            if (hash != 0 || a.equals(b)) {
+                return hash;
+            }
+            return orderKey(a).compareTo(orderKey(b));
+        }
+    };
+
+    /**
+     * Simplifies the given function
+     * @param function the function to simplify
+     * @return an equivalent function that is no larger than the input
+     */
+    public static Function simplify(Function function) {
+        return new Simplifier().run(function);
+    }
+
+    /**
+     * Simplifies the given function, reusing results this simplifier already computed for equal subexpressions
+     * @param function the function to simplify
+     * @return an equivalent function that is no larger than the input
+     */
+    public Function run(Function function) {
+        Function current = function;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            Function next = rewrite(current);
+            if (next.equals(current)) {
+                return next;
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    private Function rewrite(Function function) {
+        Function cached = simplified.get(function);
+        if (cached != null) {
+            return cached;
+        }
+        Function result = DensePolynomial.densify(rewriteNode(function));
+        simplified.put(function, result);
+        // A simplified result is its own simplification, which lets the fixed-point pass stop early
+        simplified.putIfAbsent(result, result);
+        return result;
+    }
+
+    private Function rewriteNode(Function function) {
+        if (function instanceof BinaryOp) {
+            BinaryOp op = (BinaryOp) function;
+            Function left = rewrite(op.getLeftOperand());
+            Function right = rewrite(op.getRightOperand());
+            switch (op.getOperator()) {
+                case Add:
+                case Subtract:
+                    return sum(new BinaryOp(op.getOperator(), left, right));
+                case Multiply:
+                    return product(new BinaryOp(op.getOperator(), left, right));
+                case Divide:
+                    return quotient(left, right);
+                case Power:
+                    if (right instanceof Number) {
+                        return power(left, ((Number) right).getValue());
+                    }
+                    return fold(new BinaryOp(BinaryOp.Operator.Power, left, right));
+                default:
+                    return new BinaryOp(op.getOperator(), left, right);
+            }
+        } else if (function instanceof Polynomial) {
+            Polynomial polynomial = (Polynomial) function;
+            return power(rewrite(polynomial.getOperand()), polynomial.getPower());
+        } else if (function instanceof Sin) {
+            return fold(new Sin(rewrite(((Sin) function).getOperand())));
+        } else if (function instanceof Cos) {
+            return fold(new Cos(rewrite(((Cos) function).getOperand())));
+        } else if (function instanceof Trig) {
+            Trig trig = (Trig) function;
+            return fold(new Trig(trig.getFunction(), rewrite(trig.getOperand())));
+        } else if (function instanceof Exp) {
+            return fold(new Exp(rewrite(((Exp) function).getOperand())));
+        } else if (function instanceof Log) {
+            Function operand = rewrite(((Log) function).getOperand());
+            if (operand instanceof Exp) {
+                // log(exp(f)) is f for every real f
+                return ((Exp) operand).getOperand();
+            }
+            return fold(new Log(operand));
+        }
+        return function;
+    }
+
+    /**
+     * Replaces a node whose operands are all numbers with the number it evaluates to
+     */
+    private static Function fold(Function function) {
+        if (FunctionCompiler.isConstant(function)) {
+            return new Number(function.value(0.0));
+        }
+        return function;
+    }
+
+    /**
+     * Flattens nested additions and subtractions into coefficient * term pairs, collects like terms
+     * and rebuilds the sum with the constant first and the remaining terms in canonical order
+     */
+    private Function sum(Function function) {
+        List<Function> bases = new ArrayList<>();
+        List<Double> coefficients = new ArrayList<>();
+        double constant = collectTerms(function, 1.0, bases, coefficients);
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < bases.size(); i++) {
+            if (coefficients.get(i) != 0.0) {
+                order.add(i);
+            }
+        }
+        order.sort((i, j) -> canonicalOrder.compare(bases.get(i), bases.get(j)));
+
+        Function result = constant != 0.0 ? new Number(constant) : null;
+        for (int i : order) {
+            double coefficient = coefficients.get(i);
+            Function base = bases.get(i);
+            if (result == null) {
+                result = scale(coefficient, base);
+            } else if (coefficient < 0) {
+                result = new BinaryOp(BinaryOp.Operator.Subtract, result, scale(-coefficient, base));
+            } else {
+                result = new BinaryOp(BinaryOp.Operator.Add, result, scale(coefficient, base));
+            }
+        }
+        return result != null ? result : new Number(0);
+    }
+
+    /**
+     * Adds the terms of the given sum, multiplied by sign, to the lists and returns the sum of its constant terms
+     */
+    private double collectTerms(Function function, double sign, List<Function> bases, List<Double> coefficients) {
+        if (function instanceof BinaryOp) {
+            BinaryOp op = (BinaryOp) function;
+            if (op.getOperator() == BinaryOp.Operator.Add || op.getOperator() == BinaryOp.Operator.Subtract) {
+                double rightSign = op.getOperator() == BinaryOp.Operator.Add ? sign : -sign;
+                return collectTerms(op.getLeftOperand(), sign, bases, coefficients)
+                        + collectTerms(op.getRightOperand(), rightSign, bases, coefficients);
+            }
+        }
+        if (function instanceof Number) {
+            return sign * ((Number) function).getValue();
+        }
+        double coefficient = sign;
+        Function base = function;
+        if (function instanceof BinaryOp) {
+            BinaryOp op = (BinaryOp) function;
+            if (op.getOperator() == BinaryOp.Operator.Multiply && op.getLeftOperand() instanceof Number) {
+                coefficient *= ((Number) op.getLeftOperand()).getValue();
+                base = op.getRightOperand();
+            }
+        }
+        int index = bases.indexOf(base);
+        if (index >= 0) {
+            coefficients.set(index, coefficients.get(index) + coefficient);
+        } else {
+            bases.add(base);
+            coefficients.add(coefficient);
+        }
+        return 0.0;
+    }
+
+    /**
+     * Flattens nested multiplications into a constant and base ^ exponent factors, merges integer powers
+     * of equal bases and rebuilds the product as constant * factors in canonical order
+     */
+    private Function product(Function function) {
+        List<Function> bases = new ArrayList<>();
+        List<Double> exponents = new ArrayList<>();
+        double constant = collectFactors(function, bases, exponents);
+        if (constant == 0.0) {
+            return new Number(0);
+        }
+
+        List<Function> factors = new ArrayList<>();
+        for (int i = 0; i < bases.size(); i++) {
+            double exponent = exponents.get(i);
+            if (exponent == 0.0) {
+                continue;
+            }
+            factors.add(exponent == 1.0 ? bases.get(i) : new Polynomial(bases.get(i), exponent));
+        }
+        factors.sort(canonicalOrder);
+
+        Function result = null;
+        for (Function factor : factors) {
+            result = result == null ? factor : new BinaryOp(BinaryOp.Operator.Multiply, result, factor);
+        }
+        if (result == null) {
+            return new Number(constant);
+        }
+        return scale(constant, result);
+    }
+
+    private double collectFactors(Function function, List<Function> bases, List<Double> exponents) {
+        if (function instanceof BinaryOp && ((BinaryOp) function).getOperator() == BinaryOp.Operator.Multiply) {
+            BinaryOp op = (BinaryOp) function;
+            return collectFactors(op.getLeftOperand(), bases, exponents)
+                    * collectFactors(op.getRightOperand(), bases, exponents);
+        }
+        if (function instanceof Number) {
+            return ((Number) function).getValue();
+        }
+        Function base = function;
+        double exponent = 1.0;
+        if (function instanceof Polynomial) {
+            base = ((Polynomial) function).getOperand();
+            exponent = ((Polynomial) function).getPower();
+        }
+        if (isInteger(exponent)) {
+            for (int i = 0; i < bases.size(); i++) {
+                if (isInteger(exponents.get(i)) && bases.get(i).equals(base)) {
+                    exponents.set(i, exponents.get(i) + exponent);
+                    return 1.0;
+                }
+            }
+        }
+        bases.add(base);
+        exponents.add(exponent);
+        return 1.0;
+    }
+
+    private Function quotient(Function numerator, Function denominator) {
+        if (denominator instanceof Number && ((Number) denominator).getValue() == 1.0) {
+            return numerator;
+        }
+        if (numerator instanceof Number && ((Number) numerator).getValue() == 0.0) {
+            return new Number(0);
+        }
+        if (numerator.equals(denominator)) {
+            return new Number(1);
+        }
+        if (denominator instanceof Number) {
+            // Dividing by a constant is multiplying by its reciprocal, which lets the product rules apply
+            return product(new BinaryOp(BinaryOp.Operator.Multiply,
+                    new Number(1.0 / ((Number) denominator).getValue()), numerator));
+        }
+        return fold(new BinaryOp(BinaryOp.Operator.Divide, numerator, denominator));
+    }
+
+    private Function power(Function base, double exponent) {
+        if (exponent == 0.0) {
+            return new Number(1);
+        }
+        if (exponent == 1.0) {
+            return base;
+        }
+        if (base instanceof Number) {
+            return new Number(Math.pow(((Number) base).getValue(), exponent));
+        }
+        if (base instanceof Polynomial && isInteger(exponent) && isInteger(((Polynomial) base).getPower())) {
+            Polynomial inner = (Polynomial) base;
+            return power(inner.getOperand(), inner.getPower() * exponent);
+        }
+        return new Polynomial(base, exponent);
+    }
+
+    private static Function scale(double coefficient, Function function) {
+        if (coefficient == 1.0) {
+            return function;
+        }
+        return new BinaryOp(BinaryOp.Operator.Multiply, new Number(coefficient), function);
+    }
+
+    private static boolean isInteger(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value);
+    }
+
+    private static int rank(Function function) {
+        if (function instanceof Number) {
+            return 0;
+        } else if (function instanceof Variable) {
+            return 1;
+        } else if (function instanceof Polynomial || function instanceof DensePolynomial) {
+            return 2;
+        } else if (function instanceof BinaryOp) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private String orderKey(Function function) {
+        String key = orderKeys.get(function);
+        if (key == null) {
+            key = function.getClass().getName() + ":" + function;
+            orderKeys.put(function, key);
+        }
+        return key;
+    }
+}
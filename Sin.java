@@ -1,12 +1,21 @@
 // Sin.java
+/**
+ * The Sin class represents the sine of an operand function.
+ * Its fields never change after construction, so value(x) may be called from many threads at once.
+ */
 public class Sin extends Function {
 
     private final Function operand;
+    private int hash;
 
     public Sin(Function operand) {
         this.operand = operand;
     }
 
+    public Function getOperand() {
+        return operand;
+    }
+
      @Override
     public double value() {
         return Math.sin(operand.value());
@@ -18,12 +27,63 @@ public class Sin extends Function {
     }
 
     @Override
-    public Function derivative() {
-        return new BinaryOp(BinaryOp.Operator.Multiply, new Cos(operand), operand.derivative());
+    public double value(double[] environment) {
+        return Math.sin(operand.value(environment));
+    }
+
+    @Override
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        operand.valueBlock(inputs, outputs, length, evaluator);
+        for (int i = 0; i < length; i++) {
+            outputs[i] = Math.sin(outputs[i]);
+        }
+    }
+
+    @Override
+    public Interval interval(Interval x) {
+        return operand.interval(x).sin();
+    }
+
+    @Override
+    public Interval interval(Interval[] environment) {
+        return operand.interval(environment).sin();
+    }
+
+    @Override
+    public Dual dual(double x) {
+        return operand.dual(x).sin();
+    }
+
+    @Override
+    public double[] taylor(double x, int order) {
+        return Taylor.sin(operand.taylor(x, order));
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
+        return new BinaryOp(BinaryOp.Operator.Multiply, new Cos(operand), operand.derivative(slot));
     }
 
     @Override
     public String toString() {
         return "sin(" + operand.toString() + ")";
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return obj instanceof Sin && hashCode() == obj.hashCode() && operand.equals(((Sin) obj).operand);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * operand.hashCode() + 1;
+            hash = h;
+        }
+        return h;
+    }
 }
@@ -0,0 +1,682 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntFunction;
+
+/**
+ * The Solver class finds roots, minima and maxima of a Function of x.
+ * It iterates with Newton's method, or Halley's method which also uses the second derivative and converges
+ * cubically, on compiled derivative trees. Each derivative is differentiated and compiled the first time
+ * it is needed and reused from then on; a solver built from an ExpressionCache shares them with the cache.
+ * <p>
+ * When the root is known to lie in an interval whose ends have opposite signs, every step is kept inside
+ * that interval, which shrinks with each evaluation: a step that would leave it, or that does not at least
+ * halve the previous one, is replaced by a bisection, so a bracketed search always converges.
+ * Searching a whole interval cuts it into even subintervals, evaluates the function at their ends in
+ * parallel, and solves every subinterval where the sign changes in parallel. Roots where the function
+ * touches zero without crossing it are found as zeros of the derivative at which the function is within
+ * the value tolerance of zero; a subinterval where interval arithmetic bounds the function away from zero
+ * is skipped without solving. Two roots closer together than the subinterval width can cancel out and be
+ * missed, so the subinterval count should match the detail expected.
+ * Extrema are found as the roots of the first derivative.
+ * <p>
+ * Every result carries the number of iterations, evaluations and bisection fallbacks it took.
+ * A solver is safe to share between threads.
+ * @author Jenny Zhang
+ */
+public class Solver {
+
+    /** Default distance in x below which two successive iterates count as converged */
+    public static final double DEFAULT_TOLERANCE = 1e-12;
+
+    /** Default largest |f(x)| accepted for a root where the function touches zero without crossing it */
+    public static final double DEFAULT_VALUE_TOLERANCE = 1e-12;
+
+    /** Default limit on iterations for one root */
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    /** Default number of subintervals an interval is cut into when searching for all roots */
+    public static final int DEFAULT_SUBINTERVALS = 256;
+
+    /** Number of brackets one parallel task solves */
+    private static final int BRACKETS_PER_TASK = 16;
+
+    /** Roots closer together than this, relative to their size, are reported once */
+    private static final double DUPLICATE_DISTANCE = 1e-9;
+
+    /**
+     * The iteration used to refine a root
+     */
+    public enum Method {
+        NEWTON,
+        HALLEY
+    }
+
+    private final IntFunction<DoubleUnaryOperator> compiler;
+    /** The function being solved, used to bound it over subintervals */
+    private final Function function;
+    private final Method method;
+    private final double tolerance;
+    private final double valueTolerance;
+    private final int maxIterations;
+    private final List<DoubleUnaryOperator> derivatives = new ArrayList<>();
+
+    /**
+     * Constructs a Halley solver with the default tolerances
+     * @param function the function to solve
+     */
+    public Solver(Function function) {
+        this(function, Method.HALLEY, DEFAULT_TOLERANCE, DEFAULT_VALUE_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * Constructs a solver
+     * @param function the function to solve
+     * @param method the iteration to use
+     * @param tolerance the distance in x below which two successive iterates count as converged
+     * @param valueTolerance the largest |f(x)| accepted for a root where the function does not change sign
+     * @param maxIterations the limit on iterations for one root
+     */
+    public Solver(Function function, Method method, double tolerance, double valueTolerance, int maxIterations) {
+        this(order -> FunctionCompiler.compile(derivative(function, order)), function, method, tolerance, valueTolerance, maxIterations);
+    }
+
+    /**
+     * Constructs a solver whose compiled derivatives come from, and stay in, the given cache
+     * @param cache the cache holding the compiled expression and its derivatives
+     * @param expression the expression text
+     * @param method the iteration to use
+     */
+    public Solver(ExpressionCache cache, String expression, Method method) {
+        this(order -> cache.compiled(expression, order), cache.parse(expression), method,
+                DEFAULT_TOLERANCE, DEFAULT_VALUE_TOLERANCE, DEFAULT_MAX_ITERATIONS);
+    }
+
+    private Solver(IntFunction<DoubleUnaryOperator> compiler, Function function, Method method,
+                   double tolerance, double valueTolerance, int maxIterations) {
+        if (!(tolerance >= 0) || !(valueTolerance >= 0)) {
+            throw new IllegalArgumentException("Tolerances must not be negative: " + tolerance + ", " + valueTolerance);
+        }
+        if (maxIterations <= 0) {
+            throw new IllegalArgumentException("Iteration limit must be positive: " + maxIterations);
+        }
+        this.compiler = compiler;
+        this.function = function;
+        this.method = method;
+        this.tolerance = tolerance;
+        this.valueTolerance = valueTolerance;
+        this.maxIterations = maxIterations;
+    }
+
+    private static Function derivative(Function function, int order) {
+        for (int k = 0; k < order; k++) {
+            function = function.derivative();
+        }
+        return function;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public double getValueTolerance() {
+        return valueTolerance;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Finds a root by iterating from a starting guess, without a bracket to fall back on.
+     * The iteration may fail to converge, or converge to a root far from the guess.
+     * @param guess the starting point
+     * @return the root, or the last iterate with isConverged() false
+     */
+    public Result findRoot(double guess) {
+        return iterate(0, guess);
+    }
+
+    /**
+     * Finds a root in an interval whose ends have opposite signs; a root at either end is returned as is
+     * @param a one end of the interval
+     * @param b the other end
+     * @return the root
+     * @throws IllegalArgumentException if the function has the same sign at both ends
+     */
+    public Result findRoot(double a, double b) {
+        DoubleUnaryOperator f = derivative(0);
+        double fa = f.applyAsDouble(a);
+        double fb = f.applyAsDouble(b);
+        if (fa == 0) {
+            return new Result(a, 0, 0, 2, 0, true);
+        } else if (fb == 0) {
+            return new Result(b, 0, 0, 2, 0, true);
+        } else if (!(fa * fb < 0)) {
+            throw new IllegalArgumentException("No sign change between " + a + " and " + b + ": " + fa + ", " + fb);
+        }
+        return bracketed(0, a, fa, b, fb, 2);
+    }
+
+    /**
+     * Finds every root in [a, b] with the default number of subintervals
+     * @param a the left end of the interval
+     * @param b the right end of the interval
+     * @return the roots in increasing order with the statistics of the search
+     */
+    public Roots findAllRoots(double a, double b) {
+        return findAllRoots(a, b, DEFAULT_SUBINTERVALS);
+    }
+
+    /**
+     * Finds every root in [a, b], solving the subintervals in parallel
+     * @param a the left end of the interval
+     * @param b the right end of the interval
+     * @param subintervals the number of even subintervals checked for a sign change
+     * @return the roots in increasing order with the statistics of the search
+     */
+    public Roots findAllRoots(double a, double b, int subintervals) {
+        return search(0, a, b, subintervals);
+    }
+
+    /**
+     * Finds the smallest value of the function on [a, b], at an end or at a zero of the derivative
+     * @param a the left end of the interval
+     * @param b the right end of the interval
+     * @return the point where the smallest value is taken, with the statistics of finding it
+     */
+    public Result minimize(double a, double b) {
+        return extremum(a, b, 1);
+    }
+
+    /**
+     * Finds the largest value of the function on [a, b], at an end or at a zero of the derivative
+     * @param a the left end of the interval
+     * @param b the right end of the interval
+     * @return the point where the largest value is taken, with the statistics of finding it
+     */
+    public Result maximize(double a, double b) {
+        return extremum(a, b, -1);
+    }
+
+    /**
+     * Finds every local minimum and maximum strictly inside [a, b]
+     * @param a the left end of the interval
+     * @param b the right end of the interval
+     * @param subintervals the number of even subintervals checked for a sign change of the derivative
+     * @return the extrema in increasing order; each result's value is the function's value there
+     */
+    public Roots findExtrema(double a, double b, int subintervals) {
+        Roots critical = search(1, a, b, subintervals);
+        DoubleUnaryOperator f = derivative(0);
+        List<Result> extrema = new ArrayList<>(critical.roots.size());
+        for (Result point : critical.roots) {
+            extrema.add(new Result(point.x, f.applyAsDouble(point.x), point.iterations,
+                    point.evaluations + 1, point.bisections, point.converged));
+        }
+        return new Roots(extrema, critical.brackets, critical.failures, critical.gridEvaluations);
+    }
+
+    /**
+     * Compares every local extremum with both ends; sign is 1 to look for the smallest value and -1 for the largest
+     */
+    private Result extremum(double a, double b, int sign) {
+        if (!(a <= b)) {
+            throw new IllegalArgumentException("Empty interval: " + a + " to " + b);
+        }
+        DoubleUnaryOperator f = derivative(0);
+        Result best = new Result(a, f.applyAsDouble(a), 0, 1, 0, true);
+        Result end = new Result(b, f.applyAsDouble(b), 0, 1, 0, true);
+        if (sign * end.value < sign * best.value) {
+            best = end;
+        }
+        Roots extrema = a < b ? findExtrema(a, b, DEFAULT_SUBINTERVALS) : new Roots(Collections.emptyList(), 0, 0, 0);
+        for (Result point : extrema.roots) {
+            if (sign * point.value < sign * best.value) {
+                best = point;
+            }
+        }
+        int evaluations = extrema.getEvaluations() + 2;
+        return new Result(best.x, best.value, extrema.getIterations(), evaluations, extrema.getBisections(), best.converged);
+    }
+
+    /**
+     * Finds the roots of the derivative of the given order in [a, b]. For order 0 every zero is a root;
+     * for the first derivative only zeros where it changes sign count, so inflection points are left out.
+     */
+    private Roots search(int order, double a, double b, int subintervals) {
+        if (!(a < b)) {
+            throw new IllegalArgumentException("Empty interval: " + a + " to " + b);
+        }
+        if (subintervals <= 0) {
+            throw new IllegalArgumentException("Subinterval count must be positive: " + subintervals);
+        }
+        DoubleUnaryOperator g = derivative(order);
+        DoubleUnaryOperator slope = order == 0 ? derivative(1) : null;
+        double[] xs = new double[subintervals + 1];
+        double[] values = new double[subintervals + 1];
+        double[] slopes = slope != null ? new double[subintervals + 1] : null;
+        double step = (b - a) / subintervals;
+        for (int i = 0; i <= subintervals; i++) {
+            xs[i] = i == subintervals ? b : a + i * step;
+        }
+        ForkJoinPool.commonPool().invoke(new GridTask(g, slope, xs, values, slopes, 0, xs.length));
+
+        List<Bracket> brackets = new ArrayList<>();
+        List<Result> exact = new ArrayList<>();
+        for (int i = 0; i <= subintervals; i++) {
+            if (values[i] == 0 && (order == 0 || (i > 0 && i < subintervals && values[i - 1] * values[i + 1] < 0))) {
+                exact.add(new Result(xs[i], 0, 0, 0, 0, true));
+            }
+            if (i == subintervals) {
+                break;
+            }
+            if (values[i] * values[i + 1] < 0) {
+                brackets.add(new Bracket(order, xs[i], values[i], xs[i + 1], values[i + 1]));
+            } else if (slopes != null && slopes[i] * slopes[i + 1] < 0 && mayTouchZero(xs[i], xs[i + 1])) {
+                // The function turns without crossing zero; it may touch zero at the turning point
+                brackets.add(new Bracket(1, xs[i], slopes[i], xs[i + 1], slopes[i + 1]));
+            }
+        }
+        Result[] solved = new Result[brackets.size()];
+        ForkJoinPool.commonPool().invoke(new SolveTask(brackets, solved, 0, solved.length));
+
+        List<Result> roots = new ArrayList<>(exact);
+        int failures = 0;
+        for (int i = 0; i < solved.length; i++) {
+            Result root = solved[i];
+            if (brackets.get(i).order != order) {
+                // A turning point only counts when the function reaches zero there
+                double value = derivative(order).applyAsDouble(root.x);
+                if (!(Math.abs(value) <= valueTolerance)) {
+                    continue;
+                }
+                root = new Result(root.x, value, root.iterations, root.evaluations + 1, root.bisections, root.converged);
+            }
+            if (!root.converged) {
+                failures++;
+            }
+            roots.add(root);
+        }
+        roots.sort(Comparator.comparingDouble(Result::getX));
+        List<Result> distinct = new ArrayList<>(roots.size());
+        for (Result root : roots) {
+            Result last = distinct.isEmpty() ? null : distinct.get(distinct.size() - 1);
+            if (last != null && root.x - last.x <= DUPLICATE_DISTANCE * Math.max(1.0, Math.abs(root.x))) {
+                continue;
+            }
+            distinct.add(root);
+        }
+        int gridEvaluations = (slopes != null ? 2 : 1) * xs.length;
+        return new Roots(distinct, brackets.size(), failures, gridEvaluations);
+    }
+
+    /**
+     * Returns whether the function can come within the value tolerance of zero in [lo, hi]
+     */
+    private boolean mayTouchZero(double lo, double hi) {
+        return function.interval(new Interval(lo, hi)).intersects(new Interval(-valueTolerance, valueTolerance));
+    }
+
+    /**
+     * Solves g = 0 for the derivative g of the given order inside [lo, hi], where g(lo) and g(hi) have opposite signs.
+     * The first step interpolates linearly between the ends.
+     */
+    private Result bracketed(int order, double lo, double glo, double hi, double ghi, int evaluations) {
+        DoubleUnaryOperator g = derivative(order);
+        DoubleUnaryOperator g1 = derivative(order + 1);
+        DoubleUnaryOperator g2 = method == Method.HALLEY ? derivative(order + 2) : null;
+        double x = lo - glo * (hi - lo) / (ghi - glo);
+        if (!(x > lo && x < hi)) {
+            x = 0.5 * (lo + hi);
+        }
+        double previousStep = hi - lo;
+        int bisections = 0;
+        for (int iteration = 1; iteration <= maxIterations; iteration++) {
+            double gx = g.applyAsDouble(x);
+            evaluations++;
+            if (gx == 0) {
+                return new Result(x, gx, iteration, evaluations, bisections, true);
+            }
+            if ((gx < 0) == (glo < 0)) {
+                lo = x;
+                glo = gx;
+            } else {
+                hi = x;
+            }
+            double step = step(gx, x, g1, g2);
+            evaluations += g2 != null ? 2 : 1;
+            double next = x - step;
+            if (Math.abs(step) <= tolerance(x)) {
+                // Converged; a step this small may round onto the end of the bracket that x just became
+                return new Result(next, g.applyAsDouble(next), iteration, evaluations + 1, bisections, true);
+            }
+            // Keep the iterate inside the bracket and make sure the bracket keeps shrinking
+            if (!(next > Math.min(lo, hi) && next < Math.max(lo, hi)) || Math.abs(step) > 0.5 * Math.abs(previousStep)) {
+                next = 0.5 * (lo + hi);
+                step = x - next;
+                bisections++;
+                if (Math.abs(hi - lo) <= tolerance(next)) {
+                    return new Result(next, g.applyAsDouble(next), iteration, evaluations + 1, bisections, true);
+                }
+            }
+            previousStep = step;
+            x = next;
+        }
+        return new Result(x, g.applyAsDouble(x), maxIterations, evaluations + 1, bisections, false);
+    }
+
+    /**
+     * Solves g = 0 for the derivative g of the given order from a starting point, without a bracket
+     */
+    private Result iterate(int order, double x) {
+        DoubleUnaryOperator g = derivative(order);
+        DoubleUnaryOperator g1 = derivative(order + 1);
+        DoubleUnaryOperator g2 = method == Method.HALLEY ? derivative(order + 2) : null;
+        int evaluations = 0;
+        for (int iteration = 1; iteration <= maxIterations; iteration++) {
+            double gx = g.applyAsDouble(x);
+            evaluations++;
+            if (gx == 0) {
+                return new Result(x, gx, iteration, evaluations, 0, true);
+            }
+            double step = step(gx, x, g1, g2);
+            evaluations += g2 != null ? 2 : 1;
+            if (Double.isNaN(step) || Double.isInfinite(step)) {
+                return new Result(x, gx, iteration, evaluations, 0, false);
+            }
+            x -= step;
+            if (Math.abs(step) <= tolerance(x)) {
+                return new Result(x, g.applyAsDouble(x), iteration, evaluations + 1, 0, true);
+            }
+        }
+        return new Result(x, g.applyAsDouble(x), maxIterations, evaluations + 1, 0, false);
+    }
+
+    /**
+     * Returns the Newton or Halley step for g(x) = gx; Halley falls back to Newton where its correction is unusable
+     */
+    private static double step(double gx, double x, DoubleUnaryOperator g1, DoubleUnaryOperator g2) {
+        double d1 = g1.applyAsDouble(x);
+        double newton = gx / d1;
+        if (g2 == null) {
+            return newton;
+        }
+        double d2 = g2.applyAsDouble(x);
+        double denominator = 1.0 - 0.5 * newton * d2 / d1;
+        double halley = newton / denominator;
+        return denominator > 0 && !Double.isNaN(halley) && !Double.isInfinite(halley) ? halley : newton;
+    }
+
+    private double tolerance(double x) {
+        return tolerance + 4 * Math.ulp(x);
+    }
+
+    /**
+     * Returns the compiled derivative of the given order, compiling it and every lower order not yet compiled
+     */
+    private DoubleUnaryOperator derivative(int order) {
+        synchronized (derivatives) {
+            while (derivatives.size() <= order) {
+                derivatives.add(compiler.apply(derivatives.size()));
+            }
+            return derivatives.get(order);
+        }
+    }
+
+    /**
+     * The Result class holds one point found by a Solver and how it was found
+     */
+    public static final class Result {
+
+        private final double x;
+        private final double value;
+        private final int iterations;
+        private final int evaluations;
+        private final int bisections;
+        private final boolean converged;
+
+        Result(double x, double value, int iterations, int evaluations, int bisections, boolean converged) {
+            this.x = x;
+            this.value = value;
+            this.iterations = iterations;
+            this.evaluations = evaluations;
+            this.bisections = bisections;
+            this.converged = converged;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        /**
+         * Returns the value of the function at x, which is close to zero for a root
+         * @return the value at x
+         */
+        public double getValue() {
+            return value;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * Returns the number of compiled function and derivative calls spent on this point
+         * @return the number of evaluations
+         */
+        public int getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * Returns how many iterations fell back to bisection because the Newton or Halley step was unusable
+         * @return the number of bisection steps
+         */
+        public int getBisections() {
+            return bisections;
+        }
+
+        public boolean isConverged() {
+            return converged;
+        }
+
+        public String toString() {
+            return "x = " + x + ", value = " + value + (converged ? "" : " (not converged)")
+                    + ", " + iterations + " iterations, " + evaluations + " evaluations, " + bisections + " bisections";
+        }
+    }
+
+    /**
+     * The Roots class holds every point found in an interval together with the statistics of the search
+     */
+    public static final class Roots {
+
+        private final List<Result> roots;
+        private final int brackets;
+        private final int failures;
+        private final int gridEvaluations;
+
+        Roots(List<Result> roots, int brackets, int failures, int gridEvaluations) {
+            this.roots = Collections.unmodifiableList(roots);
+            this.brackets = brackets;
+            this.failures = failures;
+            this.gridEvaluations = gridEvaluations;
+        }
+
+        /**
+         * Returns the points found, in increasing order of x
+         * @return the points, which cannot be modified
+         */
+        public List<Result> getRoots() {
+            return roots;
+        }
+
+        public int size() {
+            return roots.size();
+        }
+
+        /**
+         * Returns the number of subintervals that were solved, including turning points that turned out not to be roots
+         * @return the number of brackets
+         */
+        public int getBrackets() {
+            return brackets;
+        }
+
+        /**
+         * Returns the number of points that did not converge within the iteration limit
+         * @return the number of failures
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        public int getIterations() {
+            int total = 0;
+            for (Result root : roots) {
+                total += root.iterations;
+            }
+            return total;
+        }
+
+        public int getMaxIterations() {
+            int max = 0;
+            for (Result root : roots) {
+                max = Math.max(max, root.iterations);
+            }
+            return max;
+        }
+
+        public int getBisections() {
+            int total = 0;
+            for (Result root : roots) {
+                total += root.bisections;
+            }
+            return total;
+        }
+
+        /**
+         * Returns the number of compiled calls spent, on the subinterval grid and on refining the points
+         * @return the number of evaluations
+         */
+        public int getEvaluations() {
+            int total = gridEvaluations;
+            for (Result root : roots) {
+                total += root.evaluations;
+            }
+            return total;
+        }
+
+        public String toString() {
+            return roots.size() + " roots from " + brackets + " brackets, " + getIterations() + " iterations (at most "
+                    + getMaxIterations() + "), " + getBisections() + " bisections, " + getEvaluations() + " evaluations, "
+                    + failures + " failures";
+        }
+    }
+
+    /**
+     * A subinterval in which the derivative of the given order changes sign
+     */
+    private static final class Bracket {
+
+        final int order;
+        final double lo;
+        final double glo;
+        final double hi;
+        final double ghi;
+
+        Bracket(int order, double lo, double glo, double hi, double ghi) {
+            this.order = order;
+            this.lo = lo;
+            this.glo = glo;
+            this.hi = hi;
+            this.ghi = ghi;
+        }
+    }
+
+    /**
+     * Evaluates the grid points [from, to) in parallel chunks
+     */
+    private static final class GridTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int CHUNK = 1024;
+
+        private final DoubleUnaryOperator g;
+        private final DoubleUnaryOperator slope;
+        private final double[] xs;
+        private final double[] values;
+        private final double[] slopes;
+        private final int from;
+        private final int to;
+
+        GridTask(DoubleUnaryOperator g, DoubleUnaryOperator slope, double[] xs, double[] values, double[] slopes, int from, int to) {
+            this.g = g;
+            this.slope = slope;
+            this.xs = xs;
+            this.values = values;
+            this.slopes = slopes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                for (int i = from; i < to; i++) {
+                    values[i] = g.applyAsDouble(xs[i]);
+                    if (slopes != null) {
+                        slopes[i] = slope.applyAsDouble(xs[i]);
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new GridTask(g, slope, xs, values, slopes, from, middle),
+                    new GridTask(g, slope, xs, values, slopes, middle, to));
+        }
+    }
+
+    /**
+     * Solves the brackets [from, to) in parallel, writing each result at the bracket's index
+     */
+    private final class SolveTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Bracket> brackets;
+        private final Result[] results;
+        private final int from;
+        private final int to;
+
+        SolveTask(List<Bracket> brackets, Result[] results, int from, int to) {
+            this.brackets = brackets;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BRACKETS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    Bracket bracket = brackets.get(i);
+                    results[i] = bracketed(bracket.order, bracket.lo, bracket.glo, bracket.hi, bracket.ghi, 0);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SolveTask(brackets, results, from, middle), new SolveTask(brackets, results, middle, to));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * The Taylor class implements arithmetic on truncated Taylor series.
+ * A series of order k is an array c of length k + 1 where c[i] is the i-th derivative divided by i!.
+ * Each operation combines its operands' coefficients with the usual recurrences in O(k^2),
+ * which lets Function.taylor compute high-order derivatives without building derivative trees.
+ * @author Jenny Zhang
+ */
+public final class Taylor {
+
+    private Taylor() {
+    }
+
+    /**
+     * Returns the series of a constant
+     * @param value the constant
+     * @param order the order of the series
+     * @return the coefficients (value, 0, ..., 0)
+     */
+    public static double[] constant(double value, int order) {
+        double[] result = new double[order + 1];
+        result[0] = value;
+        return result;
+    }
+
+    /**
+     * Returns the series of the independent variable around x
+     * @param x the expansion point
+     * @param order the order of the series
+     * @return the coefficients (x, 1, 0, ..., 0)
+     */
+    public static double[] variable(double x, int order) {
+        double[] result = constant(x, order);
+        if (order > 0) {
+            result[1] = 1.0;
+        }
+        return result;
+    }
+
+    public static double[] add(double[] a, double[] b) {
+        double[] result = new double[a.length];
+        for (int k = 0; k < a.length; k++) {
+            result[k] = a[k] + b[k];
+        }
+        return result;
+    }
+
+    public static double[] subtract(double[] a, double[] b) {
+        double[] result = new double[a.length];
+        for (int k = 0; k < a.length; k++) {
+            result[k] = a[k] - b[k];
+        }
+        return result;
+    }
+
+    public static double[] multiply(double[] a, double[] b) {
+        double[] result = new double[a.length];
+        for (int k = 0; k < a.length; k++) {
+            double sum = 0.0;
+            for (int j = 0; j <= k; j++) {
+                sum += a[j] * b[k - j];
+            }
+            result[k] = sum;
+        }
+        return result;
+    }
+
+    public static double[] divide(double[] a, double[] b) {
+        double[] result = new double[a.length];
+        for (int k = 0; k < a.length; k++) {
+            double sum = a[k];
+            for (int j = 0; j < k; j++) {
+                sum -= result[j] * b[k - j];
+            }
+            result[k] = sum / b[0];
+        }
+        return result;
+    }
+
+    public static double[] exp(double[] a) {
+        double[] result = new double[a.length];
+        result[0] = Math.exp(a[0]);
+        for (int k = 1; k < a.length; k++) {
+            double sum = 0.0;
+            for (int j = 1; j <= k; j++) {
+                sum += j * a[j] * result[k - j];
+            }
+            result[k] = sum / k;
+        }
+        return result;
+    }
+
+    public static double[] log(double[] a) {
+        double[] result = new double[a.length];
+        result[0] = Math.log(a[0]);
+        for (int k = 1; k < a.length; k++) {
+            double sum = 0.0;
+            for (int j = 1; j < k; j++) {
+                sum += j * result[j] * a[k - j];
+            }
+            result[k] = (a[k] - sum / k) / a[0];
+        }
+        return result;
+    }
+
+    public static double[] sin(double[] a) {
+        return sinCos(a, true);
+    }
+
+    public static double[] cos(double[] a) {
+        return sinCos(a, false);
+    }
+
+    /**
+     * Raises a series to a constant power
+     * @param a the base series
+     * @param power the exponent
+     * @return the series of a ^ power
+     */
+    public static double[] pow(double[] a, double power) {
+        if (power == 0.0) {
+            return constant(1.0, a.length - 1);
+        }
+        if (a[0] == 0.0) {
+            if (power > 0 && power == Math.rint(power) && power <= Integer.MAX_VALUE) {
+                // The recurrence divides by a[0], so expand whole powers by repeated squaring instead
+                return integerPower(a, (int) power);
+            }
+            return exp(scale(log(a), power));
+        }
+        double[] result = new double[a.length];
+        result[0] = Math.pow(a[0], power);
+        for (int k = 1; k < a.length; k++) {
+            double sum = 0.0;
+            for (int j = 1; j <= k; j++) {
+                sum += ((power + 1) * j - k) * a[j] * result[k - j];
+            }
+            result[k] = sum / (k * a[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Raises a series to a power that is itself a series, as exp(b * log(a))
+     * @param a the base series
+     * @param b the exponent series
+     * @return the series of a ^ b
+     */
+    public static double[] pow(double[] a, double[] b) {
+        for (int k = 1; k < b.length; k++) {
+            if (b[k] != 0.0) {
+                return exp(multiply(b, log(a)));
+            }
+        }
+        return pow(a, b[0]);
+    }
+
+    /**
+     * Converts Taylor coefficients into derivatives by multiplying the i-th coefficient by i!
+     * @param coefficients the Taylor coefficients
+     * @return the derivatives f(x), f'(x), ..., f^(k)(x)
+     */
+    public static double[] toDerivatives(double[] coefficients) {
+        double[] result = new double[coefficients.length];
+        double factorial = 1.0;
+        for (int k = 0; k < coefficients.length; k++) {
+            if (k > 0) {
+                factorial *= k;
+            }
+            result[k] = coefficients[k] * factorial;
+        }
+        return result;
+    }
+
+    private static double[] sinCos(double[] a, boolean wantSin) {
+        double[] s = new double[a.length];
+        double[] c = new double[a.length];
+        s[0] = Math.sin(a[0]);
+        c[0] = Math.cos(a[0]);
+        for (int k = 1; k < a.length; k++) {
+            double sinSum = 0.0;
+            double cosSum = 0.0;
+            for (int j = 1; j <= k; j++) {
+                sinSum += j * a[j] * c[k - j];
+                cosSum += j * a[j] * s[k - j];
+            }
+            s[k] = sinSum / k;
+            c[k] = -cosSum / k;
+        }
+        return wantSin ? s : c;
+    }
+
+    private static double[] scale(double[] a, double factor) {
+        double[] result = new double[a.length];
+        for (int k = 0; k < a.length; k++) {
+            result[k] = a[k] * factor;
+        }
+        return result;
+    }
+
+    private static double[] integerPower(double[] a, int power) {
+        double[] result = constant(1.0, a.length - 1);
+        double[] base = a;
+        while (power > 0) {
+            if ((power & 1) != 0) {
+                result = multiply(result, base);
+            }
+            power >>= 1;
+            if (power > 0) {
+                base = multiply(base, base);
+            }
+        }
+        return result;
+    }
+}
@@ -1,13 +1,26 @@
+/**
+ * The Trig class represents sin or cos of an operand function, chosen by name.
+ * Instances are immutable and safe to evaluate concurrently.
+ */
 public class Trig extends Function {
 
     private final String function;
     private final Function operand;
+    private int hash;
 
     public Trig(String function, Function operand) {
         this.function = function;
         this.operand = operand;
     }
 
+    public String getFunction() {
+        return function;
+    }
+
+    public Function getOperand() {
+        return operand;
+    }
+
     @Override
     public double value() {
         // This method will throw an UnsupportedOperationException as it requires an input value to evaluate the trigonometric function.
@@ -28,8 +41,87 @@ public class Trig extends Function {
     }
 
     @Override
-    public Function derivative() {
-        Function operandDerivative = operand.derivative();
+    public double value(double[] environment) {
+        double value = operand.value(environment);
+        switch (function.toLowerCase()) {
+            case "sin":
+                return Math.sin(value);
+            case "cos":
+                return Math.cos(value);
+            default:
+                throw new UnsupportedOperationException("Unsupported trigonometric function: " + function);
+        }
+    }
+
+    @Override
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        operand.valueBlock(inputs, outputs, length, evaluator);
+        switch (function.toLowerCase()) {
+            case "sin":
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = Math.sin(outputs[i]);
+                }
+                break;
+            case "cos":
+                for (int i = 0; i < length; i++) {
+                    outputs[i] = Math.cos(outputs[i]);
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported trigonometric function: " + function);
+        }
+    }
+
+    @Override
+    public Interval interval(Interval x) {
+        return range(operand.interval(x));
+    }
+
+    @Override
+    public Interval interval(Interval[] environment) {
+        return range(operand.interval(environment));
+    }
+
+    private Interval range(Interval value) {
+        switch (function.toLowerCase()) {
+            case "sin":
+                return value.sin();
+            case "cos":
+                return value.cos();
+            default:
+                throw new UnsupportedOperationException("Unsupported trigonometric function: " + function);
+        }
+    }
+
+    @Override
+    public Dual dual(double x) {
+        Dual value = operand.dual(x);
+        switch (function.toLowerCase()) {
+            case "sin":
+                return value.sin();
+            case "cos":
+                return value.cos();
+            default:
+                throw new UnsupportedOperationException("Unsupported trigonometric function: " + function);
+        }
+    }
+
+    @Override
+    public double[] taylor(double x, int order) {
+        double[] series = operand.taylor(x, order);
+        switch (function.toLowerCase()) {
+            case "sin":
+                return Taylor.sin(series);
+            case "cos":
+                return Taylor.cos(series);
+            default:
+                throw new UnsupportedOperationException("Unsupported trigonometric function: " + function);
+        }
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
+        Function operandDerivative = operand.derivative(slot);
         switch (function.toLowerCase()) {
             case "sin":
                 return new BinaryOp(BinaryOp.Operator.Multiply, new Trig("cos", operand), operandDerivative);
@@ -45,4 +137,26 @@ public class Trig extends Function {
     public String toString() {
         return function + "(" + operand.toString() + ")";
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof Trig) {
+            Trig trig = (Trig) obj;
+            return hashCode() == trig.hashCode() && function.equalsIgnoreCase(trig.function) && operand.equals(trig.operand);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * operand.hashCode() + function.toLowerCase().hashCode();
+            hash = h;
+        }
+        return h;
+    }
 }
@@ -1,16 +1,51 @@
 /**
- * The Variable class represents the variable "x"
+ * The Variable class represents a named input of a function, such as "x" or "y"
  * Variable Class is a subclass of function
+ * Each variable reads its value from a fixed slot of the environment array passed to value(double[]),
+ * so evaluation never looks a name up. The no-argument constructor creates "x", which has slot 0
+ * and is also the input of the single-argument value(x) and derivative()
+ * Name and slot are final, so it is safe to use from any thread
  * @author Jenny Zhang
  **/
 public class Variable extends Function{
 
+    private final String name;
+    private final int slot;
+    private int hash;
+
+    /**
+     * Constructs the variable "x" in slot 0
+     */
+    public Variable() {
+        this("x", 0);
+    }
+
+    /**
+     * Constructs a variable
+     * @param name the name shown by toString
+     * @param slot the index of the variable's value in an environment array
+     */
+    public Variable(String name, int slot) {
+        if (slot < 0) {
+            throw new IllegalArgumentException("Variable slot must not be negative: " + slot);
+        }
+        this.name = name;
+        this.slot = slot;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
 
     public String toString() {
-        return "x";
+        return name;
     }
 
- 
+
     @Override
     public double value() {
         throw new UnsupportedOperationException("Input expected.");
@@ -18,23 +53,82 @@ public class Variable extends Function{
 
     @Override
     public double value(double input) {
+        requireFirstSlot();
         return input;
     }
 
+    @Override
+    public double value(double[] environment) {
+        return environment[slot];
+    }
 
     @Override
-    public Function derivative() {
-        return new Number (1);
+    void valueBlock(double[] inputs, double[] outputs, int length, BatchEvaluator evaluator) {
+        if (slot == 0) {
+            System.arraycopy(inputs, 0, outputs, 0, length);
+        } else {
+            evaluator.variableBlock(this, outputs, length);
+        }
     }
 
-  
-    public boolean equals(Object obj) {
-        return obj instanceof Variable;
+    @Override
+    public Interval interval(Interval x) {
+        requireFirstSlot();
+        return x;
     }
 
+    @Override
+    public Interval interval(Interval[] environment) {
+        return environment[slot];
+    }
 
-}
+    @Override
+    public Dual dual(double x) {
+        requireFirstSlot();
+        return Dual.variable(x);
+    }
+
+    @Override
+    public double[] taylor(double x, int order) {
+        requireFirstSlot();
+        return Taylor.variable(x, order);
+    }
+
+    @Override
+    protected Function differentiate(int slot) {
+        return new Number (slot == this.slot ? 1 : 0);
+    }
 
+    /**
+     * Single-input evaluation binds its argument to slot 0; other variables need an environment
+     */
+    private void requireFirstSlot() {
+        if (slot != 0) {
+            throw new UnsupportedOperationException("Variable " + name + " needs an environment to be evaluated");
+        }
+    }
+
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof Variable) {
+            Variable variable = (Variable) obj;
+            return slot == variable.slot && name.equals(variable.name);
+        }
+        return false;
+    }
 
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * name.hashCode() + slot;
+            hash = h;
+        }
+        return h;
+    }
 
 
+}
@@ -0,0 +1,51 @@
+import calculator.bench.Workload;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Implements the benchmark Workload on top of the calculator classes in the unnamed package
+ */
+public class CalculatorWorkload implements Workload {
+
+    private final BatchEvaluator evaluator = new BatchEvaluator();
+
+    @Override
+    public Object parse(String expression) {
+        return ExpressionParser.parse(expression);
+    }
+
+    @Override
+    public Object derivative(Object function) {
+        return ((Function) function).derivative();
+    }
+
+    @Override
+    public Object compile(Object function) {
+        return FunctionCompiler.compile((Function) function);
+    }
+
+    @Override
+    public double value(Object function, double x) {
+        return ((Function) function).value(x);
+    }
+
+    @Override
+    public double valueCompiled(Object compiled, double x) {
+        return ((DoubleUnaryOperator) compiled).applyAsDouble(x);
+    }
+
+    @Override
+    public void valueBatch(Object function, double[] inputs, double[] outputs) {
+        evaluator.evaluate((Function) function, inputs, outputs);
+    }
+
+    @Override
+    public long countNodes(Object function) {
+        return ExpressionCache.countNodes((Function) function);
+    }
+
+    @Override
+    public void setSimplifyDerivatives(boolean simplify) {
+        Function.setSimplifyDerivatives(simplify);
+    }
+}
@@ -0,0 +1,83 @@
+package calculator.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The fixed set of expressions in corpus.txt that the benchmarks run on
+ */
+public final class Corpus {
+
+    private static final Map<String, String> EXPRESSIONS = load();
+
+    private Corpus() {
+    }
+
+    /**
+     * Returns the expression stored under the given name
+     * @param name the name of the expression in corpus.txt
+     * @return the expression text
+     */
+    public static String get(String name) {
+        String expression = EXPRESSIONS.get(name);
+        if (expression == null) {
+            throw new IllegalArgumentException("No expression named " + name + " in corpus.txt");
+        }
+        return expression;
+    }
+
+    /**
+     * Returns every expression in the corpus, in file order
+     * @return the map from name to expression text
+     */
+    public static Map<String, String> all() {
+        return EXPRESSIONS;
+    }
+
+    /**
+     * Builds an expression of the given nesting depth by wrapping x in alternating sin, cos, exp and log calls
+     * with some arithmetic at each level
+     * @param depth the number of nested calls
+     * @return the expression text
+     */
+    public static String nested(int depth) {
+        String[] functions = {"sin", "cos", "exp", "log"};
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            expression.append(functions[i % functions.length]).append("(x + ");
+        }
+        expression.append("x");
+        for (int i = 0; i < depth; i++) {
+            expression.append(" * 0.5)");
+        }
+        return expression.toString();
+    }
+
+    private static Map<String, String> load() {
+        Map<String, String> expressions = new LinkedHashMap<>();
+        InputStream stream = Corpus.class.getResourceAsStream("/corpus.txt");
+        if (stream == null) {
+            throw new IllegalStateException("corpus.txt is missing from the classpath");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int separator = line.indexOf('=');
+                expressions.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return expressions;
+    }
+}
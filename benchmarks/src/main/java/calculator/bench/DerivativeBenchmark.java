@@ -0,0 +1,66 @@
+package calculator.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of differentiating an expression up to a given order and how fast the tree grows.
+ * Nodes cache their derivatives, so every invocation parses a fresh tree first;
+ * the tree sizes per order are printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DerivativeBenchmark {
+
+    @Param({"rational", "trig", "damped", "composite"})
+    public String expression;
+
+    @Param({"1", "2", "3", "4"})
+    public int order;
+
+    @Param({"true", "false"})
+    public boolean simplify;
+
+    private Workload workload;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.get();
+        workload.setSimplifyDerivatives(simplify);
+        text = Corpus.get(expression);
+
+        Object function = workload.parse(text);
+        StringBuilder sizes = new StringBuilder("nodes per order for " + expression + ":");
+        sizes.append(' ').append(workload.countNodes(function));
+        for (int k = 0; k < order; k++) {
+            function = workload.derivative(function);
+            sizes.append(' ').append(workload.countNodes(function));
+        }
+        System.out.println(sizes);
+    }
+
+    @Benchmark
+    public Object differentiate() {
+        Object function = workload.parse(text);
+        for (int k = 0; k < order; k++) {
+            function = workload.derivative(function);
+        }
+        return function;
+    }
+}
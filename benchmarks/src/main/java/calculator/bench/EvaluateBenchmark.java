@@ -0,0 +1,74 @@
+package calculator.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares scalar tree walks, compiled evaluation and batch evaluation over a block of inputs.
+ * Run with -prof gc to see the allocation rate of each mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluateBenchmark {
+
+    @Param({"polynomial", "sin", "exp", "log", "damped", "composite"})
+    public String expression;
+
+    @Param({"4096"})
+    public int points;
+
+    private Workload workload;
+    private Object function;
+    private Object compiled;
+    private double[] inputs;
+    private double[] outputs;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.get();
+        function = workload.parse(Corpus.get(expression));
+        compiled = workload.compile(function);
+        inputs = new double[points];
+        outputs = new double[points];
+        for (int i = 0; i < points; i++) {
+            inputs[i] = 0.1 + 4.0 * i / points;
+        }
+    }
+
+    @Benchmark
+    public double[] scalar() {
+        for (int i = 0; i < inputs.length; i++) {
+            outputs[i] = workload.value(function, inputs[i]);
+        }
+        return outputs;
+    }
+
+    @Benchmark
+    public double[] compiled() {
+        for (int i = 0; i < inputs.length; i++) {
+            outputs[i] = workload.valueCompiled(compiled, inputs[i]);
+        }
+        return outputs;
+    }
+
+    @Benchmark
+    public double[] batch() {
+        workload.valueBatch(function, inputs, outputs);
+        return outputs;
+    }
+}
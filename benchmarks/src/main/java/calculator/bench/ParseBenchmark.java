@@ -0,0 +1,54 @@
+package calculator.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing throughput as expressions get more deeply nested, and over the whole corpus
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"1", "8", "64", "512"})
+    public int depth;
+
+    private Workload workload;
+    private String nested;
+    private String[] corpus;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.get();
+        nested = Corpus.nested(depth);
+        corpus = Corpus.all().values().toArray(new String[0]);
+    }
+
+    @Benchmark
+    public Object parseNested() {
+        return workload.parse(nested);
+    }
+
+    @Benchmark
+    public void parseCorpus(Blackhole blackhole) {
+        for (String expression : corpus) {
+            blackhole.consume(workload.parse(expression));
+        }
+    }
+}
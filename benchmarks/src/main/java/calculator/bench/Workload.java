@@ -0,0 +1,39 @@
+package calculator.bench;
+
+/**
+ * The operations the benchmarks measure.
+ * The calculator classes live in the unnamed package, which code in a named package such as this one
+ * cannot refer to, while JMH requires benchmarks to be in a named package. CalculatorWorkload in the
+ * unnamed package implements this interface, and the benchmarks reach the library through it.
+ * There is only one implementation, so the JIT inlines these calls.
+ */
+public interface Workload {
+
+    /**
+     * Creates the workload implemented by CalculatorWorkload; each benchmark state calls this once in its setup
+     * @return a new workload instance
+     */
+    static Workload get() {
+        try {
+            return (Workload) Class.forName("CalculatorWorkload").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("CalculatorWorkload is missing from the classpath", e);
+        }
+    }
+
+    Object parse(String expression);
+
+    Object derivative(Object function);
+
+    Object compile(Object function);
+
+    double value(Object function, double x);
+
+    double valueCompiled(Object compiled, double x);
+
+    void valueBatch(Object function, double[] inputs, double[] outputs);
+
+    long countNodes(Object function);
+
+    void setSimplifyDerivatives(boolean simplify);
+}
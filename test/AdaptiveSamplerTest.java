@@ -0,0 +1,187 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that adaptive plots stay close to the curve with far fewer evaluations than one per pixel,
+ * and that they break at poles and skip ranges where the function is undefined.
+ * @author Jenny Zhang
+ */
+public class AdaptiveSamplerTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    private final AdaptiveSampler sampler = new AdaptiveSampler();
+
+    @Test
+    public void smoothCurvesStayWithinTheTolerance() {
+        String[] expressions = {"sin(exp(x))", "sin(x)", "x^3 - 2*x", "exp(-x^2)", "log(x)"};
+        double[][] views = {{-2, 3, -1.5, 1.5}, {-10, 10, -1.5, 1.5}, {-2, 2, -4, 4}, {-3, 3, -0.2, 1.2}, {0.05, 4, -3, 2}};
+        for (int i = 0; i < expressions.length; i++) {
+            Function function = ExpressionParser.parse(expressions[i]);
+            double[] view = views[i];
+            AdaptiveSampler.Polyline plot = sampler.sample(function, view[0], view[1], view[2], view[3], WIDTH, HEIGHT);
+            assertEquals(0, gaps(plot), expressions[i]);
+            assertTrue(maxError(function, plot, view) <= 2 * sampler.getTolerance(), expressions[i]);
+        }
+    }
+
+    /**
+     * Compares the evaluations with the number of evenly spaced points that reach the same largest error
+     */
+    @Test
+    public void needsAnOrderOfMagnitudeFewerEvaluationsThanUniformSampling() {
+        String[] expressions = {"sin(exp(x))", "log(x)", "sin(1/x)"};
+        double[][] views = {{0, 5, -1.2, 1.2}, {0.001, 10, -7, 3}, {0.05, 1, -1.2, 1.2}};
+        for (int i = 0; i < expressions.length; i++) {
+            Function function = ExpressionParser.parse(expressions[i]);
+            double[] view = views[i];
+            AdaptiveSampler.Polyline plot = sampler.sample(function, view[0], view[1], view[2], view[3], WIDTH, HEIGHT);
+            double error = Math.max(sampler.getTolerance(), maxError(function, plot, view));
+            int uniform = uniformPointsFor(function, view, error);
+            assertTrue(plot.getEvaluations() * 10 <= uniform,
+                    expressions[i] + " took " + plot.getEvaluations() + " evaluations against " + uniform + " uniform points");
+        }
+    }
+
+    @Test
+    public void undefinedRangesBecomeOneGap() {
+        Function log = ExpressionParser.parse("log(x)");
+        AdaptiveSampler.Polyline plot = sampler.sample(log, -4, -1, -3, 3, WIDTH, HEIGHT);
+        assertTrue(plot.getEvaluations() * 10 <= WIDTH, plot.getEvaluations() + " evaluations");
+        assertTrue(plot.size() <= 3, plot.size() + " points");
+        for (int i = 0; i < plot.size(); i++) {
+            assertTrue(Double.isNaN(plot.getY(i)));
+        }
+
+        plot = sampler.sample(log, -4, 4, -3, 3, WIDTH, HEIGHT);
+        assertTrue(plot.getEvaluations() * 5 <= WIDTH, plot.getEvaluations() + " evaluations");
+        for (int i = 0; i < plot.size(); i++) {
+            assertEquals(plot.getX(i) <= 0, !isFinite(plot.getY(i)), "at " + plot.getX(i));
+        }
+    }
+
+    @Test
+    public void polesBetweenGridPointsBreakTheLine() {
+        // 0.3 and pi/2 are not points of the initial grid
+        checkPoles(ExpressionParser.parse("1/(x-0.3)"), -1, 1, -5, 5, new double[] {0.3});
+        checkPoles(ExpressionParser.parse("-2/(x+0.55)"), -1, 1, -5, 5, new double[] {-0.55});
+        double half = Math.PI / 2;
+        checkPoles(ExpressionParser.parse("sin(x)/cos(x)"), -5, 5, -5, 5, new double[] {-3 * half, -half, half, 3 * half});
+    }
+
+    @Test
+    public void evenPolesNeedNoGap() {
+        Function function = ExpressionParser.parse("1/(x-0.3)^2");
+        double[] view = {-1, 1, -1, 10};
+        AdaptiveSampler.Polyline plot = sampler.sample(function, view[0], view[1], view[2], view[3], WIDTH, HEIGHT);
+        assertCloseToCurve(function, plot, view);
+    }
+
+    /**
+     * Checks that every pole has a gap next to it, that no segment crosses a pole, and that the rest follows the curve
+     */
+    private void checkPoles(Function function, double a, double b, double yMin, double yMax, double[] poles) {
+        double[] view = {a, b, yMin, yMax};
+        AdaptiveSampler.Polyline plot = sampler.sample(function, a, b, yMin, yMax, WIDTH, HEIGHT);
+        assertEquals(poles.length, gaps(plot), function.toString());
+        for (double pole : poles) {
+            boolean gapNearby = false;
+            for (int i = 0; i + 1 < plot.size(); i++) {
+                if (plot.getX(i) < pole && pole < plot.getX(i + 1)) {
+                    assertFalse(isFinite(plot.getY(i)) && isFinite(plot.getY(i + 1)),
+                            "segment from " + plot.getX(i) + " to " + plot.getX(i + 1) + " crosses the pole at " + pole);
+                }
+                if (!isFinite(plot.getY(i)) && Math.abs(plot.getX(i) - pole) < 1e-3) {
+                    gapNearby = true;
+                }
+            }
+            assertTrue(gapNearby, "no gap at " + pole);
+        }
+        assertCloseToCurve(function, plot, view);
+    }
+
+    private void assertCloseToCurve(Function function, AdaptiveSampler.Polyline plot, double[] view) {
+        double error = maxError(function, plot, view);
+        assertTrue(error <= 2 * sampler.getTolerance(), function + " strays " + error + " pixels from the polyline");
+    }
+
+    /**
+     * Returns the largest distance in pixels between the curve and the segments that lie inside the view,
+     * measured at eight points along each segment
+     */
+    private static double maxError(Function function, AdaptiveSampler.Polyline plot, double[] view) {
+        return maxError(function, plot.getXs(), plot.getYs(), view);
+    }
+
+    private static double maxError(Function function, double[] xs, double[] ys, double[] view) {
+        double xScale = WIDTH / (view[1] - view[0]);
+        double yScale = HEIGHT / (view[3] - view[2]);
+        double error = 0.0;
+        for (int i = 0; i + 1 < xs.length; i++) {
+            double x0 = (xs[i] - view[0]) * xScale;
+            double x1 = (xs[i + 1] - view[0]) * xScale;
+            double y0 = (ys[i] - view[2]) * yScale;
+            double y1 = (ys[i + 1] - view[2]) * yScale;
+            if (!isFinite(y0) || !isFinite(y1) || Math.min(y0, y1) < 0 || Math.max(y0, y1) > HEIGHT) {
+                continue;
+            }
+            double length = Math.hypot(x1 - x0, y1 - y0);
+            for (int k = 1; k < 8; k++) {
+                double x = xs[i] + k / 8.0 * (xs[i + 1] - xs[i]);
+                double px = (x - view[0]) * xScale;
+                double py = (function.value(x) - view[2]) * yScale;
+                error = Math.max(error, Math.abs((x1 - x0) * (py - y0) - (px - x0) * (y1 - y0)) / length);
+            }
+        }
+        return error;
+    }
+
+    /**
+     * Returns the fewest evenly spaced points whose polyline stays within the given error, found by bisection
+     */
+    private static int uniformPointsFor(Function function, double[] view, double error) {
+        int low = 2;
+        int high = 2;
+        while (uniformError(function, view, high) > error) {
+            low = high;
+            high *= 2;
+        }
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (uniformError(function, view, middle) > error) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+
+    private static double uniformError(Function function, double[] view, int points) {
+        double[] xs = new double[points];
+        double[] ys = new double[points];
+        for (int i = 0; i < points; i++) {
+            xs[i] = view[0] + (view[1] - view[0]) * i / (points - 1);
+            ys[i] = function.value(xs[i]);
+        }
+        return maxError(function, xs, ys, view);
+    }
+
+    private static int gaps(AdaptiveSampler.Polyline plot) {
+        int gaps = 0;
+        for (int i = 0; i < plot.size(); i++) {
+            if (Double.isNaN(plot.getY(i))) {
+                gaps++;
+            }
+        }
+        return gaps;
+    }
+
+    private static boolean isFinite(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+}
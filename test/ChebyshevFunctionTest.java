@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that ChebyshevFunction surrogates stay within their tolerance, including across kinks,
+ * and that their derivatives follow the source's derivative.
+ * @author Jenny Zhang
+ */
+public class ChebyshevFunctionTest {
+
+    private static final int SAMPLES = 20_001;
+
+    @Test
+    public void smoothFunctionsStayWithinTheTolerance() {
+        for (String text : new String[] {"exp(sin(x))", "log(x + 2)", "x^7 - 3*x^2", "sin(20*x)*cos(x)"}) {
+            Function function = ExpressionParser.parse(text);
+            ChebyshevFunction surrogate = ChebyshevFunction.approximate(function, -1.0, 1.0, 1e-9);
+            assertTrue(surrogate.getMaxError() <= 1e-9, text);
+            assertWithin(text, function, surrogate, -1.0, 1.0, 1e-9);
+        }
+    }
+
+    /**
+     * A kink off the dyadic points needs pieces about 1e-4 wide next to it, narrower than 12 halvings give
+     */
+    @Test
+    public void kinksAreApproximatedByNarrowPieces() {
+        Function function = ExpressionParser.parse("sqrt((x-0.3)^2)");
+        ChebyshevFunction surrogate = ChebyshevFunction.approximate(function, -1.0, 1.0, 1e-6);
+        assertWithin("kink", function, surrogate, -1.0, 1.0, 1e-6);
+        assertTrue(surrogate.getPieceCount() < 200, "pieces: " + surrogate.getPieceCount());
+        assertEquals(0.0, surrogate.value(0.3), 1e-6);
+    }
+
+    @Test
+    public void jumpsAndPolesAreRejected() {
+        Function step = new BinaryOp(BinaryOp.Operator.Divide, ExpressionParser.parse("sqrt((x-0.3)^2)"),
+                ExpressionParser.parse("x-0.3"));
+        assertThrows(IllegalArgumentException.class, () -> ChebyshevFunction.approximate(step, -1.0, 1.0, 1e-6));
+        assertThrows(IllegalArgumentException.class,
+                () -> ChebyshevFunction.approximate(ExpressionParser.parse("1/x"), -1.0, 1.0, 1e-6));
+    }
+
+    @Test
+    public void derivativeFollowsTheSourceDerivative() {
+        Function function = ExpressionParser.parse("exp(sin(x))");
+        ChebyshevFunction surrogate = ChebyshevFunction.approximate(function, -2.0, 2.0, 1e-10);
+        Function derivative = surrogate.derivative();
+        assertTrue(derivative instanceof ChebyshevFunction);
+        assertEquals(1, ((ChebyshevFunction) derivative).getOrder());
+        // The derivative is not checked; its error grows by about the degree squared
+        double bound = 1e-10 * surrogate.getDegree() * surrogate.getDegree() * 10;
+        assertWithin("derivative", function.derivative(), derivative, -2.0, 2.0, bound);
+        for (double x = -2.0; x <= 2.0; x += 0.125) {
+            assertEquals(derivative.value(x), surrogate.dual(x).getDerivative(), 1e-12, "dual at " + x);
+        }
+    }
+
+    @Test
+    public void valuesOutsideTheDomainAreUndefined() {
+        ChebyshevFunction surrogate = ChebyshevFunction.approximate(ExpressionParser.parse("cos(x)"), 0.0, 1.0, 1e-8);
+        assertTrue(Double.isNaN(surrogate.value(-0.01)));
+        assertTrue(Double.isNaN(surrogate.value(1.01)));
+        assertEquals(1.0, surrogate.value(0.0), 1e-8);
+        assertEquals(Math.cos(1.0), surrogate.value(1.0), 1e-8);
+    }
+
+    private static void assertWithin(String name, Function expected, Function actual, double a, double b, double tolerance) {
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = a + (b - a) * i / (SAMPLES - 1);
+            assertEquals(expected.value(x), actual.value(x), tolerance, name + " at " + x);
+        }
+    }
+}
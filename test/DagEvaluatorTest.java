@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that evaluating several functions over one merged DAG gives each function's own value,
+ * including when Sin, Cos and Trig nodes of the same operand are fused into one sincos,
+ * and that the reverse-mode gradient matches the symbolic partial derivatives.
+ * @author Jenny Zhang
+ */
+public class DagEvaluatorTest {
+
+    private static final double[] POINTS = {-7.5, -2.0, -0.3, 0.0, 0.3, 0.7, 1.0, 2.5, 12.0, 1e6};
+
+    private static final Variable X = new Variable();
+
+    @Test
+    public void valuesMatchEachOutputForMixedTrigNodes() {
+        check(DagEvaluator.withDerivatives(new BinaryOp(BinaryOp.Operator.Multiply, new Trig("sin", X), new Sin(X)), 2));
+        check(new DagEvaluator(new BinaryOp(BinaryOp.Operator.Add,
+                new BinaryOp(BinaryOp.Operator.Add, new Sin(X), new Cos(X)), new Trig("cos", X))));
+        check(new DagEvaluator(new BinaryOp(BinaryOp.Operator.Multiply,
+                new BinaryOp(BinaryOp.Operator.Add, new Trig("sin", X), new Trig("cos", X)),
+                new BinaryOp(BinaryOp.Operator.Subtract, new Cos(X), new Sin(X)))));
+    }
+
+    @Test
+    public void valuesMatchEachOutputForDerivatives() {
+        Function inner = new BinaryOp(BinaryOp.Operator.Multiply, new Number(2.0), X);
+        check(DagEvaluator.withDerivatives(new BinaryOp(BinaryOp.Operator.Multiply, new Sin(X), new Exp(new Cos(X))), 3));
+        check(DagEvaluator.withDerivatives(new BinaryOp(BinaryOp.Operator.Divide, new Trig("sin", inner),
+                new BinaryOp(BinaryOp.Operator.Add, new Number(2.0), new Trig("cos", X))), 3));
+        check(DagEvaluator.withDerivatives(new Polynomial(new Cos(new Sin(X)), 3), 2));
+    }
+
+    @Test
+    public void valuesMatchEachOutputForSeparateFunctions() {
+        check(new DagEvaluator(new Sin(X), new Trig("cos", X), new Cos(X), new Trig("sin", X),
+                new BinaryOp(BinaryOp.Operator.Power, new Sin(X), new Number(2.0))));
+    }
+
+    /**
+     * Compares the reverse-mode gradient with the symbolic partial derivatives, for nodes with their own
+     * adjoint rule and for a node the tape only knows through its symbolic gradient
+     */
+    @Test
+    public void gradientMatchesSymbolicPartials() {
+        Variable y = new Variable("y", 1);
+        Variable z = new Variable("z", 2);
+        Function xy = new BinaryOp(BinaryOp.Operator.Multiply, X, y);
+        checkGradient(new BinaryOp(BinaryOp.Operator.Power, X, new BinaryOp(BinaryOp.Operator.Add, y, new Sin(z))));
+        checkGradient(new BinaryOp(BinaryOp.Operator.Power, new Exp(y), xy));
+        checkGradient(new Log(new BinaryOp(BinaryOp.Operator.Add, xy, new BinaryOp(BinaryOp.Operator.Divide, new Polynomial(z, 2), X))));
+        checkGradient(new BinaryOp(BinaryOp.Operator.Multiply, new DensePolynomial(y, 1.0, -2.0, 0.5, 0.25),
+                new Polynomial(new BinaryOp(BinaryOp.Operator.Subtract, X, z), 3)));
+        checkGradient(new BinaryOp(BinaryOp.Operator.Add,
+                new BinaryOp(BinaryOp.Operator.Multiply, ChebyshevFunction.approximate(new Exp(new Cos(X)), 0.0, 4.0, 1e-10), y),
+                new Cos(new BinaryOp(BinaryOp.Operator.Multiply, z, z))));
+    }
+
+    private static void checkGradient(Function function) {
+        DagEvaluator evaluator = new DagEvaluator(function);
+        double[][] environments = {{0.5, 0.25, -1.0}, {1.5, 0.75, -0.5}, {3.0, 1.25, 2.0}};
+        double[] gradient = new double[3];
+        for (double[] environment : environments) {
+            double value = evaluator.gradient(environment, gradient);
+            assertEquals(function.value(environment), value, 1e-12 * Math.max(1.0, Math.abs(value)), function.toString());
+            for (int slot = 0; slot < gradient.length; slot++) {
+                double expected = function.derivative(slot).value(environment);
+                assertEquals(expected, gradient[slot], 1e-10 * Math.max(1.0, Math.abs(expected)),
+                        "partial " + slot + " of " + function + " at " + Arrays.toString(environment));
+            }
+        }
+    }
+
+    /**
+     * Compares every output of values with the value of that output's own function
+     */
+    private static void check(DagEvaluator evaluator) {
+        double[] outputs = new double[evaluator.getOutputCount()];
+        for (double x : POINTS) {
+            evaluator.values(x, outputs);
+            for (int k = 0; k < outputs.length; k++) {
+                double expected = evaluator.getFunction(k).value(x);
+                assertEquals(expected, outputs[k], 1e-12 * Math.max(1.0, Math.abs(expected)),
+                        "output " + k + " of " + evaluator.getFunction(0) + " at " + x);
+            }
+            assertEquals(outputs[0], evaluator.value(x), 0.0);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks which expressions the parser and Simplifier store as a DensePolynomial, and that doing so keeps their values.
+ * @author Jenny Zhang
+ */
+public class DensePolynomialTest {
+
+    @Test
+    public void collectsSumsOfMonomials() {
+        Function function = ExpressionParser.parse("3*x^4 + 2*x^2 - x");
+        assertTrue(function instanceof DensePolynomial, function.toString());
+        assertEquals(3 * 16 + 2 * 4 - 2, function.value(2.0), 0.0);
+        assertTrue(ExpressionParser.parse("x/2 + x^3 - 4") instanceof DensePolynomial);
+    }
+
+    @Test
+    public void keepsPowersAndProductsOfSumsFactored() {
+        for (String text : new String[] {"(x-1)^10", "(x+1)*(x-1)", "2*(x+1)", "x*(x^2 - 1) + 1", "(x^2 + 1)^2"}) {
+            Function parsed = ExpressionParser.parse(text);
+            assertFalse(parsed instanceof DensePolynomial, text);
+            assertFalse(Simplifier.simplify(parsed) instanceof DensePolynomial, text);
+        }
+    }
+
+    @Test
+    public void parsingAndSimplifyingKeepAccuracyNearARoot() {
+        Function parsed = ExpressionParser.parse("(x-1)^10");
+        Function simplified = Simplifier.simplify(parsed);
+        for (double x : new double[] {1.05, 1.001, 0.99}) {
+            double expected = Math.pow(x - 1, 10);
+            assertEquals(expected, parsed.value(x), 1e-12 * expected);
+            assertEquals(expected, simplified.value(x), 1e-12 * expected);
+        }
+    }
+
+    @Test
+    public void expandsOnExplicitRequest() {
+        DensePolynomial expanded = DensePolynomial.of(ExpressionParser.parse("(x+1)^3"));
+        assertEquals(3, expanded.getDegree());
+        assertEquals(3.0, expanded.getCoefficient(1), 0.0);
+        assertEquals(27.0, expanded.value(2.0), 0.0);
+    }
+}
@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the cache accepts exactly the text the parser accepts and shares entries across surrounding whitespace.
+ * @author Jenny Zhang
+ */
+public class ExpressionCacheTest {
+
+    @Test
+    public void rejectsWhatTheParserRejects() {
+        ExpressionCache cache = new ExpressionCache(1000);
+        for (String text : new String[] {"1 2", "s in(x)", "2 .5", "x ^ ^ 2"}) {
+            assertThrows(ExpressionParseException.class, () -> ExpressionParser.parse(text), text);
+            assertThrows(ExpressionParseException.class, () -> cache.parse(text), text);
+            assertThrows(ExpressionParseException.class, () -> cache.derivative(text, 1), text);
+        }
+    }
+
+    @Test
+    public void reportsPositionsInTheOriginalText() {
+        ExpressionCache cache = new ExpressionCache(1000);
+        ExpressionParseException expected = assertThrows(ExpressionParseException.class, () -> ExpressionParser.parse("  1 2"));
+        ExpressionParseException actual = assertThrows(ExpressionParseException.class, () -> cache.parse("  1 2"));
+        assertEquals(expected.getPosition(), actual.getPosition());
+    }
+
+    @Test
+    public void sharesEntriesAcrossSurroundingWhitespace() {
+        ExpressionCache cache = new ExpressionCache(1000);
+        Function function = cache.parse("sin(x) * x");
+        assertSame(function, cache.parse("  sin(x) * x\t"));
+        assertEquals(1, cache.getHits());
+        assertEquals(ExpressionParser.parse("sin(x)*x"), cache.parse("sin(x)*x"));
+    }
+
+    @Test
+    public void countsOneLookupPerCall() {
+        ExpressionCache cache = new ExpressionCache(1000);
+        cache.derivative("x^3", 2);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        cache.compiled("x^3", 1);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        cache.derivative("x^3", 1);
+        cache.compiled("x^3", 1);
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+}
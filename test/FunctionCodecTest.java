@@ -0,0 +1,313 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that functions written by FunctionCodec read back equal, both from buffers and through files,
+ * that libraries written by every earlier version still read, and that corrupt data is rejected.
+ * @author Jenny Zhang
+ */
+public class FunctionCodecTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * 20,000 coefficients take 160,000 bytes, more than the buffer the channel writer streams through
+     */
+    @Test
+    public void writesDensePolynomialsLargerThanTheChannelBuffer() throws IOException {
+        double[] coefficients = new double[20_000];
+        for (int k = 0; k < coefficients.length; k++) {
+            coefficients[k] = 1.0 / (k + 1);
+        }
+        DensePolynomial polynomial = new DensePolynomial(coefficients);
+        Function function = new BinaryOp(BinaryOp.Operator.Add, new Sin(new Variable()), polynomial);
+        Path file = directory.resolve("large.calc");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FunctionCodec.write(Collections.singletonList(function), channel);
+        }
+        assertEquals(FunctionCodec.encodedSize(Collections.singletonList(function)), Files.size(file));
+        ExpressionLibrary library = ExpressionLibrary.open(file);
+        assertEquals(function, library.get(0));
+        assertEquals(function.value(0.5), library.get(0).value(0.5), 0.0);
+    }
+
+    @Test
+    public void roundTripsKeepSharing() {
+        Variable x = new Variable();
+        Variable y = new Variable("y", 1);
+        Function shared = new Sin(new BinaryOp(BinaryOp.Operator.Multiply, x, y));
+        List<Function> functions = Arrays.asList(
+                new BinaryOp(BinaryOp.Operator.Add, shared, new Polynomial(shared, 3)),
+                new BinaryOp(BinaryOp.Operator.Power, new Exp(shared), new Log(x)),
+                new BinaryOp(BinaryOp.Operator.Subtract, new Trig("cos", y), new DensePolynomial(y, 1.0, 0.5, -2.0)),
+                new Cos(new BinaryOp(BinaryOp.Operator.Divide, new Number(3.0), x)));
+        ByteBuffer buffer = ByteBuffer.allocate((int) FunctionCodec.encodedSize(functions));
+        FunctionCodec.write(functions, buffer);
+        assertEquals(0, buffer.remaining());
+        buffer.flip();
+        ExpressionLibrary library = ExpressionLibrary.wrap(buffer);
+        assertEquals(functions, library.getAll());
+        // x, y, x*y, its sine, 3, the polynomial, the sum, exp, log, the power, cos y, the dense polynomial,
+        // their difference, 3 / x and its cosine
+        assertEquals(15, library.getNodeCount());
+        Function first = library.get(0);
+        Function second = library.get(1);
+        assertSame(((BinaryOp) first).getLeftOperand(), ((Exp) ((BinaryOp) second).getLeftOperand()).getOperand());
+    }
+
+    /**
+     * Encoding and decoding walk the tree with work stacks, so nesting far deeper than the call stack allows round-trips
+     */
+    @Test
+    public void roundTripsDeeplyNestedFunctions() {
+        int depth = 50_000;
+        Function chain = new Variable();
+        for (int i = 0; i < depth; i++) {
+            chain = i % 2 == 0 ? new Sin(chain) : new BinaryOp(BinaryOp.Operator.Add, chain, new Number(i));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) FunctionCodec.encodedSize(Collections.singletonList(chain)));
+        FunctionCodec.write(chain, buffer);
+        buffer.flip();
+        ExpressionLibrary library = ExpressionLibrary.wrap(buffer);
+        // Starting from the root rather than getAll makes the decoder itself follow the chain down
+        Function decoded = library.get(0);
+        for (int i = depth - 1; i >= 0; i--) {
+            if (i % 2 == 0) {
+                assertTrue(decoded instanceof Sin, "level " + i);
+                decoded = ((Sin) decoded).getOperand();
+            } else {
+                assertTrue(decoded instanceof BinaryOp, "level " + i);
+                assertEquals(i, ((Number) ((BinaryOp) decoded).getRightOperand()).getValue(), 0.0);
+                decoded = ((BinaryOp) decoded).getLeftOperand();
+            }
+        }
+        assertTrue(decoded instanceof Variable);
+    }
+
+    /**
+     * Version 1 stored variables as a bare tag, all of them x
+     */
+    @Test
+    public void readsVersionOneLibraries() {
+        Library data = new Library(1);
+        int x = data.node(FunctionCodec.VARIABLE);
+        int two = data.number(2.0);
+        int product = data.binary(BinaryOp.Operator.Multiply, x, two);
+        data.root(data.unary(FunctionCodec.SIN, product));
+        Function expected = new Sin(new BinaryOp(BinaryOp.Operator.Multiply, new Variable(), new Number(2.0)));
+        assertEquals(expected, FunctionCodec.read(data.toBuffer()));
+    }
+
+    @Test
+    public void readsVersionTwoLibraries() {
+        Library data = new Library(2);
+        int y = data.variable("y", 1);
+        int power = data.polynomial(y, 2.0);
+        data.root(data.unary(FunctionCodec.EXP, power));
+        data.root(data.trig("cos", y));
+        List<Function> functions = FunctionCodec.readAll(data.toBuffer());
+        Variable expectedY = new Variable("y", 1);
+        assertEquals(Arrays.asList(new Exp(new Polynomial(expectedY, 2.0)), new Trig("cos", expectedY)), functions);
+    }
+
+    @Test
+    public void readsVersionThreeLibraries() {
+        Library data = new Library(3);
+        int x = data.variable("x", 0);
+        data.root(data.dense(x, 1.0, -1.0, 0.5));
+        assertEquals(new DensePolynomial(1.0, -1.0, 0.5), FunctionCodec.read(data.toBuffer()));
+
+        Library older = new Library(2);
+        older.root(older.dense(older.variable("x", 0), 1.0, 2.0));
+        assertCorrupt(older.toBuffer());
+    }
+
+    @Test
+    public void rejectsCorruptData() {
+        ByteBuffer valid = encode(new Sin(new BinaryOp(BinaryOp.Operator.Add, new Variable(), new Number(1.0))));
+
+        ByteBuffer magic = copy(valid);
+        magic.putInt(0, 0x12345678);
+        assertThrows(IllegalArgumentException.class, () -> ExpressionLibrary.wrap(magic));
+
+        ByteBuffer version = copy(valid);
+        version.putInt(4, FunctionCodec.VERSION + 1);
+        assertThrows(IllegalArgumentException.class, () -> ExpressionLibrary.wrap(version));
+
+        assertThrows(IllegalArgumentException.class, () -> ExpressionLibrary.wrap(ByteBuffer.wrap(new byte[12])));
+        ByteBuffer truncated = copy(valid);
+        truncated.limit(truncated.limit() - 1);
+        assertThrows(IllegalArgumentException.class, () -> ExpressionLibrary.wrap(truncated));
+
+        ByteBuffer negative = copy(valid);
+        negative.putInt(8, -1);
+        assertThrows(IllegalArgumentException.class, () -> ExpressionLibrary.wrap(negative));
+
+        Library forward = new Library(3);
+        forward.root(forward.unary(FunctionCodec.SIN, 1));
+        forward.number(1.0);
+        assertCorrupt(forward.toBuffer());
+
+        Library self = new Library(3);
+        self.root(self.unary(FunctionCodec.COS, 0));
+        assertCorrupt(self.toBuffer());
+
+        Library tag = new Library(3);
+        tag.root(tag.node((byte) 42));
+        assertCorrupt(tag.toBuffer());
+
+        Library operator = new Library(3);
+        int one = operator.number(1.0);
+        operator.root(operator.node(FunctionCodec.BINARY_OP, (byte) 99, one, one));
+        assertCorrupt(operator.toBuffer());
+
+        Library slot = new Library(3);
+        slot.root(slot.variable("x", -2));
+        assertCorrupt(slot.toBuffer());
+
+        Library count = new Library(3);
+        int x = count.variable("x", 0);
+        count.root(count.node(FunctionCodec.DENSE_POLYNOMIAL, x, 1000, 1.0));
+        assertCorrupt(count.toBuffer());
+
+        Library root = new Library(3);
+        root.number(1.0);
+        root.root(5);
+        assertCorrupt(root.toBuffer());
+    }
+
+    private static void assertCorrupt(ByteBuffer buffer) {
+        ExpressionLibrary library = ExpressionLibrary.wrap(buffer);
+        assertThrows(IllegalArgumentException.class, () -> library.get(0));
+        assertThrows(IllegalArgumentException.class, library::getAll);
+    }
+
+    private static ByteBuffer encode(Function function) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) FunctionCodec.encodedSize(Collections.singletonList(function)));
+        FunctionCodec.write(function, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Lays out a library by hand, node by node, so that older versions and invalid data can be written
+     */
+    private static final class Library {
+
+        private final int version;
+        private final List<byte[]> nodes = new ArrayList<>();
+        private final List<Integer> roots = new ArrayList<>();
+
+        Library(int version) {
+            this.version = version;
+        }
+
+        /**
+         * Adds a node made of a tag followed by the given fields: Integers as ints, Doubles as doubles and Bytes as bytes
+         */
+        int node(byte tag, Object... fields) {
+            ByteBuffer node = ByteBuffer.allocate(1024);
+            node.put(tag);
+            for (Object field : fields) {
+                if (field instanceof Integer) {
+                    node.putInt((Integer) field);
+                } else if (field instanceof Double) {
+                    node.putDouble((Double) field);
+                } else if (field instanceof Byte) {
+                    node.put((Byte) field);
+                } else {
+                    byte[] bytes = ((String) field).getBytes(StandardCharsets.UTF_8);
+                    node.putShort((short) bytes.length);
+                    node.put(bytes);
+                }
+            }
+            nodes.add(Arrays.copyOf(node.array(), node.position()));
+            return nodes.size() - 1;
+        }
+
+        int number(double value) {
+            return node(FunctionCodec.NUMBER, value);
+        }
+
+        int variable(String name, int slot) {
+            return node(FunctionCodec.VARIABLE, slot, name);
+        }
+
+        int binary(BinaryOp.Operator operator, int left, int right) {
+            return node(FunctionCodec.BINARY_OP, (byte) FunctionCodec.operatorCode(operator), left, right);
+        }
+
+        int polynomial(int operand, double power) {
+            return node(FunctionCodec.POLYNOMIAL, operand, power);
+        }
+
+        int unary(byte tag, int operand) {
+            return node(tag, operand);
+        }
+
+        int trig(String function, int operand) {
+            return node(FunctionCodec.TRIG, operand, function);
+        }
+
+        int dense(int variable, double... coefficients) {
+            Object[] fields = new Object[coefficients.length + 2];
+            fields[0] = variable;
+            fields[1] = coefficients.length;
+            for (int k = 0; k < coefficients.length; k++) {
+                fields[k + 2] = coefficients[k];
+            }
+            return node(FunctionCodec.DENSE_POLYNOMIAL, fields);
+        }
+
+        void root(int index) {
+            roots.add(index);
+        }
+
+        ByteBuffer toBuffer() {
+            int nodeBytes = 0;
+            for (byte[] node : nodes) {
+                nodeBytes += node.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(FunctionCodec.HEADER_BYTES + 4 * nodes.size() + 4 * roots.size() + nodeBytes);
+            buffer.putInt(FunctionCodec.MAGIC).putInt(version).putInt(nodes.size()).putInt(roots.size()).putInt(nodeBytes);
+            int offset = 0;
+            for (byte[] node : nodes) {
+                buffer.putInt(offset);
+                offset += node.length;
+            }
+            for (int root : roots) {
+                buffer.putInt(root);
+            }
+            for (byte[] node : nodes) {
+                buffer.put(node);
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that compiled functions give the same values as Function.value, and the bytecode emitted
+ * for constant subtrees, squares and expressions too large for one method.
+ * @author Jenny Zhang
+ */
+public class FunctionCompilerTest {
+
+    private static final double[] POINTS = {-3.5, -1.0, -0.25, 0.0, 0.3, 1.0, 2.0, 7.25, 1e3};
+
+    private static final Variable X = new Variable();
+
+    private static final int DLOAD_1 = 0x27;
+    private static final int LDC2_W = 0x14;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DMUL = 0x6b;
+    private static final int DRETURN = 0xaf;
+
+    @Test
+    public void compiledValuesMatchValue() {
+        Function[] functions = {
+                ExpressionParser.parse("3*x^4 - 2*x^2 + x - 7"),
+                ExpressionParser.parse("sin(x)*cos(2*x) + exp(-x/4)"),
+                ExpressionParser.parse("log(x^2 + 1) / (x - 5)"),
+                ExpressionParser.parse("sqrt(x^2 + 2)"),
+                new BinaryOp(BinaryOp.Operator.Power, new Exp(new Sin(X)), X),
+                new Polynomial(new Cos(X), 3),
+                new Polynomial(X, 0),
+                new Trig("sin", new BinaryOp(BinaryOp.Operator.Multiply, new Number(0.5), X)),
+                new Trig("COS", X),
+                new DensePolynomial(0.5, -1.0, 0.0, 2.0),
+                // A node the compiler does not know is called through its own value
+                new BinaryOp(BinaryOp.Operator.Add, X,
+                        ChebyshevFunction.approximate(new Exp(new Cos(X)), -5.0, 1e3, 1e-8)),
+        };
+        for (Function function : functions) {
+            DoubleUnaryOperator compiled = FunctionCompiler.compile(function);
+            for (double x : POINTS) {
+                double expected = function.value(x);
+                assertEquals(expected, compiled.applyAsDouble(x), 1e-12 * Math.max(1.0, Math.abs(expected)),
+                        function + " at " + x);
+            }
+        }
+    }
+
+    @Test
+    public void constantSubtreesAreFolded() {
+        Function constant = new BinaryOp(BinaryOp.Operator.Multiply, new Sin(new Number(2.0)),
+                new BinaryOp(BinaryOp.Operator.Power, new Number(3.0), new Exp(new Number(0.5))));
+        Function function = new BinaryOp(BinaryOp.Operator.Add, constant, X);
+        byte[] code = FunctionCompiler.code(function);
+        assertNotNull(code);
+        // ldc2_w of the folded value, dload_1, dadd, dreturn: no Math calls remain
+        assertEquals(6, code.length);
+        assertEquals(LDC2_W, code[0] & 0xff);
+        assertArrayEquals(new byte[] {(byte) DLOAD_1, (byte) DADD, (byte) DRETURN}, Arrays.copyOfRange(code, 3, 6));
+        assertEquals(function.value(1.5), FunctionCompiler.compile(function).applyAsDouble(1.5), 0.0);
+    }
+
+    @Test
+    public void squaresAreMultipliedInPlace() {
+        byte[] expected = {(byte) DLOAD_1, (byte) DUP2, (byte) DMUL, (byte) DRETURN};
+        assertArrayEquals(expected, FunctionCompiler.code(new BinaryOp(BinaryOp.Operator.Power, X, new Number(2.0))));
+        assertArrayEquals(expected, FunctionCompiler.code(new Polynomial(X, 2)));
+        assertEquals(-3.0 * -3.0, FunctionCompiler.compile(new Polynomial(X, 2)).applyAsDouble(-3.0), 0.0);
+    }
+
+    /**
+     * Eight thousand distinct terms need more bytecode than one method may hold, so compile falls back to value
+     */
+    @Test
+    public void oversizedFunctionsFallBackToValue() {
+        Function function = sum(1, 8192);
+        assertNull(FunctionCompiler.code(function));
+        DoubleUnaryOperator compiled = FunctionCompiler.compile(function);
+        for (double x : new double[] {-0.5, 0.0, 0.001, 0.75}) {
+            assertEquals(function.value(x), compiled.applyAsDouble(x), 0.0);
+        }
+        assertNotNull(FunctionCompiler.code(sum(1, 512)));
+    }
+
+    /**
+     * Returns the sum of sin(k x) for k from first to last, as a balanced tree so that no walk of it goes deep
+     */
+    private static Function sum(int first, int last) {
+        if (first == last) {
+            return new Sin(new BinaryOp(BinaryOp.Operator.Multiply, new Number(first), X));
+        }
+        int middle = (first + last) >>> 1;
+        return new BinaryOp(BinaryOp.Operator.Add, sum(first, middle), sum(middle + 1, last));
+    }
+}
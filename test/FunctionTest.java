@@ -0,0 +1,108 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks functions of several variables: evaluation against slot-indexed environments,
+ * partial derivatives by slot and gradients.
+ * @author Jenny Zhang
+ */
+public class FunctionTest {
+
+    private static final double[][] POINTS = {{0.5, -1.25, 2.0}, {1.5, 0.75, -0.5}, {-2.0, 3.0, 0.25}};
+
+    @Test
+    public void variablesAreNumberedBySlot() {
+        assertEquals(new Variable(), new Variable("x", 0));
+        assertNotEquals(new Variable("x", 0), new Variable("y", 1));
+        assertNotEquals(new Variable("x", 0), new Variable("x", 1));
+        assertThrows(IllegalArgumentException.class, () -> new Variable("x", -1));
+
+        // The default names are x, y and z
+        assertEquals(1 + 2 * 2 - 3, ExpressionParser.parse("x + 2*y - z").value(new double[] {1, 2, 3}), 0.0);
+
+        List<String> names = new ArrayList<>(Arrays.asList("t", "x"));
+        Function function = ExpressionParser.parse("a*x + t", names);
+        assertEquals(Arrays.asList("t", "x", "a"), names);
+        assertEquals(5 * 3 + 2, function.value(new double[] {2, 3, 5}), 0.0);
+    }
+
+    @Test
+    public void environmentsMatchSingleInputEvaluation() {
+        Function function = ExpressionParser.parse("sin(x)^2 + log(x + 4) * exp(-x)");
+        for (double x : new double[] {-1.5, 0.0, 0.7, 3.0}) {
+            assertEquals(function.value(x), function.value(new double[] {x, 99.0, -99.0}), 0.0);
+        }
+        // Single-input evaluation binds only x
+        Function withY = ExpressionParser.parse("x*y");
+        assertThrows(UnsupportedOperationException.class, () -> withY.value(1.0));
+    }
+
+    @Test
+    public void batchesAndLinearizedFunctionsEvaluateEnvironments() {
+        Function function = ExpressionParser.parse("x^2*y + sin(z*y) - x/z");
+        LinearizedFunction linearized = LinearizedFunction.linearize(function);
+        double[][] columns = new double[3][POINTS.length];
+        for (int i = 0; i < POINTS.length; i++) {
+            for (int slot = 0; slot < 3; slot++) {
+                columns[slot][i] = POINTS[i][slot];
+            }
+        }
+        double[] outputs = new double[POINTS.length];
+        new BatchEvaluator().evaluate(function, columns, outputs);
+        for (int i = 0; i < POINTS.length; i++) {
+            double expected = function.value(POINTS[i]);
+            assertEquals(expected, outputs[i], 1e-12 * Math.max(1.0, Math.abs(expected)));
+            assertEquals(expected, linearized.value(POINTS[i]), 1e-12 * Math.max(1.0, Math.abs(expected)));
+        }
+    }
+
+    @Test
+    public void partialDerivativesMatchTheAnalyticForms() {
+        Function function = ExpressionParser.parse("x^2*y + sin(z*y)");
+        for (double[] point : POINTS) {
+            double x = point[0];
+            double y = point[1];
+            double z = point[2];
+            assertEquals(2 * x * y, function.derivative(0).value(point), 1e-12);
+            assertEquals(x * x + z * Math.cos(z * y), function.derivative(1).value(point), 1e-12);
+            assertEquals(y * Math.cos(z * y), function.derivative(2).value(point), 1e-12);
+            assertEquals(0.0, function.derivative(3).value(point), 0.0);
+            // Mixed second partials agree in either order
+            assertEquals(function.derivative(1).derivative(2).value(point),
+                    function.derivative(2).derivative(1).value(point), 1e-12);
+        }
+        assertThrows(IllegalArgumentException.class, () -> function.derivative(-1));
+    }
+
+    @Test
+    public void partialDerivativesAreMemoized() {
+        Function function = ExpressionParser.parse("exp(x*y) * z");
+        assertSame(function.derivative(), function.derivative(0));
+        assertSame(function.derivative(1), function.derivative(1));
+        assertSame(function.derivative(2), function.derivative(2));
+    }
+
+    @Test
+    public void gradientHoldsEveryPartial() {
+        Function function = ExpressionParser.parse("x^y + log(z^2 + x) * y");
+        double[] gradient = new double[3];
+        for (double[] point : new double[][] {{0.5, 1.25, 2.0}, {1.5, 0.75, -0.5}, {2.0, 3.0, 0.25}}) {
+            function.gradient(point, gradient);
+            for (int slot = 0; slot < 3; slot++) {
+                assertEquals(function.derivative(slot).value(point), gradient[slot], 0.0, "slot " + slot);
+            }
+            double[] leading = new double[2];
+            function.gradient(point, leading);
+            assertEquals(gradient[0], leading[0], 0.0);
+            assertEquals(gradient[1], leading[1], 0.0);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that re-parsing after random edits gives exactly what a fresh parse of the same text gives.
+ * @author Jenny Zhang
+ */
+public class IncrementalParserTest {
+
+    /** Operands, each a complete expression */
+    private static final String[] OPERANDS = {
+        "x", "y", "t", "2", "3.5", "sin(x)", "cos(2*y)", "log(x+1)", "exp(-x)", "sqrt(x)", "√2", "(x+1)", "x^2", "3*x^4"
+    };
+
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "^", " + ", "*-"};
+
+    /** Fragments inserted anywhere, which usually leave the text invalid until the edit is undone */
+    private static final String[] FRAGMENTS = {"(", ")", "+", "*", "x", "2", " ", "sin(", ".", "^"};
+
+    private static final int SEQUENCES = 2000;
+    private static final int EDITS = 60;
+
+    /**
+     * Edits random expressions by appending and prepending whole terms, which keeps them valid, and by inserting
+     * and deleting arbitrary text, which is mostly undone when it stops the text parsing.
+     * Text that stays invalid for several edits is cleared and started again
+     */
+    @Test
+    public void randomEditsMatchFreshParses() {
+        Random random = new Random(18);
+        for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+            IncrementalParser parser = new IncrementalParser();
+            parser.insert(0, pick(random, OPERANDS));
+            int invalidEdits = 0;
+            for (int edit = 0; edit < EDITS; edit++) {
+                int length = parser.length();
+                int kind = random.nextInt(10);
+                String undoText = null;
+                int undoOffset = -1;
+                int undoEnd = -1;
+                if (kind < 4) {
+                    parser.insert(length, pick(random, OPERATORS) + pick(random, OPERANDS));
+                } else if (kind < 6) {
+                    // After an opening parenthesis or at the start, a term followed by an operator keeps the text valid
+                    int offset = openingOffset(parser.getText(), random);
+                    parser.insert(offset, pick(random, OPERANDS) + pick(random, OPERATORS));
+                } else if (kind < 8 || length == 0) {
+                    String fragment = pick(random, FRAGMENTS);
+                    undoOffset = random.nextInt(length + 1);
+                    undoEnd = undoOffset + fragment.length();
+                    parser.insert(undoOffset, fragment);
+                } else {
+                    undoOffset = random.nextInt(length);
+                    int end = Math.min(length, undoOffset + 1 + random.nextInt(4));
+                    undoText = parser.getText().substring(undoOffset, end);
+                    parser.delete(undoOffset, end);
+                }
+                if (random.nextInt(8) == 0) {
+                    compare(parser, random.nextInt(parser.length() + 1));
+                }
+                boolean parsed = compare(parser, parser.length());
+                if (!parsed && undoOffset >= 0 && random.nextInt(4) != 0) {
+                    if (undoText != null) {
+                        parser.insert(undoOffset, undoText);
+                    } else {
+                        parser.delete(undoOffset, undoEnd);
+                    }
+                    parsed = compare(parser, parser.length());
+                }
+                invalidEdits = parsed ? 0 : invalidEdits + 1;
+                if (invalidEdits > 4) {
+                    parser.clear();
+                    parser.insert(0, pick(random, OPERANDS));
+                    invalidEdits = 0;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void clearRestartsVariableNumbering() {
+        IncrementalParser parser = new IncrementalParser();
+        parser.insert(0, "a + b");
+        parser.parse();
+        assertEquals(Arrays.asList("x", "y", "z", "a", "b"), parser.getVariables());
+        parser.clear();
+        assertEquals(Arrays.asList("x", "y", "z"), parser.getVariables());
+        parser.insert(0, "b");
+        assertEquals(ExpressionParser.parse("b"), parser.parse());
+    }
+
+    private static String pick(Random random, String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+
+    /**
+     * Returns 0 or a random position just after an opening parenthesis
+     */
+    private static int openingOffset(String text, Random random) {
+        List<Integer> offsets = new ArrayList<>();
+        offsets.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '(') {
+                offsets.add(i + 1);
+            }
+        }
+        return offsets.get(random.nextInt(offsets.size()));
+    }
+
+    /**
+     * Parses the first length characters both incrementally and from scratch, with the same variable list
+     * @return whether the text parsed
+     */
+    private static boolean compare(IncrementalParser parser, int length) {
+        String text = parser.getText().substring(0, length);
+        List<String> variables = new ArrayList<>(parser.getVariables());
+        Function expected = null;
+        ExpressionParseException expectedError = null;
+        try {
+            expected = ExpressionParser.parse(text, variables);
+        } catch (ExpressionParseException e) {
+            expectedError = e;
+        }
+        try {
+            Function actual = parser.parse(length);
+            if (expectedError != null) {
+                fail("Parsed \"" + text + "\" as " + actual + " but a fresh parse failed: " + expectedError.getMessage());
+            }
+            assertEquals(expected, actual, text);
+        } catch (ExpressionParseException e) {
+            if (expectedError == null) {
+                fail("Failed to parse \"" + text + "\" (" + e.getMessage() + ") but a fresh parse gave " + expected);
+            }
+            assertEquals(expectedError.getMessage(), e.getMessage(), text);
+        }
+        assertEquals(variables, parser.getVariables(), text);
+        return expectedError == null;
+    }
+}
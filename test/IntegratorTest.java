@@ -0,0 +1,87 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the accuracy of every Integrator rule on smooth and oscillatory integrands, the handling of
+ * singularities at the ends of the interval, and that every rule runs on the configured pool.
+ * @author Jenny Zhang
+ */
+public class IntegratorTest {
+
+    private static final double TOLERANCE = 1e-10;
+
+    @Test
+    public void everyRuleIntegratesSmoothFunctions() {
+        for (Integrator.Rule rule : Integrator.Rule.values()) {
+            Integrator integrator = new Integrator(rule, TOLERANCE, TOLERANCE, Integrator.DEFAULT_MAX_PANELS);
+            check(integrator, "sin(x)", 0.0, Math.PI, 2.0);
+            check(integrator, "exp(x)", 0.0, 1.0, Math.E - 1.0);
+            check(integrator, "x^4 - 3*x^2 + x", -1.0, 2.0, 33.0 / 5.0 - 9.0 + 1.5);
+            check(integrator, "1/(1 + x^2)", -3.0, 3.0, 2 * Math.atan(3.0));
+            Integrator.Result reversed = integrator.integrate(ExpressionParser.parse("exp(x)"), 1.0, 0.0);
+            assertEquals(1.0 - Math.E, reversed.getValue(), 1e-9, rule.toString());
+        }
+    }
+
+    @Test
+    public void everyRuleIntegratesOscillatoryFunctions() {
+        // sin(20x) cos(x) = (sin(21x) + sin(19x)) / 2
+        double expected = 0.5 * ((1 - Math.cos(210.0)) / 21 + (1 - Math.cos(190.0)) / 19);
+        for (Integrator.Rule rule : Integrator.Rule.values()) {
+            Integrator integrator = new Integrator(rule, TOLERANCE, TOLERANCE, Integrator.DEFAULT_MAX_PANELS);
+            check(integrator, "sin(20*x)*cos(x)", 0.0, 10.0, expected);
+            check(integrator, "cos(50*x)*exp(-x)", 0.0, 4.0,
+                    (1 + Math.exp(-4.0) * (50 * Math.sin(200.0) - Math.cos(200.0))) / 2501);
+        }
+    }
+
+    @Test
+    public void gaussKronrodHandlesSingularEnds() {
+        Integrator integrator = new Integrator(Integrator.Rule.GAUSS_KRONROD, 1e-8, 1e-8, Integrator.DEFAULT_MAX_PANELS);
+        check(integrator, "1/sqrt(x)", 0.0, 1.0, 2.0);
+        check(integrator, "log(x)", 0.0, 1.0, -1.0);
+        check(integrator, "log(1 - x)", 0.0, 1.0, -1.0);
+    }
+
+    @Test
+    public void rulesThatEvaluateTheEndsReportSingularities() {
+        for (Integrator.Rule rule : new Integrator.Rule[] {Integrator.Rule.SIMPSON, Integrator.Rule.ROMBERG}) {
+            Integrator integrator = new Integrator(rule, 1e-8, 1e-8, Integrator.DEFAULT_MAX_PANELS);
+            assertFalse(integrator.integrate(ExpressionParser.parse("1/sqrt(x)"), 0.0, 1.0).isConverged(), rule.toString());
+        }
+        // A square root is finite at zero but has no bounded derivative there, which adaptivity copes with
+        Integrator simpson = new Integrator(Integrator.Rule.SIMPSON, 1e-8, 1e-8, Integrator.DEFAULT_MAX_PANELS);
+        check(simpson, "sqrt(x)", 0.0, 1.0, 2.0 / 3.0);
+    }
+
+    /**
+     * A pool that has been shut down rejects new work, so every rule must fail on one if it really uses it
+     */
+    @Test
+    public void everyRuleRunsOnTheConfiguredPool() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        pool.shutdown();
+        Function function = ExpressionParser.parse("sin(x)");
+        for (Integrator.Rule rule : Integrator.Rule.values()) {
+            Integrator integrator = new Integrator(rule, TOLERANCE, TOLERANCE, Integrator.DEFAULT_MAX_PANELS, pool);
+            assertThrows(RejectedExecutionException.class, () -> integrator.integrate(function, 0.0, Math.PI), rule.toString());
+        }
+    }
+
+    private static void check(Integrator integrator, String integrand, double a, double b, double expected) {
+        Integrator.Result result = integrator.integrate(ExpressionParser.parse(integrand), a, b);
+        String name = integrator.getRule() + " " + integrand + ": " + result;
+        assertTrue(result.isConverged(), name);
+        double allowed = Math.max(integrator.getAbsoluteTolerance(), integrator.getRelativeTolerance() * Math.abs(expected));
+        assertEquals(expected, result.getValue(), 10 * allowed, name);
+        assertTrue(result.getError() <= allowed, name);
+        assertTrue(result.getEvaluations() > 0, name);
+    }
+}
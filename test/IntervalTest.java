@@ -0,0 +1,167 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the Interval arithmetic, in particular division that leaves a gap around zero, and that the
+ * interval overrides of every Function node contain the values the node takes.
+ * @author Jenny Zhang
+ */
+public class IntervalTest {
+
+    private static final int SAMPLES = 2001;
+
+    @Test
+    public void arithmeticContainsTheExactRange() {
+        Interval a = new Interval(-1.5, 2.0);
+        Interval b = new Interval(0.5, 3.0);
+        assertEncloses(a.add(b), -1.0, 5.0);
+        assertEncloses(a.subtract(b), -4.5, 1.5);
+        assertEncloses(a.multiply(b), -4.5, 6.0);
+        assertEncloses(a.divide(b), -3.0, 4.0);
+        assertEncloses(a.pow(2.0), 0.0, 4.0);
+        assertEncloses(b.pow(0.5), Math.sqrt(0.5), Math.sqrt(3.0));
+        assertEncloses(b.log(), Math.log(0.5), Math.log(3.0));
+        assertEncloses(a.exp(), Math.exp(-1.5), Math.exp(2.0));
+        assertEncloses(new Interval(0.0, 1.0).sin(), 0.0, Math.sin(1.0));
+        assertEncloses(new Interval(1.0, 2.0).sin(), Math.sin(1.0), 1.0);
+        assertEncloses(new Interval(3.0, 4.0).cos(), -1.0, Math.cos(4.0));
+        assertTrue(new Interval(-2.0, -1.0).log().isEmpty());
+        assertTrue(new Interval(-2.0, -1.0).pow(0.5).isEmpty());
+        assertTrue(Interval.point(1.0).divide(Interval.point(0.0)).isEmpty());
+    }
+
+    @Test
+    public void divisionByAnIntervalAroundZeroLeavesAGap() {
+        Interval quotient = new Interval(1.0, 2.0).divide(new Interval(-1.0, 4.0));
+        assertTrue(quotient.hasGap(), quotient.toString());
+        assertFalse(quotient.contains(0.0));
+        assertFalse(quotient.contains(0.2));
+        assertTrue(quotient.contains(0.25));
+        assertTrue(quotient.contains(-1.0));
+        assertTrue(quotient.contains(1e300));
+        assertTrue(quotient.contains(-1e300));
+        assertFalse(quotient.intersects(new Interval(-0.5, 0.2)));
+        assertTrue(quotient.intersects(new Interval(-0.5, 0.3)));
+
+        Interval negative = new Interval(-2.0, -1.0).divide(new Interval(-1.0, 4.0));
+        assertFalse(negative.contains(0.0));
+        assertTrue(negative.contains(1.0));
+        assertTrue(negative.contains(-0.25));
+
+        assertEquals(Interval.ENTIRE, new Interval(-1.0, 2.0).divide(new Interval(-1.0, 4.0)));
+    }
+
+    @Test
+    public void gapsCarryThroughLaterOperations() {
+        Interval rays = Interval.point(1.0).divide(new Interval(-1.0, 1.0));
+        assertFalse(rays.add(Interval.point(0.5)).contains(0.0));
+        assertTrue(rays.add(Interval.point(0.5)).contains(1.5));
+        assertFalse(rays.negate().contains(0.5));
+        assertFalse(rays.multiply(Interval.point(2.0)).contains(1.0));
+        assertFalse(rays.pow(2.0).contains(0.5));
+        assertTrue(rays.pow(2.0).contains(1.0));
+        Interval inverse = Interval.point(1.0).divide(rays);
+        assertEncloses(inverse, -1.0, 1.0);
+        assertFalse(rays.intersect(new Interval(-0.5, 0.5)).contains(0.0));
+        assertTrue(rays.intersect(new Interval(-0.5, 0.5)).isEmpty());
+        assertFalse(rays.hull(Interval.point(0.0)).hasGap());
+    }
+
+    @Test
+    public void unionKeepsTheWidestGap() {
+        Interval union = new Interval(0.0, 1.0).union(new Interval(5.0, 6.0)).union(new Interval(2.0, 3.0));
+        assertEquals(0.0, union.getLower(), 0.0);
+        assertEquals(6.0, union.getUpper(), 0.0);
+        assertEquals(3.0, union.getGapLower(), 0.0);
+        assertEquals(5.0, union.getGapUpper(), 0.0);
+        assertTrue(union.contains(1.5));
+        assertFalse(union.contains(4.0));
+        assertEquals(new Interval(0.0, 3.0), new Interval(0.0, 2.0).union(new Interval(1.0, 3.0)));
+        assertTrue(Interval.EMPTY.union(Interval.EMPTY).isEmpty());
+    }
+
+    @Test
+    public void reciprocalOfAShiftedVariableExcludesZero() {
+        Function function = ExpressionParser.parse("1/(x-1)");
+        Interval range = function.interval(new Interval(0.0, 2.0));
+        assertFalse(range.contains(0.0), range.toString());
+        assertTrue(range.contains(1.0));
+        assertTrue(range.contains(-1.0));
+    }
+
+    @Test
+    public void overridesEncloseSampledValues() {
+        double a = 0.2;
+        double b = 3.5;
+        for (Map.Entry<String, Function> entry : nodes(a, b).entrySet()) {
+            Function function = entry.getValue();
+            Interval range = function.interval(new Interval(a, b));
+            Interval environmentRange = function.interval(new Interval[] {new Interval(a, b)});
+            for (int i = 0; i < SAMPLES; i++) {
+                double x = a + (b - a) * i / (SAMPLES - 1);
+                double y = function.value(x);
+                if (!Double.isNaN(y)) {
+                    assertTrue(range.contains(y), entry.getKey() + " at " + x + ": " + y + " not in " + range);
+                    assertTrue(environmentRange.contains(y), entry.getKey() + " at " + x + ": " + y + " not in " + environmentRange);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void nowhereDefinedFunctionsGiveEmpty() {
+        for (String text : new String[] {"log(x)", "x^0.5", "log(x - 5) + x"}) {
+            assertTrue(ExpressionParser.parse(text).interval(new Interval(-3.0, -1.0)).isEmpty(), text);
+        }
+    }
+
+    @Test
+    public void environmentIntervalsBoundEverySlot() {
+        Function function = ExpressionParser.parse("x*y - y^2", Arrays.asList("x", "y"));
+        Interval range = function.interval(new Interval[] {new Interval(-1.0, 2.0), new Interval(0.5, 1.0)});
+        for (double x = -1.0; x <= 2.0; x += 0.25) {
+            for (double y = 0.5; y <= 1.0; y += 0.125) {
+                double value = function.value(new double[] {x, y});
+                assertTrue(range.contains(value), x + ", " + y + ": " + value + " not in " + range);
+            }
+        }
+    }
+
+    /**
+     * Returns one function per node type that overrides interval
+     */
+    private static Map<String, Function> nodes(double a, double b) {
+        Variable x = new Variable();
+        Function inner = new BinaryOp(BinaryOp.Operator.Subtract, x, new Number(1.7));
+        Map<String, Function> nodes = new LinkedHashMap<>();
+        nodes.put("Number", new Number(2.5));
+        nodes.put("Variable", x);
+        nodes.put("Add", new BinaryOp(BinaryOp.Operator.Add, x, new Sin(x)));
+        nodes.put("Subtract", new BinaryOp(BinaryOp.Operator.Subtract, new Exp(inner), x));
+        nodes.put("Multiply", new BinaryOp(BinaryOp.Operator.Multiply, inner, new Cos(x)));
+        nodes.put("Divide", new BinaryOp(BinaryOp.Operator.Divide, new Number(1.0), inner));
+        nodes.put("Power", new BinaryOp(BinaryOp.Operator.Power, inner, new Number(3.0)));
+        nodes.put("Power with variable exponent", new BinaryOp(BinaryOp.Operator.Power, x, inner));
+        nodes.put("Polynomial", new Polynomial(new Sin(x), 3));
+        nodes.put("Sin", new Sin(new BinaryOp(BinaryOp.Operator.Multiply, new Number(3.0), x)));
+        nodes.put("Cos", new Cos(inner));
+        nodes.put("Exp", new Exp(inner));
+        nodes.put("Log", new Log(inner));
+        nodes.put("Trig sin", new Trig("sin", inner));
+        nodes.put("Trig cos", new Trig("cos", inner));
+        nodes.put("DensePolynomial", new DensePolynomial(1.0, -2.0, 0.5, 0.25, -0.125));
+        nodes.put("ChebyshevFunction", ChebyshevFunction.approximate(new Exp(new Sin(x)), a, b, 1e-10));
+        return nodes;
+    }
+
+    private static void assertEncloses(Interval interval, double low, double high) {
+        assertTrue(interval.contains(low) && interval.contains(high), interval + " misses [" + low + ", " + high + "]");
+    }
+}
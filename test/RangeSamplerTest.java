@@ -0,0 +1,162 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that every kind of Function node gives the same values when sampled from several threads
+ * as when value(x) is called on one thread, in both RangeSampler modes.
+ * @author Jenny Zhang
+ */
+public class RangeSamplerTest {
+
+    private static final double A = 0.25;
+    private static final double B = 4.0;
+    private static final int COUNT = 20_000;
+    private static final int THREADS = 8;
+
+    /**
+     * Returns one function per node type, each nested so that the node's operands are not trivial
+     */
+    private static Map<String, Function> nodes() {
+        Variable x = new Variable();
+        Function inner = new BinaryOp(BinaryOp.Operator.Multiply, new Number(0.5), x);
+        Map<String, Function> nodes = new LinkedHashMap<>();
+        nodes.put("Number", new Number(2.5));
+        nodes.put("Variable", x);
+        nodes.put("Add", new BinaryOp(BinaryOp.Operator.Add, x, new Sin(x)));
+        nodes.put("Subtract", new BinaryOp(BinaryOp.Operator.Subtract, new Exp(inner), x));
+        nodes.put("Multiply", new BinaryOp(BinaryOp.Operator.Multiply, x, new Cos(x)));
+        nodes.put("Divide", new BinaryOp(BinaryOp.Operator.Divide, new Number(1.0), x));
+        nodes.put("Power", new BinaryOp(BinaryOp.Operator.Power, inner, new Number(2.5)));
+        nodes.put("Power with variable exponent", new BinaryOp(BinaryOp.Operator.Power, x, inner));
+        nodes.put("Polynomial", new Polynomial(new Sin(x), 3));
+        nodes.put("Sin", new Sin(inner));
+        nodes.put("Cos", new Cos(inner));
+        nodes.put("Exp", new Exp(inner));
+        nodes.put("Log", new Log(x));
+        nodes.put("Trig sin", new Trig("sin", inner));
+        nodes.put("Trig cos", new Trig("cos", inner));
+        nodes.put("LinearizedFunction", LinearizedFunction.linearize(
+                new BinaryOp(BinaryOp.Operator.Add, new Log(x), new Polynomial(new Cos(x), 2))));
+        nodes.put("DensePolynomial", new DensePolynomial(1.0, -2.0, 0.5, 0.25));
+        nodes.put("ChebyshevFunction", ChebyshevFunction.approximate(new Exp(new Sin(x)), A, B, 1e-10));
+        return nodes;
+    }
+
+    @Test
+    public void forkJoinMatchesSerialValues() {
+        try (RangeSampler sampler = new RangeSampler(RangeSampler.Mode.FORK_JOIN, THREADS, 512)) {
+            checkAgainstSerial(sampler);
+        }
+    }
+
+    @Test
+    public void virtualThreadsMatchSerialValues() {
+        try (RangeSampler sampler = new RangeSampler(RangeSampler.Mode.VIRTUAL_THREADS, THREADS, 512)) {
+            checkAgainstSerial(sampler);
+        }
+    }
+
+    @Test
+    public void commonPoolMatchesSerialValues() {
+        try (RangeSampler sampler = new RangeSampler()) {
+            checkAgainstSerial(sampler);
+        }
+    }
+
+    @Test
+    public void callerPoolMatchesSerialValues() {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try (RangeSampler sampler = new RangeSampler(pool, 512)) {
+            checkAgainstSerial(sampler);
+        }
+        // The pool belongs to the caller, so closing the sampler leaves it running
+        assertFalse(pool.isShutdown());
+        pool.shutdown();
+    }
+
+    /**
+     * Calls value(x) on one shared instance of each node from several threads at once, so that lazily
+     * cached state such as hash codes and memoized derivatives is first touched concurrently
+     */
+    @Test
+    public void concurrentValueCallsMatchSerialValues() throws Exception {
+        Map<String, Function> serialNodes = nodes();
+        Map<String, Function> sharedNodes = nodes();
+        double[] points = points();
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (Map.Entry<String, Function> entry : sharedNodes.entrySet()) {
+                Function serial = serialNodes.get(entry.getKey());
+                Function shared = entry.getValue();
+                double[] expected = new double[points.length];
+                for (int i = 0; i < points.length; i++) {
+                    expected[i] = serial.value(points[i]);
+                }
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<double[]>> results = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    Callable<double[]> task = () -> {
+                        start.await();
+                        shared.hashCode();
+                        shared.derivative();
+                        double[] values = new double[points.length];
+                        for (int i = 0; i < points.length; i++) {
+                            values[i] = shared.value(points[i]);
+                        }
+                        return values;
+                    };
+                    results.add(threads.submit(task));
+                }
+                start.countDown();
+                for (Future<double[]> result : results) {
+                    assertSameValues(entry.getKey(), expected, result.get());
+                }
+                assertEquals(serial.derivative(), shared.derivative(), entry.getKey());
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    private static void checkAgainstSerial(RangeSampler sampler) {
+        double[] points = points();
+        for (Map.Entry<String, Function> entry : nodes().entrySet()) {
+            Function function = entry.getValue();
+            double[] expected = new double[points.length];
+            for (int i = 0; i < points.length; i++) {
+                expected[i] = function.value(points[i]);
+            }
+            assertSameValues(entry.getKey(), expected, sampler.sample(function, A, B, COUNT));
+        }
+    }
+
+    private static double[] points() {
+        double[] points = new double[COUNT];
+        double step = (B - A) / (COUNT - 1);
+        for (int i = 0; i < COUNT; i++) {
+            points[i] = A + i * step;
+        }
+        return points;
+    }
+
+    private static void assertSameValues(String node, double[] expected, double[] actual) {
+        assertEquals(expected.length, actual.length, node);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], 1e-12 * Math.max(1.0, Math.abs(expected[i])),
+                    node + " at point " + i);
+        }
+    }
+}
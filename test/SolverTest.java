@@ -0,0 +1,121 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that Solver finds bracketed roots, roots where the function only touches zero, and extrema,
+ * and that the statistics it reports add up.
+ * @author Jenny Zhang
+ */
+public class SolverTest {
+
+    @Test
+    public void findsEveryRootOfSine() {
+        for (Solver.Method method : Solver.Method.values()) {
+            Solver solver = new Solver(ExpressionParser.parse("sin(x)"), method, Solver.DEFAULT_TOLERANCE,
+                    Solver.DEFAULT_VALUE_TOLERANCE, Solver.DEFAULT_MAX_ITERATIONS);
+            Solver.Roots roots = solver.findAllRoots(-10.0, 10.0);
+            assertEquals(7, roots.size(), roots.toString());
+            for (int k = -3; k <= 3; k++) {
+                Solver.Result root = roots.getRoots().get(k + 3);
+                assertEquals(k * Math.PI, root.getX(), 1e-12, method + " root " + k);
+                assertTrue(root.isConverged());
+            }
+            assertEquals(0, roots.getFailures());
+            // The root at zero is a grid point and the peaks are bounded away from zero, so only six sign changes are solved
+            assertEquals(6, roots.getBrackets());
+        }
+    }
+
+    @Test
+    public void bracketedSearchStaysInsideTheBracket() {
+        Solver solver = new Solver(ExpressionParser.parse("sin(x)"));
+        Solver.Result root = solver.findRoot(3.0, 4.0);
+        assertEquals(Math.PI, root.getX(), 1e-12);
+        assertTrue(root.isConverged());
+        // Near pi/2 the slope of sin is almost flat, so a Newton step from there would leave the bracket
+        Solver.Result far = solver.findRoot(1.5, 4.0);
+        assertEquals(Math.PI, far.getX(), 1e-12);
+        assertEquals(0.0, solver.findRoot(0.0, 1.0).getX(), 0.0);
+        assertThrows(IllegalArgumentException.class, () -> solver.findRoot(1.0, 2.0));
+    }
+
+    @Test
+    public void findsRootsWhereTheFunctionTouchesZero() {
+        Solver solver = new Solver(ExpressionParser.parse("(x-1)^2"));
+        Solver.Roots roots = solver.findAllRoots(-3.2, 3.0);
+        assertEquals(1, roots.size(), roots.toString());
+        assertEquals(1.0, roots.getRoots().get(0).getX(), 1e-9);
+        assertTrue(Math.abs(roots.getRoots().get(0).getValue()) <= Solver.DEFAULT_VALUE_TOLERANCE);
+
+        Solver lifted = new Solver(ExpressionParser.parse("(x-1)^2 + 0.5"));
+        Solver.Roots none = lifted.findAllRoots(-3.2, 3.0);
+        assertEquals(0, none.size());
+        assertEquals(0, none.getBrackets(), "a turning point bounded away from zero is not solved");
+    }
+
+    @Test
+    public void findsMinimaAndMaxima() {
+        Function function = ExpressionParser.parse("x^4 - 3*x^2 + x");
+        Function slope = function.derivative();
+        Solver solver = new Solver(function);
+
+        List<Solver.Result> extrema = solver.findExtrema(-2.0, 2.0, Solver.DEFAULT_SUBINTERVALS).getRoots();
+        assertEquals(3, extrema.size());
+        for (Solver.Result extremum : extrema) {
+            assertEquals(0.0, slope.value(extremum.getX()), 1e-9);
+            assertEquals(function.value(extremum.getX()), extremum.getValue(), 1e-12);
+        }
+
+        Solver.Result minimum = solver.minimize(-2.0, 2.0);
+        assertEquals(extrema.get(0).getX(), minimum.getX(), 0.0);
+        assertTrue(minimum.getValue() < extrema.get(2).getValue());
+        assertTrue(minimum.getValue() < function.value(-2.0) && minimum.getValue() < function.value(2.0));
+
+        // The largest value on [-2, 2] is at an end, on [-1, 1] at the local maximum
+        assertEquals(2.0, solver.maximize(-2.0, 2.0).getX(), 0.0);
+        assertEquals(extrema.get(1).getX(), solver.maximize(-1.0, 1.0).getX(), 0.0);
+        assertEquals(extrema.get(2).getX(), solver.minimize(0.5, 2.0).getX(), 0.0);
+    }
+
+    @Test
+    public void statisticsAddUp() {
+        Solver newton = new Solver(ExpressionParser.parse("sin(x)"), Solver.Method.NEWTON, Solver.DEFAULT_TOLERANCE,
+                Solver.DEFAULT_VALUE_TOLERANCE, Solver.DEFAULT_MAX_ITERATIONS);
+        Solver halley = new Solver(ExpressionParser.parse("sin(x)"), Solver.Method.HALLEY, Solver.DEFAULT_TOLERANCE,
+                Solver.DEFAULT_VALUE_TOLERANCE, Solver.DEFAULT_MAX_ITERATIONS);
+        Solver.Roots newtonRoots = newton.findAllRoots(-10.0, 10.0, 64);
+        Solver.Roots halleyRoots = halley.findAllRoots(-10.0, 10.0, 64);
+        for (Solver.Roots roots : new Solver.Roots[] {newtonRoots, halleyRoots}) {
+            int iterations = 0;
+            int evaluations = 0;
+            int bisections = 0;
+            int maxIterations = 0;
+            for (Solver.Result root : roots.getRoots()) {
+                assertTrue(root.getEvaluations() >= root.getIterations());
+                iterations += root.getIterations();
+                evaluations += root.getEvaluations();
+                bisections += root.getBisections();
+                maxIterations = Math.max(maxIterations, root.getIterations());
+            }
+            assertEquals(iterations, roots.getIterations());
+            assertEquals(bisections, roots.getBisections());
+            assertEquals(maxIterations, roots.getMaxIterations());
+            // The grid evaluates the function and its slope at each of the 65 points
+            assertEquals(evaluations + 2 * 65, roots.getEvaluations());
+        }
+        assertTrue(halleyRoots.getIterations() <= newtonRoots.getIterations(),
+                halleyRoots + " against " + newtonRoots);
+
+        Solver.Result limited = new Solver(ExpressionParser.parse("x^3 - 2*x + 2"), Solver.Method.NEWTON,
+                Solver.DEFAULT_TOLERANCE, Solver.DEFAULT_VALUE_TOLERANCE, 20).findRoot(0.0);
+        // Newton's method cycles between 0 and 1 on this cubic
+        assertEquals(20, limited.getIterations());
+        assertFalse(limited.isConverged());
+    }
+}